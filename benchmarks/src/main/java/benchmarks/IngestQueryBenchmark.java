@@ -0,0 +1,74 @@
+package main.java.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import main.java.bo.CommonStock;
+import main.java.bo.FixedPoint;
+import main.java.clock.SystemClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Trade ingestion running concurrently with price and index queries on the
+ * same Stock. The split of writer and reader threads can be changed with the
+ * JMH -tg option, e.g. -tg 4,2.
+ * 
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+@State(Scope.Group)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class IngestQueryBenchmark {
+
+	@Param({ "1000", "1000000" })
+	private int			historySize;
+
+	@Param({ "900000000000" })
+	private long		windowLength;
+
+	private CommonStock	stock;
+
+	@Setup(Level.Iteration)
+	public void setUp() {
+		stock = new CommonStock("POP", 8, 100);
+		TradeHistories.fill(stock, historySize, SystemClock.INSTANCE.now());
+	}
+
+	@Benchmark
+	@Group("ingestQuery")
+	@GroupThreads(3)
+	public int recordTrade() {
+		return stock.recordTrade(100, FixedPoint.fromPennies(120), false);
+	}
+
+	@Benchmark
+	@Group("ingestQuery")
+	@GroupThreads(1)
+	public long queryStockPrice() {
+		return stock.getStockPrice(windowLength);
+	}
+
+	@Benchmark
+	@Group("ingestQuery")
+	@GroupThreads(1)
+	public double queryGeometricMean() {
+		return stock.getGeometricMean();
+	}
+}
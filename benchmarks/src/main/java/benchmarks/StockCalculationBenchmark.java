@@ -0,0 +1,79 @@
+package main.java.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import main.java.bo.CommonStock;
+import main.java.bo.PreferredStock;
+import main.java.clock.SystemClock;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Query cost of the Stock calculations against Trade histories of growing
+ * size. Readers run on as many threads as given with the JMH -t option.
+ * 
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.AverageTime, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StockCalculationBenchmark {
+
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	private int				historySize;
+
+	@Param({ "60000000000", "900000000000", "3600000000000" })
+	private long			windowLength;
+
+	private CommonStock		commonStock;
+	private PreferredStock	preferredStock;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		long nowTime = SystemClock.INSTANCE.now();
+		commonStock = new CommonStock("POP", 8, 100);
+		preferredStock = new PreferredStock("GIN", 8, 2, 100);
+		TradeHistories.fill(commonStock, historySize, nowTime);
+		TradeHistories.fill(preferredStock, historySize, nowTime);
+	}
+
+	@Benchmark
+	public long stockPrice() {
+		return commonStock.getStockPrice(windowLength);
+	}
+
+	@Benchmark
+	public double geometricMean() {
+		return commonStock.getGeometricMean();
+	}
+
+	@Benchmark
+	public double peRatio() {
+		return commonStock.getPERatio();
+	}
+
+	@Benchmark
+	public double commonDividendYield() {
+		return commonStock.getDividendYield();
+	}
+
+	@Benchmark
+	public double preferredDividendYield() {
+		return preferredStock.getDividendYield();
+	}
+}
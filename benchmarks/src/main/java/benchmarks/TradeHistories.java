@@ -0,0 +1,43 @@
+package main.java.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import main.java.bo.FixedPoint;
+import main.java.bo.impl.AbstractStock;
+
+/**
+ * Builds deterministic Trade histories for the benchmarks.
+ * 
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+final class TradeHistories {
+	static final long	HISTORY_LENGTH	= TimeUnit.HOURS.toNanos(1);
+	static final long	SEED			= 42;
+
+	private TradeHistories() {
+	}
+
+	/**
+	 * Records a given number of Trades evenly spread over the last hour.
+	 * 
+	 * @param stock
+	 *            AbstractStock The Stock to fill.
+	 * @param historySize
+	 *            Integer The number of Trades to record.
+	 * @param nowTime
+	 *            Long The time of the last Trade in nanoseconds.
+	 */
+	static void fill(final AbstractStock stock, final int historySize,
+			final long nowTime) {
+		Random random = new Random(SEED);
+		long startTime = nowTime - HISTORY_LENGTH;
+		double step = (double) HISTORY_LENGTH / historySize;
+		for (int i = 0; i < historySize; i++) {
+			stock.recordTrade(1 + random.nextInt(1000),
+					FixedPoint.fromPennies(50 + random.nextInt(200)),
+					random.nextBoolean(), startTime + (long) (i * step));
+		}
+	}
+}
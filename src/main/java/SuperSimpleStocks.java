@@ -1,303 +1,816 @@
-package main.java;
-
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Locale;
-import java.util.ResourceBundle;
-
-import main.java.bo.Trade;
-import main.java.bo.impl.AbstractStock;
-import main.java.exceptions.SuperSimpleStocksException;
-import main.java.model.ValueLoader;
-import main.java.view.Screen;
-
-/**
- * GBCE All Share Index demo exercise.
- * 
- * @author Samuel Maya Miles
- * @version 1.0
- */
-class SuperSimpleStocks {
-	private static final long			TICKER_TIME		= 900000;
-	private static List<AbstractStock>	stockList		= new LinkedList<>();
-	private static String				lastError		= "";
-	private static String				resultMessage	= "";
-	private static ResourceBundle		textBundle		= null;
-	private static final Screen			userScreen		= new Screen();
-	private static final ValueLoader	loader			= new ValueLoader();
-
-	public static void main(String[] args) {
-		initializeTextBundle();
-		loadValues();
-		startMenu();
-	}
-
-	/**
-	 * Initialises the TextBundle to use en_US.
-	 */
-	private static void initializeTextBundle() {
-		textBundle = ResourceBundle.getBundle("main.java.bundles.Text",
-				new Locale("en", "US"));
-	}
-
-	/**
-	 * Loads the demo start values.
-	 */
-	private static void loadValues() {
-		stockList = loader.loadDummyValues();
-	}
-
-	/**
-	 * Launches the Welcome menu and holds the logic to manage entered option.
-	 */
-	private static void startMenu() {
-		boolean exit = false;
-		try {
-			userScreen.clearScreen();
-			while (!exit) {
-				userScreen.showWelcome(lastError, resultMessage);
-				resultMessage = "";
-				String input = userScreen.readConsoleLine();
-				lastError = checkOptionValid(input, 1, 6);
-				userScreen.clearScreen();
-				if (lastError.isEmpty()) {
-					processOption(input);
-				}
-			}
-		} catch (SuperSimpleStocksException e) {
-			closeProgram(e.getMessage());
-		}
-	}
-
-	/**
-	 * Processes valid user input.
-	 * 
-	 * @param input
-	 *            String The option selected by the user.
-	 * @throws SuperSimpleStocksException
-	 *             When an exception occurs.
-	 */
-	private static void processOption(String input)
-			throws SuperSimpleStocksException {
-		int option = Integer.parseInt(input);
-		if (option == 5) {
-			resultMessage = showAllShareIndex();
-		} else if (option == 6) {
-			closeProgram(textBundle.getString("close.ok"));
-		} else {
-			AbstractStock selectedStock = selectStock();
-			if (selectedStock != null) {
-				switch (option) {
-				case 1:
-					resultMessage = String.format(
-							textBundle.getString("dividend.yield"),
-							selectedStock.getSymbol(),
-							selectedStock.getDividendYield());
-					break;
-				case 2:
-					resultMessage = String.format(
-							textBundle.getString("pe.ratio"),
-							selectedStock.getSymbol(),
-							selectedStock.getPERatio());
-					break;
-				case 3:
-					resultMessage = recordTrade(selectedStock);
-					break;
-				case 4:
-					resultMessage = String.format(
-							textBundle.getString("stock.price"),
-							selectedStock.getSymbol(),
-							selectedStock.getStockPrice(TICKER_TIME));
-					break;
-				default:
-					break;
-				}
-				userScreen.clearScreen();
-			}
-		}
-	}
-
-	/**
-	 * Prints out the GBCE All Share Index.
-	 * 
-	 * @return String A string containing the representation of the GBCE All
-	 *         Share Index to print out.
-	 */
-	private static String showAllShareIndex() {
-		String result = textBundle.getString("allshare.title");
-
-		for (AbstractStock stock : stockList) {
-			String valueToShow = textBundle.getString("allshare.notrades");
-			double geometricMean = stock.getGeometricMean();
-			if (!Double.isNaN(geometricMean)) {
-				valueToShow = String.valueOf(geometricMean);
-			}
-			result = result + stock.getSymbol() + "\t" + valueToShow + "\n";
-		}
-		return result;
-	}
-
-	/**
-	 * Shows a menu and manages the Trade creation for a given Stock.
-	 * 
-	 * @param selectedStock
-	 *            AbstractStock The Stock selected by the user where the Trade
-	 *            will be recorded.
-	 * @return String A string containing the errors detected on insertion or
-	 *         the successful message.
-	 * @throws SuperSimpleStocksException
-	 *             When an exception occurs.
-	 */
-	private static String recordTrade(final AbstractStock selectedStock)
-			throws SuperSimpleStocksException {
-		String error = "";
-		List<String> errors = new LinkedList<String>();
-		String[] enteredValues = new String[3];
-
-		userScreen.clearScreen();
-		enteredValues = userScreen.getTradeInput(selectedStock.getSymbol());
-		validateTradeInsert(enteredValues, errors);
-
-		if (errors.isEmpty()) {
-			Trade newTrade = new Trade();
-			newTrade.setTradeId(selectedStock.getTrades().size() + 1);
-			newTrade.setShares(Integer.parseInt(enteredValues[0]));
-			newTrade.setPrice(Integer.parseInt(enteredValues[1]));
-			newTrade.setSell(Boolean.parseBoolean(enteredValues[2]));
-			selectedStock.getTrades().add(newTrade);
-			return String.format(textBundle.getString("trade.insert.ok"),
-					selectedStock.getSymbol());
-		}
-
-		if (!errors.isEmpty()) {
-			error = String.format(
-					textBundle.getString("trade.insert.haserrors"),
-					selectedStock.getSymbol());
-		}
-		for (String detectedErrors : errors) {
-			error += detectedErrors;
-		}
-		return error;
-	}
-
-	/**
-	 * Validates the input fields for a Trade.
-	 * 
-	 * @param enteredValues
-	 *            String[] Holds the entered values for shares, price and buy or
-	 *            sell type.
-	 * @param errors
-	 *            List<String> List containing all the detected input errors.
-	 */
-	private static void validateTradeInsert(String[] enteredValues,
-			List<String> errors) {
-		int number = 0;
-
-		try {
-			number = Integer.parseInt(enteredValues[0]);
-			if (number < 0) {
-				errors.add(String.format(
-						textBundle.getString("trade.insert.error.shares"),
-						textBundle.getString("trade.insert.error.negative")));
-			}
-		} catch (NumberFormatException e) {
-			errors.add(String.format(textBundle
-					.getString("trade.insert.error.shares"), String.format(
-					textBundle.getString("trade.insert.error.notvalidinput"),
-					enteredValues[0])));
-		}
-
-		try {
-			number = Integer.parseInt(enteredValues[1]);
-			if (number < 0) {
-				errors.add(String.format(
-						textBundle.getString("trade.insert.error.price"),
-						textBundle.getString("trade.insert.error.negative")));
-			}
-		} catch (NumberFormatException e) {
-			errors.add(String.format(textBundle
-					.getString("trade.insert.error.price"), String.format(
-					textBundle.getString("trade.insert.error.notvalidinput"),
-					enteredValues[1])));
-		}
-
-		if (enteredValues[2].equalsIgnoreCase("B")) {
-			enteredValues[2] = "true";
-		} else if (enteredValues[2].equalsIgnoreCase("S")) {
-			enteredValues[2] = "false";
-		} else {
-			errors.add(String.format(textBundle
-					.getString("trade.insert.error.buyorsell"), String.format(
-					textBundle.getString("trade.insert.error.notvalidinput"),
-					enteredValues[2])));
-		}
-	}
-
-	/**
-	 * Prints a menu containing all the available Stocks for the user to choose
-	 * one. Also, a return option is added to cancel.
-	 * 
-	 * @return AbstractStock The selected Stock or null if return option is
-	 *         selected.
-	 * @throws SuperSimpleStocksException
-	 *             When an exception occurs.
-	 */
-	private static AbstractStock selectStock()
-			throws SuperSimpleStocksException {
-		boolean validSelection = false;
-		String error = "";
-		while (!validSelection) {
-			userScreen.clearScreen();
-			userScreen.showStockSelectionMenu(stockList, error);
-			String input = userScreen.readConsoleLine();
-			error = checkOptionValid(input, 0, stockList.size());
-			if (error.isEmpty()) {
-				int option = Integer.parseInt(input);
-				if (option < stockList.size()) {
-					return stockList.get(option);
-				} else {
-					validSelection = true;
-				}
-			}
-		}
-		return null;
-	}
-
-	/**
-	 * Closes the running program.
-	 * 
-	 * @param message
-	 *            String A message to show to user on closing.
-	 */
-	private static void closeProgram(final String message) {
-		userScreen.printMessage(message);
-		System.exit(0);
-	}
-
-	/**
-	 * Check if an entered option is valid.
-	 * 
-	 * @param input
-	 *            String Value entered in the console.
-	 * @param minValue
-	 *            Integer The minimum option value accepted.
-	 * @param maxValue
-	 *            Integer The maximum option value accepted.
-	 * @return String A string containing detected errors or empty if input was
-	 *         correct.
-	 */
-	private static String checkOptionValid(final String input,
-			final int minValue, final int maxValue) {
-		int optionValue = 0;
-		try {
-			optionValue = Integer.parseInt(input);
-		} catch (NumberFormatException e) {
-			return textBundle.getString("welcome.select.option.error.numbers");
-		}
-		if (optionValue < minValue || optionValue > maxValue) {
-			return textBundle
-					.getString("welcome.select.option.error.notavailable");
-		}
-		return "";
-	}
-}
+package main.java;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+
+import main.java.bo.FixedPoint;
+import main.java.bo.RetentionPolicy;
+import main.java.bo.impl.AbstractStock;
+import main.java.bo.impl.OffHeapTrades;
+import main.java.clock.CachedClock;
+import main.java.clock.SimulatedClock;
+import main.java.exceptions.SuperSimpleStocksException;
+import main.java.model.AllShareIndex;
+import main.java.model.IndexEngine;
+import main.java.model.IndexResult;
+import main.java.model.MarketDataPublisher;
+import main.java.model.MetricsReporter;
+import main.java.model.ReferenceDataWatcher;
+import main.java.model.StockRegistry;
+import main.java.model.StockSnapshots;
+import main.java.model.TradeJournal;
+import main.java.model.TradeRetention;
+import main.java.model.ValueLoader;
+import main.java.server.CommandProcessor;
+import main.java.server.HeadlessServer;
+import main.java.server.ShardCoordinator;
+import main.java.server.ShardRing;
+import main.java.server.TradeGateway;
+import main.java.view.Screen;
+
+/**
+ * GBCE All Share Index demo exercise.
+ * 
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+class SuperSimpleStocks {
+	private static final long			TICKER_TIME		= TimeUnit.MINUTES.toNanos(15);
+	private static StockRegistry		stockRegistry	= new StockRegistry();
+	private static String				lastError		= "";
+	private static String				resultMessage	= "";
+	private static ResourceBundle		textBundle		= null;
+	private static final Screen			userScreen		= new Screen();
+	private static final ValueLoader	loader			= new ValueLoader();
+	private static final AllShareIndex	allShareIndex	= new AllShareIndex();
+	private static final IndexEngine	indexEngine		= new IndexEngine();
+	private static TradeJournal			journal			= null;
+	private static StockSnapshots		snapshots		= null;
+	private static TradeGateway			gateway			= null;
+	private static MarketDataPublisher	publisher		= null;
+	private static TradeRetention		retention		= null;
+	private static MetricsReporter		metrics			= null;
+	private static CachedClock			cachedClock		= null;
+	private static SimulatedClock		replayClock		= null;
+	private static ReferenceDataWatcher	referenceData	= null;
+	private static ShardRing			shardRing		= null;
+	private static int					shardIndex		= 0;
+
+	public static void main(String[] args) {
+		initializeTextBundle();
+		// Before any Trade, so every chunk lands where it was asked for.
+		OffHeapTrades.setEnabled(hasArgument(args, "--off-heap"));
+		loadValues();
+		try {
+			selectShard(args);
+			selectClock(args);
+			loadTrades(args);
+			int fromSegment = restoreSnapshot(args);
+			openJournal(args, fromSegment);
+			watchReferenceData(args);
+			if (replayClock != null) {
+				for (AbstractStock stock : stockRegistry) {
+					replayClock.advanceTo(stock.getLastTradeTime());
+				}
+			}
+			if (snapshots != null) {
+				snapshots.start(journal, StockSnapshots.DEFAULT_PERIOD);
+			}
+			startRetention(args);
+			startMetrics(args);
+			startGateway(args);
+			if (hasArgument(args, "--headless")) {
+				runHeadless(args);
+			}
+		} catch (SuperSimpleStocksException e) {
+			closeProgram(e.getMessage());
+		}
+		startMenu();
+	}
+
+	/**
+	 * Keeps only the Stocks of the shard given with the --shard argument, as
+	 * index/count, if any: the Stocks the {@link ShardRing} of count nodes
+	 * places on node index. Trades and reference data for the other Stocks
+	 * are then skipped or rejected, and a {@link ShardCoordinator} routes
+	 * them to their node.
+	 * 
+	 * @param args
+	 *            String[] The program arguments.
+	 * @throws SuperSimpleStocksException
+	 *             When the shard is not valid.
+	 */
+	private static void selectShard(final String[] args)
+			throws SuperSimpleStocksException {
+		String shard = getArgument(args, "--shard");
+		if (shard == null) {
+			return;
+		}
+		try {
+			String[] parts = shard.split("/");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException(shard);
+			}
+			shardIndex = Integer.parseInt(parts[0]);
+			shardRing = new ShardRing(Integer.parseInt(parts[1]));
+			if (shardIndex < 0 || shardIndex >= shardRing.getNodeCount()) {
+				throw new IllegalArgumentException(shard);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new SuperSimpleStocksException(String.format(
+					textBundle.getString("shard.error"), shard), e);
+		}
+		delistOtherShards();
+	}
+
+	/**
+	 * Delists the Stocks the selected shard does not own, if any shard was
+	 * selected.
+	 */
+	private static void delistOtherShards() {
+		if (shardRing == null) {
+			return;
+		}
+		for (AbstractStock stock : stockRegistry.getStocks()) {
+			if (shardRing.ownerOf(stock.getSymbol()) != shardIndex) {
+				stockRegistry.delist(stock.getSymbol());
+			}
+		}
+	}
+
+	/**
+	 * Sets the clock of the Stocks given with the --clock argument: system
+	 * (the default), cached, read from a time cached every millisecond, or
+	 * replay, which stands at the time of the last loaded Trade so the
+	 * Stock price windows are evaluated against the replayed history.
+	 * 
+	 * @param args
+	 *            String[] The program arguments.
+	 * @throws SuperSimpleStocksException
+	 *             When the clock is not known.
+	 */
+	private static void selectClock(final String[] args)
+			throws SuperSimpleStocksException {
+		String clockName = getArgument(args, "--clock");
+		if (clockName == null || "system".equalsIgnoreCase(clockName)) {
+			return;
+		}
+		if ("cached".equalsIgnoreCase(clockName)) {
+			cachedClock = new CachedClock();
+			cachedClock.start();
+			stockRegistry.setClock(cachedClock);
+		} else if ("replay".equalsIgnoreCase(clockName)) {
+			replayClock = new SimulatedClock(0);
+			stockRegistry.setClock(replayClock);
+		} else {
+			throw new SuperSimpleStocksException(String.format(
+					textBundle.getString("clock.error"), clockName));
+		}
+	}
+
+	/**
+	 * Starts evicting the raw Trades beyond the limits given with the
+	 * --retention-age (milliseconds), --retention-trades (per Stock) and
+	 * --retention-bytes (per Stock) arguments, if any. Without them every
+	 * Trade is kept.
+	 * 
+	 * @param args
+	 *            String[] The program arguments.
+	 * @throws SuperSimpleStocksException
+	 *             When a limit is not a number.
+	 */
+	private static void startRetention(final String[] args)
+			throws SuperSimpleStocksException {
+		String maxAge = getArgument(args, "--retention-age");
+		String maxTrades = getArgument(args, "--retention-trades");
+		String maxBytes = getArgument(args, "--retention-bytes");
+		RetentionPolicy policy;
+		try {
+			policy = new RetentionPolicy(maxAge == null ? 0
+					: TimeUnit.MILLISECONDS.toNanos(Long.parseLong(maxAge)),
+					maxTrades == null ? 0
+					: Integer.parseInt(maxTrades), maxBytes == null ? 0
+					: Long.parseLong(maxBytes));
+		} catch (NumberFormatException e) {
+			throw new SuperSimpleStocksException(String.format(
+					textBundle.getString("retention.error"), e.getMessage()),
+					e);
+		}
+		if (!policy.isKeepAll()) {
+			retention = new TradeRetention(stockRegistry, policy);
+			retention.start(TradeRetention.DEFAULT_PERIOD);
+		}
+	}
+
+	/**
+	 * Registers the metrics in JMX and, with the --metrics-dump argument,
+	 * appends a text dump of them to the given file every --metrics-period
+	 * milliseconds (one minute by default).
+	 * 
+	 * @param args
+	 *            String[] The program arguments.
+	 * @throws SuperSimpleStocksException
+	 *             When the metrics can not be registered.
+	 */
+	private static void startMetrics(final String[] args)
+			throws SuperSimpleStocksException {
+		String file = getArgument(args, "--metrics-dump");
+		String period = getArgument(args, "--metrics-period");
+		try {
+			metrics = new MetricsReporter(stockRegistry);
+			metrics.register();
+			if (file != null) {
+				metrics.start(new File(file),
+						period == null ? MetricsReporter.DEFAULT_PERIOD : Long
+								.parseLong(period));
+			}
+		} catch (JMException | NumberFormatException e) {
+			throw new SuperSimpleStocksException(String.format(
+					textBundle.getString("metrics.error"), e.getMessage()), e);
+		}
+	}
+
+	/**
+	 * Starts the binary Trade gateway on the loopback port given with the
+	 * --gateway argument, if any, with the number of I/O threads given with
+	 * --gateway-threads (half the processors by default).
+	 * 
+	 * @param args
+	 *            String[] The program arguments.
+	 * @throws SuperSimpleStocksException
+	 *             When the gateway can not be started.
+	 */
+	private static void startGateway(final String[] args)
+			throws SuperSimpleStocksException {
+		String port = getArgument(args, "--gateway");
+		if (port == null) {
+			return;
+		}
+		String threads = getArgument(args, "--gateway-threads");
+		try {
+			int ioThreads = threads == null ? Math.max(1, Runtime
+					.getRuntime().availableProcessors() / 2) : Integer
+					.parseInt(threads);
+			gateway = new TradeGateway(stockRegistry, allShareIndex,
+					TICKER_TIME, ioThreads);
+			gateway.setJournal(journal);
+			gateway.start(new InetSocketAddress(
+					InetAddress.getLoopbackAddress(), Integer.parseInt(port)));
+		} catch (IOException | NumberFormatException e) {
+			throw new SuperSimpleStocksException(String.format(
+					textBundle.getString("gateway.error"), port), e);
+		}
+		resultMessage = String.format(textBundle.getString("gateway.ok"),
+				gateway.getPort());
+	}
+
+	/**
+	 * Runs the headless command protocol instead of the menu, over the
+	 * standard input and output or, with the --port argument, over the
+	 * connections of a loopback port. Standard input ends the program at its
+	 * end; the port serves until the program is stopped. Subscriptions are
+	 * published every --publish-cadence milliseconds (100 by default).
+	 * 
+	 * @param args
+	 *            String[] The program arguments.
+	 * @throws SuperSimpleStocksException
+	 *             When the streams or the port fail.
+	 */
+	private static void runHeadless(final String[] args)
+			throws SuperSimpleStocksException {
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				closeResources();
+			}
+		});
+		String port = getArgument(args, "--port");
+		String cadence = getArgument(args, "--publish-cadence");
+		try {
+			publisher = new MarketDataPublisher(stockRegistry, allShareIndex,
+					TICKER_TIME);
+			publisher.start(cadence == null ? MarketDataPublisher.DEFAULT_CADENCE
+					: Long.parseLong(cadence),
+					MarketDataPublisher.DEFAULT_DELIVERY_THREADS);
+			HeadlessServer server = new HeadlessServer(new CommandProcessor(
+					stockRegistry, allShareIndex, TICKER_TIME, publisher));
+			server.setJournal(journal);
+			if (port == null) {
+				server.serve(System.in, System.out);
+			} else {
+				server.listen(Integer.parseInt(port));
+			}
+		} catch (IOException | NumberFormatException e) {
+			throw new SuperSimpleStocksException(String.format(
+					textBundle.getString("headless.error"), e.getMessage()), e);
+		}
+		closeResources();
+		System.exit(0);
+	}
+
+	/**
+	 * Initialises the TextBundle to use en_US.
+	 */
+	private static void initializeTextBundle() {
+		textBundle = ResourceBundle.getBundle("main.java.bundles.Text",
+				new Locale("en", "US"));
+	}
+
+	/**
+	 * Loads the demo start values.
+	 */
+	private static void loadValues() {
+		stockRegistry = loader.loadDummyValues();
+	}
+
+	/**
+	 * Loads the Trade file given with the --trades argument, if any. A
+	 * restored snapshot would replace the loaded Trades, so the file can not
+	 * be loaded together with --snapshots.
+	 * 
+	 * @param args
+	 *            String[] The program arguments.
+	 * @throws SuperSimpleStocksException
+	 *             When the Trade file can not be loaded.
+	 */
+	private static void loadTrades(final String[] args)
+			throws SuperSimpleStocksException {
+		String tradeFile = getArgument(args, "--trades");
+		if (tradeFile != null && getArgument(args, "--snapshots") != null) {
+			throw new SuperSimpleStocksException(String.format(
+					textBundle.getString("load.error.snapshot"), tradeFile));
+		}
+		if (tradeFile != null) {
+			long loaded = loader.loadTrades(tradeFile, stockRegistry);
+			resultMessage = String.format(textBundle.getString("load.ok"),
+					loaded, tradeFile);
+		}
+	}
+
+	/**
+	 * Loads the reference data file given with the --reference-data
+	 * argument, if any, and loads it again whenever it changes.
+	 * 
+	 * @param args
+	 *            String[] The program arguments.
+	 * @throws SuperSimpleStocksException
+	 *             When the reference data file can not be loaded.
+	 */
+	private static void watchReferenceData(final String[] args)
+			throws SuperSimpleStocksException {
+		String referenceFile = getArgument(args, "--reference-data");
+		if (referenceFile != null) {
+			referenceData = loader.watchReferenceData(referenceFile,
+					stockRegistry);
+			resultMessage = String.format(textBundle.getString("refdata.ok"),
+					referenceFile);
+		}
+	}
+
+	/**
+	 * Restores the Stocks from the snapshot directory given with the
+	 * --snapshots argument, if any. The snapshots keep the Trades of the
+	 * Stock price window. Only the Stocks of the selected shard are kept.
+	 * 
+	 * @param args
+	 *            String[] The program arguments.
+	 * @return Integer The first journal segment to replay.
+	 * @throws SuperSimpleStocksException
+	 *             When the snapshot can not be read.
+	 */
+	private static int restoreSnapshot(final String[] args)
+			throws SuperSimpleStocksException {
+		String directory = getArgument(args, "--snapshots");
+		if (directory == null) {
+			return 0;
+		}
+		snapshots = new StockSnapshots(new File(directory), stockRegistry,
+				TICKER_TIME);
+		int fromSegment = loader.restoreSnapshot(snapshots);
+		// The snapshot lists every Stock it holds, even the other shards' ones.
+		delistOtherShards();
+		resultMessage = String.format(textBundle.getString("snapshot.ok"),
+				directory);
+		return fromSegment;
+	}
+
+	/**
+	 * Replays and opens the Trade journal given with the --journal argument,
+	 * if any, using the fsync policy given with --fsync (group_commit by
+	 * default).
+	 * 
+	 * @param args
+	 *            String[] The program arguments.
+	 * @param fromSegment
+	 *            Integer The first journal segment to replay.
+	 * @throws SuperSimpleStocksException
+	 *             When the journal can not be opened.
+	 */
+	private static void openJournal(final String[] args, final int fromSegment)
+			throws SuperSimpleStocksException {
+		String directory = getArgument(args, "--journal");
+		if (directory == null) {
+			return;
+		}
+		String policyName = getArgument(args, "--fsync");
+		TradeJournal.FsyncPolicy policy = TradeJournal.FsyncPolicy.GROUP_COMMIT;
+		if (policyName != null) {
+			try {
+				policy = TradeJournal.FsyncPolicy.valueOf(policyName
+						.toUpperCase(Locale.ROOT));
+			} catch (IllegalArgumentException e) {
+				throw new SuperSimpleStocksException(String.format(
+						textBundle.getString("journal.error.policy"),
+						policyName), e);
+			}
+		}
+		journal = loader.openJournal(new File(directory), policy,
+				stockRegistry, fromSegment);
+		long recorded = 0;
+		for (AbstractStock stock : stockRegistry) {
+			recorded += stock.getTradeCount();
+		}
+		resultMessage = String.format(textBundle.getString("journal.ok"),
+				directory, recorded);
+	}
+
+	/**
+	 * @param args
+	 *            String[] The program arguments.
+	 * @param name
+	 *            String The argument name.
+	 * @return Boolean True if the argument is given.
+	 */
+	private static boolean hasArgument(final String[] args, final String name) {
+		for (String arg : args) {
+			if (name.equals(arg)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the value following an argument name.
+	 * 
+	 * @param args
+	 *            String[] The program arguments.
+	 * @param name
+	 *            String The argument name.
+	 * @return String The argument value or null when not given.
+	 */
+	private static String getArgument(final String[] args, final String name) {
+		for (int i = 0; i < args.length - 1; i++) {
+			if (name.equals(args[i])) {
+				return args[i + 1];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Launches the Welcome menu and holds the logic to manage entered option.
+	 */
+	private static void startMenu() {
+		boolean exit = false;
+		try {
+			userScreen.clearScreen();
+			while (!exit) {
+				userScreen.showWelcome(lastError, resultMessage);
+				resultMessage = "";
+				String input = userScreen.readConsoleLine();
+				lastError = checkOptionValid(input, 1, 6);
+				userScreen.clearScreen();
+				if (lastError.isEmpty()) {
+					processOption(input);
+				}
+			}
+		} catch (SuperSimpleStocksException e) {
+			closeProgram(e.getMessage());
+		}
+	}
+
+	/**
+	 * Processes valid user input.
+	 * 
+	 * @param input
+	 *            String The option selected by the user.
+	 * @throws SuperSimpleStocksException
+	 *             When an exception occurs.
+	 */
+	private static void processOption(String input)
+			throws SuperSimpleStocksException {
+		int option = Integer.parseInt(input);
+		if (option == 5) {
+			resultMessage = showAllShareIndex();
+		} else if (option == 6) {
+			closeProgram(textBundle.getString("close.ok"));
+		} else {
+			AbstractStock selectedStock = selectStock();
+			if (selectedStock != null) {
+				switch (option) {
+				case 1:
+					resultMessage = String.format(
+							textBundle.getString("dividend.yield"),
+							selectedStock.getSymbol(),
+							selectedStock.getDividendYield());
+					break;
+				case 2:
+					resultMessage = String.format(
+							textBundle.getString("pe.ratio"),
+							selectedStock.getSymbol(),
+							selectedStock.getPERatio());
+					break;
+				case 3:
+					resultMessage = recordTrade(selectedStock);
+					break;
+				case 4:
+					resultMessage = String.format(
+							textBundle.getString("stock.price"),
+							selectedStock.getSymbol(),
+							FixedPoint.format(selectedStock
+									.getStockPrice(TICKER_TIME)));
+					break;
+				default:
+					break;
+				}
+				userScreen.clearScreen();
+			}
+		}
+	}
+
+	/**
+	 * Prints out the GBCE All Share Index.
+	 * 
+	 * @return String A string containing the representation of the GBCE All
+	 *         Share Index to print out.
+	 */
+	private static String showAllShareIndex() {
+		String noTrades = textBundle.getString("allshare.notrades");
+		StringBuilder result = new StringBuilder(
+				textBundle.getString("allshare.title"));
+
+		IndexResult index = indexEngine.calculate(stockRegistry);
+		for (int i = 0; i < index.getStockCount(); i++) {
+			result.append(index.getSymbol(i)).append('\t');
+			double geometricMean = index.getGeometricMean(i);
+			if (Double.isNaN(geometricMean)) {
+				result.append(noTrades);
+			} else {
+				result.append(geometricMean);
+			}
+			result.append('\n');
+		}
+
+		String indexToShow = noTrades;
+		double indexValue = index.getValue();
+		if (!Double.isNaN(indexValue)) {
+			indexToShow = String.valueOf(indexValue);
+		}
+		return result.append(
+				String.format(textBundle.getString("allshare.index"),
+						indexToShow)).toString();
+	}
+
+	/**
+	 * Shows a menu and manages the Trade creation for a given Stock.
+	 * 
+	 * @param selectedStock
+	 *            AbstractStock The Stock selected by the user where the Trade
+	 *            will be recorded.
+	 * @return String A string containing the errors detected on insertion or
+	 *         the successful message.
+	 * @throws SuperSimpleStocksException
+	 *             When an exception occurs.
+	 */
+	private static String recordTrade(final AbstractStock selectedStock)
+			throws SuperSimpleStocksException {
+		String error = "";
+		List<String> errors = new LinkedList<String>();
+		String[] enteredValues = new String[3];
+
+		userScreen.clearScreen();
+		enteredValues = userScreen.getTradeInput(selectedStock.getSymbol());
+		validateTradeInsert(enteredValues, errors);
+
+		if (errors.isEmpty()) {
+			selectedStock.recordTrade(Integer.parseInt(enteredValues[0]),
+					FixedPoint.parse(enteredValues[1]),
+					Boolean.parseBoolean(enteredValues[2]));
+			if (journal != null) {
+				try {
+					journal.awaitDurable();
+				} catch (IllegalStateException e) {
+					return String.format(
+							textBundle.getString("journal.error.write"),
+							selectedStock.getSymbol(), e.getMessage());
+				}
+			}
+			return String.format(textBundle.getString("trade.insert.ok"),
+					selectedStock.getSymbol());
+		}
+
+		if (!errors.isEmpty()) {
+			error = String.format(
+					textBundle.getString("trade.insert.haserrors"),
+					selectedStock.getSymbol());
+		}
+		for (String detectedErrors : errors) {
+			error += detectedErrors;
+		}
+		return error;
+	}
+
+	/**
+	 * Validates the input fields for a Trade.
+	 * 
+	 * @param enteredValues
+	 *            String[] Holds the entered values for shares, price and buy or
+	 *            sell type.
+	 * @param errors
+	 *            List<String> List containing all the detected input errors.
+	 */
+	private static void validateTradeInsert(String[] enteredValues,
+			List<String> errors) {
+		long number = 0;
+
+		try {
+			number = Integer.parseInt(enteredValues[0]);
+			if (number < 0) {
+				errors.add(String.format(
+						textBundle.getString("trade.insert.error.shares"),
+						textBundle.getString("trade.insert.error.negative")));
+			}
+		} catch (NumberFormatException e) {
+			errors.add(String.format(textBundle
+					.getString("trade.insert.error.shares"), String.format(
+					textBundle.getString("trade.insert.error.notvalidinput"),
+					enteredValues[0])));
+		}
+
+		try {
+			number = FixedPoint.parse(enteredValues[1]);
+			if (number < 0) {
+				errors.add(String.format(
+						textBundle.getString("trade.insert.error.price"),
+						textBundle.getString("trade.insert.error.negative")));
+			}
+		} catch (NumberFormatException e) {
+			errors.add(String.format(textBundle
+					.getString("trade.insert.error.price"), String.format(
+					textBundle.getString("trade.insert.error.notvalidinput"),
+					enteredValues[1])));
+		}
+
+		if (enteredValues[2].equalsIgnoreCase("B")) {
+			enteredValues[2] = "false";
+		} else if (enteredValues[2].equalsIgnoreCase("S")) {
+			enteredValues[2] = "true";
+		} else {
+			errors.add(String.format(textBundle
+					.getString("trade.insert.error.buyorsell"), String.format(
+					textBundle.getString("trade.insert.error.notvalidinput"),
+					enteredValues[2])));
+		}
+	}
+
+	/**
+	 * Prints a menu containing all the available Stocks for the user to choose
+	 * one. Also, a return option is added to cancel.
+	 * 
+	 * @return AbstractStock The selected Stock or null if return option is
+	 *         selected.
+	 * @throws SuperSimpleStocksException
+	 *             When an exception occurs.
+	 */
+	private static AbstractStock selectStock()
+			throws SuperSimpleStocksException {
+		boolean validSelection = false;
+		String error = "";
+		while (!validSelection) {
+			userScreen.clearScreen();
+			userScreen.showStockSelectionMenu(stockRegistry, error);
+			String input = userScreen.readConsoleLine();
+			error = checkOptionValid(input, 0, stockRegistry.getIdCount());
+			if (error.isEmpty()) {
+				int option = Integer.parseInt(input);
+				if (option < stockRegistry.getIdCount()) {
+					AbstractStock stock = stockRegistry.get(option);
+					if (stock != null) {
+						return stock;
+					}
+					error = textBundle
+							.getString("welcome.select.option.error.notavailable");
+				} else {
+					validSelection = true;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Closes the running program.
+	 * 
+	 * @param message
+	 *            String A message to show to user on closing.
+	 */
+	private static void closeProgram(final String message) {
+		userScreen.printMessage(message);
+		closeResources();
+		System.exit(0);
+	}
+
+	/**
+	 * Stops the eviction, the metrics dumps, the reference data watcher, the
+	 * publisher and the gateway, takes the last snapshot and closes the
+	 * journal, once.
+	 */
+	private static synchronized void closeResources() {
+		if (retention != null) {
+			retention.close();
+			retention = null;
+		}
+		if (metrics != null) {
+			metrics.close();
+			metrics = null;
+		}
+		if (cachedClock != null) {
+			cachedClock.close();
+			cachedClock = null;
+		}
+		if (referenceData != null) {
+			referenceData.close();
+			referenceData = null;
+		}
+		if (publisher != null) {
+			publisher.close();
+			publisher = null;
+		}
+		if (gateway != null) {
+			try {
+				gateway.close();
+			} catch (IOException e) {
+				userScreen.printMessage(String.format(
+						textBundle.getString("gateway.error"), e.getMessage()));
+			}
+			gateway = null;
+		}
+		if (snapshots != null) {
+			try {
+				snapshots.close();
+			} catch (IOException e) {
+				userScreen.printMessage(String.format(
+						textBundle.getString("snapshot.error.write"),
+						e.getMessage()));
+			}
+			snapshots = null;
+		}
+		if (journal != null) {
+			try {
+				journal.close();
+			} catch (IOException e) {
+				userScreen.printMessage(String.format(
+						textBundle.getString("journal.error.close"),
+						e.getMessage()));
+			}
+			journal = null;
+		}
+	}
+
+	/**
+	 * Check if an entered option is valid.
+	 * 
+	 * @param input
+	 *            String Value entered in the console.
+	 * @param minValue
+	 *            Integer The minimum option value accepted.
+	 * @param maxValue
+	 *            Integer The maximum option value accepted.
+	 * @return String A string containing detected errors or empty if input was
+	 *         correct.
+	 */
+	private static String checkOptionValid(final String input,
+			final int minValue, final int maxValue) {
+		int optionValue = 0;
+		try {
+			optionValue = Integer.parseInt(input);
+		} catch (NumberFormatException e) {
+			return textBundle.getString("welcome.select.option.error.numbers");
+		}
+		if (optionValue < minValue || optionValue > maxValue) {
+			return textBundle
+					.getString("welcome.select.option.error.notavailable");
+		}
+		return "";
+	}
+}
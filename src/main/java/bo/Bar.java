@@ -0,0 +1,111 @@
+package main.java.bo;
+
+/**
+ * DTO for an OHLCV bar: the Trades of a Stock within one interval. Prices
+ * and values are {@link FixedPoint} units.
+ * 
+ * @author Samuel Maya Miles
+ * @version 1.0
+ *
+ */
+public class Bar {
+	private final BarInterval	interval;
+	private final long			startTime;
+	private final long			open;
+	private final long			high;
+	private final long			low;
+	private final long			close;
+	private final long			volume;
+	private final long			tradedValue;
+	private final int			tradeCount;
+
+	public Bar(BarInterval interval, long startTime, long open, long high,
+			long low, long close, long volume, long tradedValue, int tradeCount) {
+		this.interval = interval;
+		this.startTime = startTime;
+		this.open = open;
+		this.high = high;
+		this.low = low;
+		this.close = close;
+		this.volume = volume;
+		this.tradedValue = tradedValue;
+		this.tradeCount = tradeCount;
+	}
+
+	/**
+	 * Calculate the Volume Weighted Stock Price of the bar.
+	 * 
+	 * @return Long The VWAP rounded to the nearest unit or 0 when no shares
+	 *         were traded.
+	 */
+	public long getVwap() {
+		if (volume == 0) {
+			return 0;
+		}
+		return FixedPoint.divide(tradedValue, volume);
+	}
+
+	// Getters
+	/**
+	 * @return BarInterval The interval of the bar.
+	 */
+	public BarInterval getInterval() {
+		return interval;
+	}
+
+	/**
+	 * @return Long The start time of the bar in nanoseconds since the epoch.
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+
+	/**
+	 * @return Long The price of the first Trade.
+	 */
+	public long getOpen() {
+		return open;
+	}
+
+	/**
+	 * @return Long The highest price.
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * @return Long The lowest price.
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	/**
+	 * @return Long The price of the last Trade.
+	 */
+	public long getClose() {
+		return close;
+	}
+
+	/**
+	 * @return Long The traded shares.
+	 */
+	public long getVolume() {
+		return volume;
+	}
+
+	/**
+	 * @return Long The traded value, price * shares.
+	 */
+	public long getTradedValue() {
+		return tradedValue;
+	}
+
+	/**
+	 * @return Integer The number of Trades.
+	 */
+	public int getTradeCount() {
+		return tradeCount;
+	}
+}
@@ -0,0 +1,46 @@
+package main.java.bo;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Intervals of the OHLCV bars kept for every Stock, with the number of bars
+ * each one keeps.
+ * 
+ * @author Samuel Maya Miles
+ * @version 1.0
+ *
+ */
+public enum BarInterval {
+	/** One second bars, the last hour. */
+	SECOND(TimeUnit.SECONDS.toNanos(1), 3600),
+	/** One minute bars, the last day. */
+	MINUTE(TimeUnit.MINUTES.toNanos(1), 1440),
+	/** Five minute bars, the last two days. */
+	FIVE_MINUTES(TimeUnit.MINUTES.toNanos(5), 576),
+	/** Fifteen minute bars, the last week. */
+	FIFTEEN_MINUTES(TimeUnit.MINUTES.toNanos(15), 672),
+	/** One hour bars, the last thirty days. */
+	HOUR(TimeUnit.HOURS.toNanos(1), 720);
+
+	private final long	length;
+	private final int	capacity;
+
+	private BarInterval(long length, int capacity) {
+		this.length = length;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @return Long The length of a bar in nanoseconds.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return Integer The number of bars kept.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+}
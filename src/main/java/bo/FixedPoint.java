@@ -0,0 +1,164 @@
+package main.java.bo;
+
+/**
+ * Fixed point arithmetic for prices and dividends. Amounts are held as a
+ * long count of {@link #SCALE}ths of a penny, so sub-penny prices are exact
+ * and sums and products of them are plain integer operations: reproducible,
+ * free of rounding drift and allocation free.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public final class FixedPoint {
+	/** Decimal places of a penny kept. */
+	public static final int		DECIMALS	= 4;
+	/** Units per penny. */
+	public static final long	SCALE		= 10000;
+	/** The natural logarithm of the scale. */
+	public static final double	LOG_SCALE	= Math.log(SCALE);
+
+	private FixedPoint() {
+	}
+
+	/**
+	 * @param pennies
+	 *            Long A whole number of pennies.
+	 * @return Long The amount in fixed point units.
+	 */
+	public static long fromPennies(final long pennies) {
+		return pennies * SCALE;
+	}
+
+	/**
+	 * @param amount
+	 *            Long An amount in fixed point units.
+	 * @return Double The amount in pennies, for display and ratios.
+	 */
+	public static double toDouble(final long amount) {
+		return (double) amount / SCALE;
+	}
+
+	/**
+	 * Divides two integers rounding half away from zero, so a price derived
+	 * from totals is the nearest unit rather than truncated.
+	 *
+	 * @param dividend
+	 *            Long The dividend.
+	 * @param divisor
+	 *            Long The divisor, not 0.
+	 * @return Long The rounded quotient.
+	 */
+	public static long divide(final long dividend, final long divisor) {
+		long quotient = dividend / divisor;
+		long remainder = dividend % divisor;
+		if (Math.abs(remainder) >= Math.abs(divisor) - Math.abs(remainder)) {
+			quotient += (dividend ^ divisor) < 0 ? -1 : 1;
+		}
+		return quotient;
+	}
+
+	/**
+	 * @param amount
+	 *            Long An amount in fixed point units.
+	 * @param tickSize
+	 *            Long The tick size in fixed point units, 1 or less for
+	 *            every unit.
+	 * @return Long The amount rounded to the nearest tick, half away from
+	 *         zero.
+	 */
+	public static long roundToTick(final long amount, final long tickSize) {
+		if (tickSize <= 1) {
+			return amount;
+		}
+		return divide(amount, tickSize) * tickSize;
+	}
+
+	/**
+	 * Parses an amount of pennies written in decimal, with up to
+	 * {@link #DECIMALS} decimal places.
+	 *
+	 * @param text
+	 *            CharSequence The amount, like 120 or 120.25.
+	 * @return Long The amount in fixed point units.
+	 * @throws NumberFormatException
+	 *             When the text is not such an amount.
+	 */
+	public static long parse(final CharSequence text) {
+		int length = text.length();
+		int position = 0;
+		boolean negative = false;
+		if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+			negative = text.charAt(0) == '-';
+			position++;
+		}
+		long amount = 0;
+		int digits = 0;
+		int decimals = -1;
+		for (; position < length; position++) {
+			char character = text.charAt(position);
+			if (character == '.' && decimals < 0) {
+				decimals = 0;
+				continue;
+			}
+			if (character < '0' || character > '9' || decimals == DECIMALS
+					|| amount > (Long.MAX_VALUE - 9) / 10) {
+				throw new NumberFormatException("For input string: \"" + text
+						+ "\"");
+			}
+			amount = amount * 10 + (character - '0');
+			digits++;
+			if (decimals >= 0) {
+				decimals++;
+			}
+		}
+		if (digits == 0) {
+			throw new NumberFormatException("For input string: \"" + text
+					+ "\"");
+		}
+		for (int i = Math.max(decimals, 0); i < DECIMALS; i++) {
+			if (amount > Long.MAX_VALUE / 10) {
+				throw new NumberFormatException("For input string: \""
+						+ text + "\"");
+			}
+			amount *= 10;
+		}
+		return negative ? -amount : amount;
+	}
+
+	/**
+	 * @param amount
+	 *            Long An amount in fixed point units.
+	 * @return String The amount in pennies without trailing decimal zeros,
+	 *         like 120 or 120.25.
+	 */
+	public static String format(final long amount) {
+		return append(new StringBuilder(24), amount).toString();
+	}
+
+	/**
+	 * Appends an amount as written by {@link #format(long)}.
+	 *
+	 * @param builder
+	 *            StringBuilder Receives the amount.
+	 * @param amount
+	 *            Long An amount in fixed point units.
+	 * @return StringBuilder The builder.
+	 */
+	public static StringBuilder append(final StringBuilder builder,
+			final long amount) {
+		long pennies = amount / SCALE;
+		long fraction = Math.abs(amount % SCALE);
+		if (amount < 0 && pennies == 0) {
+			builder.append('-');
+		}
+		builder.append(pennies);
+		if (fraction != 0) {
+			builder.append('.');
+			for (long unit = SCALE / 10; unit > 0 && fraction != 0; unit /= 10) {
+				builder.append((char) ('0' + fraction / unit));
+				fraction %= unit;
+			}
+		}
+		return builder;
+	}
+}
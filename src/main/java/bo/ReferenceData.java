@@ -0,0 +1,90 @@
+package main.java.bo;
+
+/**
+ * DTO for the reference data of a Stock: the values its Dividend Yield and
+ * P/E Ratio are calculated from. Instances are immutable, so a Stock swaps
+ * all of them at once and readers never see a mix of old and new values.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ *
+ */
+public class ReferenceData {
+	public static final ReferenceData	NONE	= new ReferenceData(0, 0, 0);
+
+	private final long					lastDividend;
+	private final int					fixedDividend;
+	private final long					parValue;
+
+	public ReferenceData(long lastDividend, int fixedDividend, long parValue) {
+		this.lastDividend = lastDividend;
+		this.fixedDividend = fixedDividend;
+		this.parValue = parValue;
+	}
+
+	/**
+	 * @param newLastDividend
+	 *            Long The lastDividend in fixed point units.
+	 * @return ReferenceData A copy with another lastDividend.
+	 */
+	public ReferenceData withLastDividend(long newLastDividend) {
+		return new ReferenceData(newLastDividend, fixedDividend, parValue);
+	}
+
+	/**
+	 * @param newFixedDividend
+	 *            Integer The fixedDividend.
+	 * @return ReferenceData A copy with another fixedDividend.
+	 */
+	public ReferenceData withFixedDividend(int newFixedDividend) {
+		return new ReferenceData(lastDividend, newFixedDividend, parValue);
+	}
+
+	/**
+	 * @param newParValue
+	 *            Long The parValue in fixed point units.
+	 * @return ReferenceData A copy with another parValue.
+	 */
+	public ReferenceData withParValue(long newParValue) {
+		return new ReferenceData(lastDividend, fixedDividend, newParValue);
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof ReferenceData)) {
+			return false;
+		}
+		ReferenceData data = (ReferenceData) other;
+		return lastDividend == data.lastDividend
+				&& fixedDividend == data.fixedDividend
+				&& parValue == data.parValue;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (lastDividend ^ (lastDividend >>> 32)) * 31 * 31
+				+ fixedDividend * 31 + (int) (parValue ^ (parValue >>> 32));
+	}
+
+	// Getters
+	/**
+	 * @return Long The lastDividend in fixed point units.
+	 */
+	public long getLastDividend() {
+		return lastDividend;
+	}
+
+	/**
+	 * @return Integer The fixedDividend, only used by Preferred Stocks.
+	 */
+	public int getFixedDividend() {
+		return fixedDividend;
+	}
+
+	/**
+	 * @return Long The parValue in fixed point units.
+	 */
+	public long getParValue() {
+		return parValue;
+	}
+}
@@ -0,0 +1,66 @@
+package main.java.bo;
+
+/**
+ * DTO for the limits of the raw Trades a Stock keeps in memory. Trades
+ * beyond any of the limits may be evicted; the running totals of the Stock
+ * still count them. A limit of 0 means no limit.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ *
+ */
+public class RetentionPolicy {
+	/** Keeps every Trade. */
+	public static final RetentionPolicy	KEEP_ALL	= new RetentionPolicy(0,
+															0, 0);
+
+	private final long					maxAge;
+	private final int					maxTrades;
+	private final long					maxBytes;
+
+	/**
+	 * @param maxAge
+	 *            Long The age in nanoseconds after which a Trade may be
+	 *            evicted. Keep it above the longest Stock price window.
+	 * @param maxTrades
+	 *            Integer The number of latest Trades kept.
+	 * @param maxBytes
+	 *            Long The memory budget of the Trades kept in bytes.
+	 */
+	public RetentionPolicy(long maxAge, int maxTrades, long maxBytes) {
+		this.maxAge = maxAge;
+		this.maxTrades = maxTrades;
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return Boolean True if no limit is set.
+	 */
+	public boolean isKeepAll() {
+		return maxAge <= 0 && maxTrades <= 0 && maxBytes <= 0;
+	}
+
+	// Getters
+	/**
+	 * @return Long The age in nanoseconds after which a Trade may be
+	 *         evicted, 0 for no limit.
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * @return Integer The number of latest Trades kept, 0 for no limit.
+	 */
+	public int getMaxTrades() {
+		return maxTrades;
+	}
+
+	/**
+	 * @return Long The memory budget of the Trades kept in bytes, 0 for no
+	 *         limit.
+	 */
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+}
@@ -0,0 +1,56 @@
+package main.java.bo;
+
+/**
+ * DTO for the derived metrics of a Stock at one version of its Trades and
+ * dividends: the ticker price and the Dividend Yield and P/E Ratio
+ * calculated from it.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ *
+ */
+public class StockMetrics {
+	private final long		version;
+	private final long		tickerPrice;
+	private final double	dividendYield;
+	private final double	peRatio;
+
+	public StockMetrics(long version, long tickerPrice, double dividendYield,
+			double peRatio) {
+		this.version = version;
+		this.tickerPrice = tickerPrice;
+		this.dividendYield = dividendYield;
+		this.peRatio = peRatio;
+	}
+
+	// Getters
+	/**
+	 * @return Long The version of the Trades and dividends the metrics were
+	 *         calculated for.
+	 */
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return Long The price of the last Trade in fixed point units, 0 when
+	 *         there are none.
+	 */
+	public long getTickerPrice() {
+		return tickerPrice;
+	}
+
+	/**
+	 * @return Double The Dividend Yield.
+	 */
+	public double getDividendYield() {
+		return dividendYield;
+	}
+
+	/**
+	 * @return Double The P/E Ratio.
+	 */
+	public double getPERatio() {
+		return peRatio;
+	}
+}
@@ -0,0 +1,139 @@
+package main.java.bo;
+
+/**
+ * DTO for the buy and sell side totals of the Trades of a Stock within a
+ * rolling time window.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ *
+ */
+public class TradeFlow {
+	private final long	windowLength;
+	private final long	buyShares;
+	private final long	buyValue;
+	private final int	buyTrades;
+	private final long	sellShares;
+	private final long	sellValue;
+	private final int	sellTrades;
+
+	public TradeFlow(long windowLength, long buyShares, long buyValue,
+			int buyTrades, long sellShares, long sellValue, int sellTrades) {
+		this.windowLength = windowLength;
+		this.buyShares = buyShares;
+		this.buyValue = buyValue;
+		this.buyTrades = buyTrades;
+		this.sellShares = sellShares;
+		this.sellValue = sellValue;
+		this.sellTrades = sellTrades;
+	}
+
+	/**
+	 * Calculate the Volume Weighted Stock Price of the buy Trades.
+	 *
+	 * @return Long The buy VWAP in fixed point units or 0 when no shares were
+	 *         bought.
+	 */
+	public long getBuyVwap() {
+		return vwap(buyValue, buyShares);
+	}
+
+	/**
+	 * Calculate the Volume Weighted Stock Price of the sell Trades.
+	 *
+	 * @return Long The sell VWAP in fixed point units or 0 when no shares
+	 *         were sold.
+	 */
+	public long getSellVwap() {
+		return vwap(sellValue, sellShares);
+	}
+
+	/**
+	 * Calculate the Volume Weighted Stock Price of both sides.
+	 *
+	 * @return Long The VWAP in fixed point units or 0 when no shares were
+	 *         traded.
+	 */
+	public long getVwap() {
+		return vwap(buyValue + sellValue, buyShares + sellShares);
+	}
+
+	/**
+	 * Calculate the order flow imbalance: the bought minus the sold shares
+	 * over the traded shares.
+	 *
+	 * @return Double The imbalance between -1 (only sells) and 1 (only buys),
+	 *         0 when no shares were traded.
+	 */
+	public double getImbalance() {
+		long volume = buyShares + sellShares;
+		if (volume == 0) {
+			return 0;
+		}
+		return (double) (buyShares - sellShares) / volume;
+	}
+
+	private static long vwap(final long value, final long shares) {
+		if (shares == 0) {
+			return 0;
+		}
+		return FixedPoint.divide(value, shares);
+	}
+
+	// Getters
+	/**
+	 * @return Long The window length in nanoseconds.
+	 */
+	public long getWindowLength() {
+		return windowLength;
+	}
+
+	/**
+	 * @return Long The shares bought.
+	 */
+	public long getBuyShares() {
+		return buyShares;
+	}
+
+	/**
+	 * @return Long The traded value of the buy Trades in fixed point units.
+	 */
+	public long getBuyValue() {
+		return buyValue;
+	}
+
+	/**
+	 * @return Integer The number of buy Trades.
+	 */
+	public int getBuyTrades() {
+		return buyTrades;
+	}
+
+	/**
+	 * @return Long The shares sold.
+	 */
+	public long getSellShares() {
+		return sellShares;
+	}
+
+	/**
+	 * @return Long The traded value of the sell Trades in fixed point units.
+	 */
+	public long getSellValue() {
+		return sellValue;
+	}
+
+	/**
+	 * @return Integer The number of sell Trades.
+	 */
+	public int getSellTrades() {
+		return sellTrades;
+	}
+
+	/**
+	 * @return Integer The number of Trades of both sides.
+	 */
+	public int getTradeCount() {
+		return buyTrades + sellTrades;
+	}
+}
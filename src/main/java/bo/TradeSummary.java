@@ -0,0 +1,105 @@
+package main.java.bo;
+
+/**
+ * DTO for the totals and price range of the Trades of a Stock within a
+ * historical time range.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ *
+ */
+public class TradeSummary {
+	private final long		fromTime;
+	private final long		toTime;
+	private final int		tradeCount;
+	private final long		shares;
+	private final long		value;
+	private final long		high;
+	private final long		low;
+	private final double	geometricMean;
+
+	public TradeSummary(long fromTime, long toTime, int tradeCount,
+			long shares, long value, long high, long low, double geometricMean) {
+		this.fromTime = fromTime;
+		this.toTime = toTime;
+		this.tradeCount = tradeCount;
+		this.shares = shares;
+		this.value = value;
+		this.high = high;
+		this.low = low;
+		this.geometricMean = geometricMean;
+	}
+
+	/**
+	 * Calculate the Volume Weighted Stock Price of the range.
+	 *
+	 * @return Long The VWAP in fixed point units or 0 when no shares were
+	 *         traded.
+	 */
+	public long getVwap() {
+		if (shares == 0) {
+			return 0;
+		}
+		return FixedPoint.divide(value, shares);
+	}
+
+	// Getters
+	/**
+	 * @return Long The start of the range in nanoseconds, included.
+	 */
+	public long getFromTime() {
+		return fromTime;
+	}
+
+	/**
+	 * @return Long The end of the range in nanoseconds, excluded.
+	 */
+	public long getToTime() {
+		return toTime;
+	}
+
+	/**
+	 * @return Integer The number of Trades.
+	 */
+	public int getTradeCount() {
+		return tradeCount;
+	}
+
+	/**
+	 * @return Long The shares traded.
+	 */
+	public long getShares() {
+		return shares;
+	}
+
+	/**
+	 * @return Long The traded value in fixed point units.
+	 */
+	public long getValue() {
+		return value;
+	}
+
+	/**
+	 * @return Long The highest price in fixed point units or 0 when there are
+	 *         no Trades.
+	 */
+	public long getHigh() {
+		return high;
+	}
+
+	/**
+	 * @return Long The lowest price in fixed point units or 0 when there are
+	 *         no Trades.
+	 */
+	public long getLow() {
+		return low;
+	}
+
+	/**
+	 * @return Double The Geometric Mean of the prices or NaN when there are no
+	 *         Trades.
+	 */
+	public double getGeometricMean() {
+		return geometricMean;
+	}
+}
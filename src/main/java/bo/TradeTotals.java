@@ -0,0 +1,63 @@
+package main.java.bo;
+
+/**
+ * DTO for the running totals of the first Trades of a Stock, all read from
+ * the same Trades so the count always matches its totals.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ *
+ */
+public class TradeTotals {
+	private final int		tradeCount;
+	private final long		tradedValue;
+	private final long		tradedShares;
+	private final double	logPriceSum;
+	private final int		zeroPriceTrades;
+
+	public TradeTotals(int tradeCount, long tradedValue, long tradedShares,
+			double logPriceSum, int zeroPriceTrades) {
+		this.tradeCount = tradeCount;
+		this.tradedValue = tradedValue;
+		this.tradedShares = tradedShares;
+		this.logPriceSum = logPriceSum;
+		this.zeroPriceTrades = zeroPriceTrades;
+	}
+
+	// Getters
+	/**
+	 * @return Integer The number of Trades from the first one.
+	 */
+	public int getTradeCount() {
+		return tradeCount;
+	}
+
+	/**
+	 * @return Long The traded value, price * shares in fixed point units, of
+	 *         those Trades.
+	 */
+	public long getTradedValue() {
+		return tradedValue;
+	}
+
+	/**
+	 * @return Long The traded shares of those Trades.
+	 */
+	public long getTradedShares() {
+		return tradedShares;
+	}
+
+	/**
+	 * @return Double The sum of the logarithms of their non zero prices.
+	 */
+	public double getLogPriceSum() {
+		return logPriceSum;
+	}
+
+	/**
+	 * @return Integer The number of them recorded at a zero price.
+	 */
+	public int getZeroPriceTrades() {
+		return zeroPriceTrades;
+	}
+}
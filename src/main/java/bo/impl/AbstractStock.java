@@ -1,166 +1,796 @@
-package main.java.bo.impl;
-
-import java.util.Date;
-import java.util.Iterator;
-import java.util.LinkedList;
-
-import main.java.bo.Trade;
-
-/**
- * Abstract class holding common values for Stock types.
- * 
- * @author Samuel Maya Miles
- * @version 1.0
- */
-public abstract class AbstractStock {
-	private String				symbol			= "";
-	private int					lastDividend	= 0;
-	private int					parValue		= 0;
-	private LinkedList<Trade>	trades			= new LinkedList<Trade>();
-
-	// Abstract Methods (Will be implemented by extending classes).
-	/**
-	 * Get the Stock type.
-	 * 
-	 * @return String The stock type value.
-	 */
-	public abstract String getStockType();
-
-	/**
-	 * Calculate the Dividend Yield.
-	 * 
-	 * @return Double The Divided Yield value.
-	 */
-	public abstract double getDividendYield();
-
-	// Common methods for Stock dto's.
-	/**
-	 * Calculate the Ticker price.
-	 * 
-	 * @return Double The Ticker price.
-	 */
-	protected final double getTickerPrice() {
-		int tickerPrice = 0;
-		if (!trades.isEmpty()) {
-			tickerPrice = getTrades().getLast().getPrice();
-		}
-		return tickerPrice;
-	}
-
-	/**
-	 * Calculate the P/E Ratio price.
-	 * 
-	 * @return Double The P/E Ratio.
-	 */
-	public final double getPERatio() {
-		double tickerPrice = getTickerPrice();
-		if (tickerPrice == 0 || lastDividend == 0) {
-			return 0;
-		}
-		return (tickerPrice / lastDividend);
-	}
-
-	/**
-	 * Calculate the Geometric Mean.
-	 * 
-	 * @return Double The Geometric Mean.
-	 */
-	public final double getGeometricMean() {
-		double total = 1.0;
-		for (Trade trade : trades) {
-			total = total * trade.getPrice();
-		}
-		return Math.pow(total, 1.0 / trades.size());
-	}
-
-	/**
-	 * Calculate the Stock price within a given time lapse.
-	 * 
-	 * @param tickerTime
-	 *            Long The maximum time in milliseconds allowed.
-	 * @return Integer The Stock price.
-	 */
-	public final int getStockPrice(final long tickerTime) {
-		int stockPrice = 0;
-		long nowTime = new Date().getTime();
-		double divisor = 0;
-		double dividend = 0;
-
-		Iterator<Trade> tradesIterator = trades.listIterator();
-		while (tradesIterator.hasNext()) {
-			Trade currentTrade = tradesIterator.next();
-			long tradeTime = currentTrade.getTradeDate().getTime();
-			if (nowTime - tradeTime <= tickerTime) {
-				divisor += currentTrade.getShares();
-				dividend += (currentTrade.getPrice() * currentTrade.getShares());
-			}
-		}
-
-		if (divisor != 0) {
-			stockPrice = (int) (dividend / divisor);
-		}
-
-		return stockPrice;
-	}
-
-	// Getters & Setters
-	/**
-	 * @return String The symbol.
-	 */
-	public String getSymbol() {
-		return symbol;
-	}
-
-	/**
-	 * @param symbol
-	 *            String The symbol to set.
-	 */
-	public void setSymbol(String symbol) {
-		this.symbol = symbol;
-	}
-
-	/**
-	 * @return Integer The lastDividend.
-	 */
-	public int getLastDividend() {
-		return lastDividend;
-	}
-
-	/**
-	 * @param lastDividend
-	 *            Integer The lastDividend to set.
-	 */
-	public void setLastDividend(int lastDividend) {
-		this.lastDividend = lastDividend;
-	}
-
-	/**
-	 * @return Integer The parValue.
-	 */
-	public final int getParValue() {
-		return parValue;
-	}
-
-	/**
-	 * @param parValue
-	 *            Integer The parValue to set.
-	 */
-	public void setParValue(int parValue) {
-		this.parValue = parValue;
-	}
-
-	/**
-	 * @return trades LinkedList<Trade> The Stock trades.
-	 */
-	public LinkedList<Trade> getTrades() {
-		return trades;
-	}
-
-	/**
-	 * @param trades
-	 *            LinkedList <Trade> The trades to set.
-	 */
-	public void setTrades(LinkedList<Trade> trades) {
-		this.trades = trades;
-	}
-}
+package main.java.bo.impl;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import main.java.bo.Bar;
+import main.java.bo.BarInterval;
+import main.java.bo.FixedPoint;
+import main.java.bo.ReferenceData;
+import main.java.bo.RetentionPolicy;
+import main.java.bo.StockMetrics;
+import main.java.bo.Trade;
+import main.java.bo.TradeFlow;
+import main.java.bo.TradeSummary;
+import main.java.bo.TradeTotals;
+import main.java.clock.Clock;
+import main.java.clock.SystemClock;
+import main.java.metrics.Metrics;
+
+/**
+ * Abstract class holding common values for Stock types.
+ * <p>
+ * Trades can be recorded concurrently from several threads: appends to a
+ * Stock are serialized by its own lock, so different Stocks never contend,
+ * and the calculations read the published Trades without locking. The
+ * oldest raw Trades can be evicted under a {@link RetentionPolicy}, the
+ * running totals still counting them.
+ * <p>
+ * Prices and dividends are {@link FixedPoint} amounts: a long count of
+ * ten-thousandths of a penny, so sub-penny prices and the totals built from
+ * them are exact. Times are nanoseconds since the epoch, read from the
+ * {@link Clock} of the Stock.
+ * 
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public abstract class AbstractStock {
+	private static final int						MAX_CACHED_WINDOWS	= 4;
+
+	private String									symbol			= "";
+	private volatile ReferenceData					referenceData	= ReferenceData.NONE;
+	private volatile long							tickSize		= 1;
+	private volatile TradeStore						trades			= new TradeStore();
+	private final ConcurrentMap<Long, VwapWindow>	vwapWindows		= new ConcurrentHashMap<Long, VwapWindow>();
+	private final ReentrantLock						appendLock		= new ReentrantLock();
+	private volatile int							tradeVersion	= 0;
+	private volatile TradeListener					tradeListener	= null;
+	private volatile BarAggregator					bars			= new BarAggregator();
+	private volatile RetentionPolicy				retentionPolicy	= null;
+	private volatile int							dividendVersion	= 0;
+	private volatile StockMetrics					metrics			= null;
+	private volatile Clock							clock			= SystemClock.INSTANCE;
+
+	// Abstract Methods (Will be implemented by extending classes).
+	/**
+	 * Get the Stock type.
+	 * 
+	 * @return String The stock type value.
+	 */
+	public abstract String getStockType();
+
+	/**
+	 * Calculate the Dividend Yield for a ticker price.
+	 * 
+	 * @param tickerPrice
+	 *            Long The Ticker price in fixed point units, not 0.
+	 * @param reference
+	 *            ReferenceData The reference data to calculate with.
+	 * @return Double The Divided Yield value.
+	 */
+	protected abstract double calculateDividendYield(long tickerPrice,
+			ReferenceData reference);
+
+	// Common methods for Stock dto's.
+	/**
+	 * Calculate the Ticker price.
+	 * 
+	 * @return Long The Ticker price in fixed point units, or 0 when no Trade
+	 *         is held.
+	 */
+	protected final long getTickerPrice() {
+		long tickerPrice = 0;
+		TradeStore store = trades;
+		int size = store.size();
+		if (size > store.getFirstIndex()) {
+			tickerPrice = store.getPrice(size - 1);
+		}
+		return tickerPrice;
+	}
+
+	/**
+	 * Get the derived metrics of the Stock. They are cached and only
+	 * calculated again by the first call after a Trade or a dividend
+	 * change, so readers get the same instance, with a consistent ticker
+	 * price, Dividend Yield and P/E Ratio, without allocating; recording
+	 * Trades only bumps the version.
+	 * <p>
+	 * The reference data is read once, after the version, so the metrics of
+	 * a version are never calculated from older reference data.
+	 * 
+	 * @return StockMetrics The metrics of the current Trades and dividends.
+	 */
+	public final StockMetrics getMetrics() {
+		long version = ((long) dividendVersion << 32)
+				| (tradeVersion & 0xFFFFFFFFL);
+		StockMetrics cached = metrics;
+		if (cached != null && cached.getVersion() == version) {
+			return cached;
+		}
+		ReferenceData reference = referenceData;
+		long tickerPrice = getTickerPrice();
+		double dividendYield = 0;
+		double peRatio = 0;
+		if (tickerPrice != 0) {
+			dividendYield = calculateDividendYield(tickerPrice, reference);
+			long lastDividend = reference.getLastDividend();
+			if (lastDividend != 0) {
+				peRatio = (double) tickerPrice / lastDividend;
+			}
+		}
+		cached = new StockMetrics(version, tickerPrice, dividendYield, peRatio);
+		metrics = cached;
+		return cached;
+	}
+
+	/**
+	 * Get the Dividend Yield.
+	 * 
+	 * @return Double The Divided Yield value.
+	 */
+	public final double getDividendYield() {
+		return getMetrics().getDividendYield();
+	}
+
+	/**
+	 * Get the P/E Ratio price.
+	 * 
+	 * @return Double The P/E Ratio.
+	 */
+	public final double getPERatio() {
+		return getMetrics().getPERatio();
+	}
+
+	/**
+	 * Invalidates the cached metrics after a change of the values the
+	 * Dividend Yield is calculated from.
+	 */
+	private void dividendChanged() {
+		dividendVersion++;
+	}
+
+	/**
+	 * Calculate the Geometric Mean. The logarithms of the Trade prices are
+	 * accumulated as Trades are recorded, so the value is available without
+	 * scanning the Trades and without overflowing the product of the prices.
+	 * 
+	 * @return Double The Geometric Mean or NaN when there are no Trades.
+	 */
+	public final double getGeometricMean() {
+		long start = Metrics.start();
+		try {
+			TradeStore store = trades;
+			int size = store.size();
+			if (size == 0) {
+				return Double.NaN;
+			}
+			if (store.getCumulativeZeroPrices(size) > 0) {
+				return 0;
+			}
+			return Math.exp(store.getCumulativeLogPrice(size) / size);
+		} finally {
+			Metrics.stop(Metrics.GEOMETRIC_MEAN, start);
+		}
+	}
+
+	/**
+	 * Calculate the Stock price within a given time lapse. Each time lapse
+	 * keeps its own rolling window over the Trade store, positioned with a
+	 * binary search on first use and moved forward afterwards.
+	 * 
+	 * @param tickerTime
+	 *            Long The maximum time in nanoseconds allowed.
+	 * @return Long The Stock price in fixed point units.
+	 */
+	public final long getStockPrice(final long tickerTime) {
+		long start = Metrics.start();
+		long nowTime = clock.now();
+		long stockPrice = getWindow(tickerTime, nowTime).getStockPrice(nowTime);
+		Metrics.stop(Metrics.STOCK_PRICE, start);
+		return stockPrice;
+	}
+
+	/**
+	 * Calculate the buy and sell side volume, VWAP, Trade count and order
+	 * flow imbalance within a given time lapse. It shares the rolling window
+	 * of {@link #getStockPrice(long)}, and the sides come from the sell flags
+	 * accumulated as Trades are recorded, so no Trade is scanned.
+	 * 
+	 * @param tickerTime
+	 *            Long The maximum time in nanoseconds allowed.
+	 * @return TradeFlow The totals of each side.
+	 */
+	public final TradeFlow getTradeFlow(final long tickerTime) {
+		long start = Metrics.start();
+		long nowTime = clock.now();
+		TradeFlow flow = getWindow(tickerTime, nowTime).getTradeFlow(nowTime);
+		Metrics.stop(Metrics.TRADE_FLOW, start);
+		return flow;
+	}
+
+	/**
+	 * Summarize the Trades within a historical time range. Both ends are found
+	 * with a binary search over the Trade timestamps; the totals are then the
+	 * difference of two prefix sums and the high and low come from the block
+	 * and chunk summaries of the store, so the cost grows with the logarithm
+	 * of the history and not with the length of the range. Only the Trades
+	 * still held count, evicted ones are left out.
+	 * 
+	 * @param fromTime
+	 *            Long The start of the range in nanoseconds, included.
+	 * @param toTime
+	 *            Long The end of the range in nanoseconds, excluded.
+	 * @return TradeSummary The totals and price range of the Trades.
+	 */
+	public final TradeSummary getTradeSummary(final long fromTime,
+			final long toTime) {
+		long start = Metrics.start();
+		try {
+			TradeStore store = trades;
+			int size = store.size();
+			int first = store.firstIndexAtOrAfter(fromTime,
+					store.getFirstIndex(), size);
+			int last = store.firstIndexAtOrAfter(toTime, first, size);
+			if (last <= first) {
+				return new TradeSummary(fromTime, toTime, 0, 0, 0, 0, 0,
+						Double.NaN);
+			}
+			int count = last - first;
+			double geometricMean = 0;
+			if (store.getCumulativeZeroPrices(last) == store
+					.getCumulativeZeroPrices(first)) {
+				geometricMean = Math.exp((store.getCumulativeLogPrice(last) - store
+						.getCumulativeLogPrice(first)) / count);
+			}
+			long shares = store.getCumulativeShares(last)
+					- store.getCumulativeShares(first);
+			long value = store.getCumulativeValue(last)
+					- store.getCumulativeValue(first);
+			return new TradeSummary(fromTime, toTime, count, shares, value,
+					store.getHigh(first, last), store.getLow(first, last),
+					geometricMean);
+		} finally {
+			Metrics.stop(Metrics.TRADE_SUMMARY, start);
+		}
+	}
+
+	/**
+	 * Only the first {@link #MAX_CACHED_WINDOWS} lengths asked for over the
+	 * current Trade store keep their window, as clients choose the lengths;
+	 * the window of any other length is built for the one calculation,
+	 * which costs a search of the held Trades.
+	 * 
+	 * @param tickerTime
+	 *            Long The window length in nanoseconds.
+	 * @param nowTime
+	 *            Long The current time in nanoseconds.
+	 * @return VwapWindow The rolling window of the time lapse over the
+	 *         current Trade store.
+	 */
+	private VwapWindow getWindow(final long tickerTime, final long nowTime) {
+		TradeStore store = trades;
+		VwapWindow window = vwapWindows.get(tickerTime);
+		if (window == null || window.getStore() != store) {
+			window = new VwapWindow(store, tickerTime, nowTime);
+			if (vwapWindows.size() < MAX_CACHED_WINDOWS
+					|| vwapWindows.containsKey(tickerTime)) {
+				vwapWindows.put(tickerTime, window);
+			}
+		}
+		return window;
+	}
+
+	/**
+	 * Records a Trade for this Stock stamped with the time of its clock.
+	 * 
+	 * @param shares
+	 *            Integer The Trade shares.
+	 * @param price
+	 *            Long The Trade price in fixed point units.
+	 * @param sell
+	 *            Boolean True if the Trade is a sell.
+	 * @return Integer The tradeId assigned to the Trade.
+	 * @see #recordTrade(int, long, boolean, long)
+	 */
+	public final int recordTrade(final int shares, final long price,
+			final boolean sell) {
+		return recordTrade(shares, price, sell, clock.now());
+	}
+
+	/**
+	 * Records a Trade for this Stock. Safe to call from several threads; the
+	 * tradeId is taken from the Trade sequence of the Stock while appending,
+	 * so it is unique and follows the order of the Trades. The price is
+	 * rounded to the tick size of the Stock.
+	 * 
+	 * @param shares
+	 *            Integer The Trade shares.
+	 * @param price
+	 *            Long The Trade price in fixed point units.
+	 * @param sell
+	 *            Boolean True if the Trade is a sell.
+	 * @param timestamp
+	 *            Long The Trade time in nanoseconds.
+	 * @return Integer The tradeId assigned to the Trade.
+	 */
+	public final int recordTrade(final int shares, final long price,
+			final boolean sell, final long timestamp) {
+		long start = Metrics.start();
+		long tickPrice = FixedPoint.roundToTick(price, tickSize);
+		int tradeId;
+		appendLock.lock();
+		try {
+			TradeStore store = trades;
+			int index = store.append(timestamp, shares, tickPrice, sell);
+			bars.add(store.getTimestamp(index), shares, tickPrice);
+			tradeId = index + 1;
+			tradeVersion++;
+		} finally {
+			appendLock.unlock();
+		}
+		TradeListener listener = tradeListener;
+		if (listener != null) {
+			listener.onTrade(this, tradeId, timestamp, shares, tickPrice, sell);
+		}
+		Metrics.stop(Metrics.RECORD_TRADE, start);
+		Metrics.tradesRecorded(1);
+		return tradeId;
+	}
+
+	/**
+	 * Records a batch of Trades for this Stock taking the append lock once.
+	 * The prices are rounded to the tick size of the Stock.
+	 * 
+	 * @param timestamps
+	 *            long[] The Trade times in nanoseconds.
+	 * @param shares
+	 *            int[] The Trade shares.
+	 * @param prices
+	 *            long[] The Trade prices in fixed point units.
+	 * @param sells
+	 *            boolean[] True for the Trades that are a sell.
+	 * @param count
+	 *            Integer The number of Trades to take from the arrays.
+	 * @return Integer The tradeId of the last Trade of the Stock.
+	 */
+	public final int recordTrades(final long[] timestamps, final int[] shares,
+			final long[] prices, final boolean[] sells, final int count) {
+		long start = Metrics.start();
+		long tick = tickSize;
+		int lastTradeId;
+		appendLock.lock();
+		try {
+			TradeStore store = trades;
+			BarAggregator aggregator = bars;
+			int index = store.size() - 1;
+			for (int i = 0; i < count; i++) {
+				long price = FixedPoint.roundToTick(prices[i], tick);
+				index = store.append(timestamps[i], shares[i], price, sells[i]);
+				aggregator.add(store.getTimestamp(index), shares[i], price);
+			}
+			tradeVersion++;
+			lastTradeId = index + 1;
+		} finally {
+			appendLock.unlock();
+		}
+		TradeListener listener = tradeListener;
+		if (listener != null) {
+			int firstTradeId = lastTradeId - count + 1;
+			for (int i = 0; i < count; i++) {
+				listener.onTrade(this, firstTradeId + i, timestamps[i],
+						shares[i], FixedPoint.roundToTick(prices[i], tick),
+						sells[i]);
+			}
+		}
+		Metrics.stop(Metrics.RECORD_TRADES, start);
+		Metrics.tradesRecorded(count);
+		return lastTradeId;
+	}
+
+	/**
+	 * Evicts the oldest raw Trades beyond the limits of a retention policy.
+	 * Trades are dropped in whole chunks, but never the chunk of the last
+	 * Trade, which the ticker price is read from. The running totals keep
+	 * counting the dropped Trades, so the tradeIds, the Geometric Mean and
+	 * the traded totals do not change, and the bars are kept. Readers still
+	 * holding the previous Trades finish on them, but for the evicted off
+	 * heap ones, whose buffers go back to the {@link OffHeapTrades} pool.
+	 * 
+	 * @param policy
+	 *            RetentionPolicy The limits of the Trades kept.
+	 * @param nowTime
+	 *            Long The current time in nanoseconds, for the age limit.
+	 * @return Integer The number of Trades evicted.
+	 */
+	public int evictTrades(final RetentionPolicy policy, final long nowTime) {
+		if (policy.isKeepAll()) {
+			return 0;
+		}
+		appendLock.lock();
+		try {
+			TradeStore store = trades;
+			int first = store.getFirstIndex();
+			int size = store.size();
+			int count = first;
+			if (policy.getMaxAge() > 0) {
+				count = Math.max(count, store.firstIndexAtOrAfter(nowTime
+						- policy.getMaxAge(), first, size));
+			}
+			if (policy.getMaxTrades() > 0) {
+				count = Math.max(count, size - policy.getMaxTrades());
+			}
+			if (policy.getMaxBytes() > 0) {
+				long keptChunks = Math.max(1, policy.getMaxBytes()
+						/ TradeStore.CHUNK_BYTES);
+				count = (int) Math.max(count, size - keptChunks
+						* TradeStore.CHUNK_SIZE);
+			}
+			TradeStore evicted = store.evictBefore(count);
+			if (evicted == store) {
+				return 0;
+			}
+			this.trades = evicted;
+			this.vwapWindows.clear();
+			return evicted.getFirstIndex() - first;
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	/**
+	 * Records a Trade for this Stock, setting its tradeId. A Trade not
+	 * stamped yet is stamped with the time of the clock of the Stock.
+	 * 
+	 * @param trade
+	 *            Trade The Trade to record.
+	 */
+	public void addTrade(final Trade trade) {
+		if (trade.getTimestamp() == 0) {
+			trade.setTimestamp(clock.now());
+		}
+		trade.setTradeId(recordTrade(trade.getShares(), trade.getPrice(),
+				trade.isSell(), trade.getTimestamp()));
+	}
+
+	// Getters & Setters
+	/**
+	 * @return String The symbol.
+	 */
+	public String getSymbol() {
+		return symbol;
+	}
+
+	/**
+	 * @param symbol
+	 *            String The symbol to set.
+	 */
+	public void setSymbol(String symbol) {
+		this.symbol = symbol;
+	}
+
+	/**
+	 * @return ReferenceData The reference data the Dividend Yield and P/E
+	 *         Ratio are calculated from.
+	 */
+	public final ReferenceData getReferenceData() {
+		return referenceData;
+	}
+
+	/**
+	 * Swaps the reference data at once and invalidates the cached metrics of
+	 * this Stock only. Setting the same values again changes nothing.
+	 * 
+	 * @param referenceData
+	 *            ReferenceData The reference data to set.
+	 * @return Boolean True when the reference data changed.
+	 */
+	public final synchronized boolean setReferenceData(
+			ReferenceData referenceData) {
+		if (referenceData.equals(this.referenceData)) {
+			return false;
+		}
+		this.referenceData = referenceData;
+		dividendChanged();
+		return true;
+	}
+
+	/**
+	 * @return Long The lastDividend in fixed point units.
+	 */
+	public long getLastDividend() {
+		return referenceData.getLastDividend();
+	}
+
+	/**
+	 * @param lastDividend
+	 *            Long The lastDividend to set in fixed point units.
+	 */
+	public synchronized void setLastDividend(long lastDividend) {
+		setReferenceData(referenceData.withLastDividend(lastDividend));
+	}
+
+	/**
+	 * @return Long The parValue in fixed point units.
+	 */
+	public final long getParValue() {
+		return referenceData.getParValue();
+	}
+
+	/**
+	 * @param parValue
+	 *            Long The parValue to set in fixed point units.
+	 */
+	public synchronized void setParValue(long parValue) {
+		setReferenceData(referenceData.withParValue(parValue));
+	}
+
+	/**
+	 * @return Long The tick size the Trade prices are rounded to, in fixed
+	 *         point units.
+	 */
+	public long getTickSize() {
+		return tickSize;
+	}
+
+	/**
+	 * @param tickSize
+	 *            Long The tick size the Trade prices are rounded to, in fixed
+	 *            point units, 1 for none.
+	 */
+	public void setTickSize(long tickSize) {
+		this.tickSize = tickSize;
+	}
+
+	/**
+	 * @return TradeTotals The count and running totals of all recorded
+	 *         Trades, read from the same Trades even while they are evicted.
+	 */
+	public TradeTotals getTradeTotals() {
+		TradeStore store = trades;
+		return totals(store, store.size());
+	}
+
+	/**
+	 * @param interval
+	 *            BarInterval The bar interval.
+	 * @return Bar The bar of the interval the clock of the Stock is in, with
+	 *         no Trades at the last close when none fell in it yet, or null
+	 *         when there are no Trades.
+	 */
+	public Bar getBar(final BarInterval interval) {
+		return bars.getCurrent(interval, clock.now());
+	}
+
+	/**
+	 * @param interval
+	 *            BarInterval The bar interval.
+	 * @param count
+	 *            Integer The maximum number of bars, up to the capacity of
+	 *            the interval.
+	 * @return List<Bar> The latest bars of the interval, oldest first. Only
+	 *         intervals with Trades have a bar.
+	 */
+	public List<Bar> getBars(final BarInterval interval, final int count) {
+		return bars.getLatest(interval, count);
+	}
+
+	/**
+	 * @return Integer A counter increased every time the Trades change.
+	 */
+	public int getTradeVersion() {
+		return tradeVersion;
+	}
+
+	/**
+	 * @return TradeListener The listener receiving the recorded Trades.
+	 */
+	public TradeListener getTradeListener() {
+		return tradeListener;
+	}
+
+	/**
+	 * @param tradeListener
+	 *            TradeListener The listener receiving the recorded Trades, or
+	 *            null for none.
+	 */
+	public void setTradeListener(TradeListener tradeListener) {
+		this.tradeListener = tradeListener;
+	}
+
+	/**
+	 * @return Clock The clock the Trades are stamped with and the windows
+	 *         are evaluated against.
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * @param clock
+	 *            Clock The clock the Trades are stamped with and the windows
+	 *            are evaluated against.
+	 */
+	public void setClock(Clock clock) {
+		this.clock = clock;
+		this.vwapWindows.clear();
+	}
+
+	/**
+	 * @return RetentionPolicy The limits of the Trades kept, or null to use
+	 *         the default policy of the eviction.
+	 */
+	public RetentionPolicy getRetentionPolicy() {
+		return retentionPolicy;
+	}
+
+	/**
+	 * @param retentionPolicy
+	 *            RetentionPolicy The limits of the Trades kept, or null to
+	 *            use the default policy of the eviction.
+	 */
+	public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+		this.retentionPolicy = retentionPolicy;
+	}
+
+	/**
+	 * @return Long The memory taken by the held Trades in bytes, on or off
+	 *         the heap.
+	 */
+	public long getHeldTradeBytes() {
+		return trades.getHeldBytes();
+	}
+
+	/**
+	 * @return Integer The number of recorded Trades, also counting the ones
+	 *         no longer held after a restore or an eviction. It is the
+	 *         tradeId of the last Trade.
+	 */
+	public int getTradeCount() {
+		return trades.size();
+	}
+
+	/**
+	 * @return Long The time of the last recorded Trade in nanoseconds, or
+	 *         Long.MIN_VALUE when there are none.
+	 */
+	public long getLastTradeTime() {
+		TradeStore store = trades;
+		int size = store.size();
+		return size > store.getFirstIndex() ? store.getTimestamp(size - 1)
+				: Long.MIN_VALUE;
+	}
+
+	/**
+	 * Passes the held Trades from a time on to a listener without
+	 * materializing them, in tradeId order, always with the last held Trade
+	 * even when older. The Trades passed and the totals of the ones before
+	 * them are read from the same Trades, so an eviction meanwhile leaves no
+	 * gap between them.
+	 * 
+	 * @param time
+	 *            Long The time of the oldest Trade to pass in nanoseconds.
+	 * @param visitor
+	 *            TradeListener The listener receiving the Trades.
+	 * @return TradeTotals The count and running totals of the recorded
+	 *         Trades before the first one passed.
+	 */
+	public TradeTotals visitTradesSince(final long time,
+			final TradeListener visitor) {
+		TradeStore store = trades;
+		int first = store.getFirstIndex();
+		int size = store.size();
+		int from = Math.max(Math.min(store.firstIndexAtOrAfter(time, first,
+				size), size - 1), first);
+		for (int index = from; index < size; index++) {
+			visitor.onTrade(this, index + 1, store.getTimestamp(index),
+					store.getShares(index), store.getPrice(index),
+					store.isSell(index));
+		}
+		return totals(store, from);
+	}
+
+	/**
+	 * Replaces the Trades of the Stock with the tail of a previous Trade
+	 * history, as kept by a snapshot. The Trades before the tail are only
+	 * known by their totals; the tail takes the tradeIds after them.
+	 * 
+	 * @param baseCount
+	 *            Integer The number of Trades before the tail.
+	 * @param baseValue
+	 *            Long The traded value of the Trades before the tail.
+	 * @param baseShares
+	 *            Long The traded shares of the Trades before the tail.
+	 * @param baseLogPrice
+	 *            Double The sum of the logarithms of the non zero prices of
+	 *            the Trades before the tail.
+	 * @param baseZeroPrices
+	 *            Integer The number of Trades before the tail at a zero price.
+	 * @param timestamps
+	 *            long[] The tail Trade times in nanoseconds.
+	 * @param shares
+	 *            int[] The tail Trade shares.
+	 * @param prices
+	 *            long[] The tail Trade prices in fixed point units.
+	 * @param sells
+	 *            boolean[] True for the tail Trades that are a sell.
+	 * @param count
+	 *            Integer The number of tail Trades to take from the arrays.
+	 */
+	public void restoreTrades(final int baseCount, final long baseValue,
+			final long baseShares, final double baseLogPrice,
+			final int baseZeroPrices, final long[] timestamps,
+			final int[] shares, final long[] prices, final boolean[] sells,
+			final int count) {
+		TradeStore store = new TradeStore(baseCount, baseValue, baseShares,
+				baseLogPrice, baseZeroPrices);
+		for (int i = 0; i < count; i++) {
+			store.append(timestamps[i], shares[i], prices[i], sells[i]);
+		}
+		replaceStore(store);
+	}
+
+	/**
+	 * @return trades List<Trade> A read only view of the held Stock trades.
+	 *         New Trades must be recorded through
+	 *         {@link #recordTrade(int, long, boolean, long)}.
+	 */
+	public List<Trade> getTrades() {
+		return trades.asList();
+	}
+
+	/**
+	 * @param trades
+	 *            List <Trade> The trades to set.
+	 */
+	public void setTrades(List<Trade> trades) {
+		TradeStore store = new TradeStore();
+		for (Trade trade : trades) {
+			store.append(trade.getTimestamp(), trade.getShares(),
+					trade.getPrice(), trade.isSell());
+		}
+		replaceStore(store);
+	}
+
+	/**
+	 * Swaps the Trade store, dropping the windows over the previous one and
+	 * building the bars of the held Trades.
+	 * 
+	 * @param store
+	 *            TradeStore The new Trade store.
+	 */
+	private void replaceStore(final TradeStore store) {
+		BarAggregator aggregator = new BarAggregator();
+		for (int index = store.getFirstIndex(); index < store.size(); index++) {
+			aggregator.add(store.getTimestamp(index), store.getShares(index),
+					store.getPrice(index));
+		}
+		appendLock.lock();
+		try {
+			TradeStore previous = trades;
+			this.trades = store;
+			this.bars = aggregator;
+			this.vwapWindows.clear();
+			this.tradeVersion++;
+			previous.release();
+		} finally {
+			appendLock.unlock();
+		}
+	}
+
+	/**
+	 * @param store
+	 *            TradeStore The Trades, read once by the caller.
+	 * @param count
+	 *            Integer The number of Trades from the first one, from the
+	 *            first held one to all of them.
+	 * @return TradeTotals The running totals of those Trades.
+	 */
+	private static TradeTotals totals(final TradeStore store, final int count) {
+		return new TradeTotals(count, store.getCumulativeValue(count),
+				store.getCumulativeShares(count),
+				store.getCumulativeLogPrice(count),
+				store.getCumulativeZeroPrices(count));
+	}
+}
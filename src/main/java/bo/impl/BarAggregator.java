@@ -0,0 +1,254 @@
+package main.java.bo.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+import main.java.bo.Bar;
+import main.java.bo.BarInterval;
+
+/**
+ * OHLCV bars of a Stock for every {@link BarInterval}, updated in one pass as
+ * each Trade is recorded. The bars of an interval are kept in a ring that
+ * grows up to the capacity of the interval and then overwrites its oldest
+ * bar; intervals without Trades have no bar.
+ * <p>
+ * There is a single writer, the thread holding the append lock of the
+ * Stock. Readers never block it: they copy the bars under an optimistic
+ * stamp and only take the read lock when a Trade was recorded meanwhile.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+final class BarAggregator {
+	private static final int			INITIAL_CAPACITY	= 16;
+
+	private final StampedLock			lock				= new StampedLock();
+	private final Series[]				series;
+
+	BarAggregator() {
+		BarInterval[] intervals = BarInterval.values();
+		series = new Series[intervals.length];
+		for (int i = 0; i < intervals.length; i++) {
+			series[i] = new Series(intervals[i]);
+		}
+	}
+
+	/**
+	 * Adds a Trade to the bar of every interval. Called holding the append
+	 * lock of the Stock, with non decreasing timestamps.
+	 *
+	 * @param timestamp
+	 *            Long The Trade time in nanoseconds.
+	 * @param shares
+	 *            Integer The Trade shares.
+	 * @param price
+	 *            Long The Trade price in fixed point units.
+	 */
+	void add(final long timestamp, final int shares, final long price) {
+		long stamp = lock.writeLock();
+		try {
+			for (Series intervalSeries : series) {
+				intervalSeries.add(timestamp, shares, price);
+			}
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+
+	/**
+	 * @param interval
+	 *            BarInterval The bar interval.
+	 * @param nowTime
+	 *            Long The current time in nanoseconds.
+	 * @return Bar The bar of the interval the current time falls in. When
+	 *         no Trade fell in it yet, the latest bar is rolled forward into
+	 *         a bar without Trades at its close. Null when there are no
+	 *         Trades.
+	 */
+	Bar getCurrent(final BarInterval interval, final long nowTime) {
+		List<Bar> bars = getLatest(interval, 1);
+		if (bars.isEmpty()) {
+			return null;
+		}
+		Bar latest = bars.get(0);
+		long startTime = nowTime - Math.floorMod(nowTime, interval.getLength());
+		if (latest.getStartTime() >= startTime) {
+			return latest;
+		}
+		long close = latest.getClose();
+		return new Bar(interval, startTime, close, close, close, close, 0, 0,
+				0);
+	}
+
+	/**
+	 * @param interval
+	 *            BarInterval The bar interval.
+	 * @param count
+	 *            Integer The maximum number of bars.
+	 * @return List<Bar> The latest bars of the interval, oldest first.
+	 */
+	List<Bar> getLatest(final BarInterval interval, final int count) {
+		Series intervalSeries = series[interval.ordinal()];
+		long stamp = lock.tryOptimisticRead();
+		if (stamp != 0) {
+			List<Bar> bars = intervalSeries.copy(count);
+			if (bars != null && lock.validate(stamp)) {
+				return bars;
+			}
+		}
+		stamp = lock.readLock();
+		try {
+			return intervalSeries.copy(count);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+
+	/**
+	 * Bars of one interval in columns, kept as a ring.
+	 */
+	private static final class Series {
+		private final BarInterval	interval;
+		private final long			length;
+		private final int			capacity;
+		private long[]				startTimes;
+		private long[]				opens;
+		private long[]				highs;
+		private long[]				lows;
+		private long[]				closes;
+		private long[]				volumes;
+		private long[]				values;
+		private int[]				tradeCounts;
+		private int					head				= -1;
+		private int					size				= 0;
+
+		private Series(final BarInterval interval) {
+			this.interval = interval;
+			this.length = interval.getLength();
+			this.capacity = interval.getCapacity();
+			allocate(Math.min(INITIAL_CAPACITY, capacity));
+		}
+
+		/**
+		 * Adds a Trade to the current bar, starting a new bar when the Trade
+		 * falls in a later interval.
+		 */
+		private void add(final long timestamp, final int shares,
+				final long price) {
+			long startTime = timestamp - Math.floorMod(timestamp, length);
+			if (size > 0 && startTimes[head] == startTime) {
+				if (price > highs[head]) {
+					highs[head] = price;
+				}
+				if (price < lows[head]) {
+					lows[head] = price;
+				}
+				closes[head] = price;
+				volumes[head] += shares;
+				values[head] += price * shares;
+				tradeCounts[head]++;
+				return;
+			}
+			if (size == startTimes.length && size < capacity) {
+				allocate(Math.min(size * 2, capacity));
+			}
+			head = (head + 1) % startTimes.length;
+			if (size < startTimes.length) {
+				size++;
+			}
+			startTimes[head] = startTime;
+			opens[head] = price;
+			highs[head] = price;
+			lows[head] = price;
+			closes[head] = price;
+			volumes[head] = shares;
+			values[head] = price * shares;
+			tradeCounts[head] = 1;
+		}
+
+		/**
+		 * Copies the latest bars. Under an optimistic stamp the fields may
+		 * be inconsistent, even columns of different rings while they grow,
+		 * so the copy reads each column once and checks the ring against
+		 * all of them first; the caller validates the stamp before using
+		 * the copy.
+		 *
+		 * @return List<Bar> The latest bars, oldest first, or null when the
+		 *         fields were caught inconsistent.
+		 */
+		private List<Bar> copy(final int count) {
+			long[] startTimeColumn = startTimes;
+			long[] openColumn = opens;
+			long[] highColumn = highs;
+			long[] lowColumn = lows;
+			long[] closeColumn = closes;
+			long[] volumeColumn = volumes;
+			long[] valueColumn = values;
+			int[] tradeCountColumn = tradeCounts;
+			int currentHead = head;
+			int currentSize = size;
+			int ringLength = startTimeColumn.length;
+			if (openColumn.length != ringLength
+					|| highColumn.length != ringLength
+					|| lowColumn.length != ringLength
+					|| closeColumn.length != ringLength
+					|| volumeColumn.length != ringLength
+					|| valueColumn.length != ringLength
+					|| tradeCountColumn.length != ringLength
+					|| currentSize < 0 || currentSize > ringLength
+					|| currentHead >= ringLength
+					|| (currentSize > 0 && currentHead < 0)) {
+				return null;
+			}
+			int copied = Math.min(count, currentSize);
+			if (copied <= 0) {
+				return Collections.emptyList();
+			}
+			List<Bar> bars = new ArrayList<Bar>(copied);
+			int index = currentHead - copied + 1;
+			if (index < 0) {
+				index += ringLength;
+			}
+			for (int i = 0; i < copied; i++) {
+				bars.add(new Bar(interval, startTimeColumn[index],
+						openColumn[index], highColumn[index], lowColumn[index],
+						closeColumn[index], volumeColumn[index],
+						valueColumn[index], tradeCountColumn[index]));
+				index = index + 1 == ringLength ? 0 : index + 1;
+			}
+			return bars;
+		}
+
+		/**
+		 * Grows the columns keeping the bars, which never wrapped yet.
+		 */
+		private void allocate(final int newLength) {
+			startTimes = grow(startTimes, newLength);
+			opens = grow(opens, newLength);
+			highs = grow(highs, newLength);
+			lows = grow(lows, newLength);
+			closes = grow(closes, newLength);
+			volumes = grow(volumes, newLength);
+			values = grow(values, newLength);
+			tradeCounts = grow(tradeCounts, newLength);
+		}
+
+		private static long[] grow(final long[] column, final int newLength) {
+			long[] newColumn = new long[newLength];
+			if (column != null) {
+				System.arraycopy(column, 0, newColumn, 0, column.length);
+			}
+			return newColumn;
+		}
+
+		private static int[] grow(final int[] column, final int newLength) {
+			int[] newColumn = new int[newLength];
+			if (column != null) {
+				System.arraycopy(column, 0, newColumn, 0, column.length);
+			}
+			return newColumn;
+		}
+	}
+}
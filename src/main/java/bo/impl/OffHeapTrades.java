@@ -0,0 +1,109 @@
+package main.java.bo.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * Switch and buffer pool of the off heap Trade storage. While enabled, the
+ * Trade stores of every Stock take their new chunks as direct buffers, so
+ * days of Trades add almost nothing to the heap the garbage collector walks.
+ * <p>
+ * Direct memory is only given back to the system when the garbage collector
+ * gets to the buffer, so the buffers of evicted chunks are released
+ * explicitly into a pool instead, as soon as no store holds their chunk,
+ * and new chunks reuse them oldest first. A reader still holding a store an
+ * eviction replaced, such as a Trade list view taken before, must not read
+ * its evicted Trades any more: their buffer may already hold the Trades of
+ * another chunk. Buffers released beyond {@link #MAX_POOLED} are left to
+ * the garbage collector.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public final class OffHeapTrades {
+	public static final int						MAX_POOLED		= 256;
+
+	private static final ArrayDeque<ByteBuffer>	pool			= new ArrayDeque<ByteBuffer>();
+	private static long							allocatedBytes	= 0;
+	private static volatile boolean				enabled			= false;
+
+	private OffHeapTrades() {
+	}
+
+	/**
+	 * @return Boolean True when new chunks are stored off the heap.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Stores the new chunks of every Stock off the heap, or on it again.
+	 * Chunks already created stay where they are.
+	 *
+	 * @param enabled
+	 *            Boolean True to store new chunks off the heap.
+	 */
+	public static void setEnabled(final boolean enabled) {
+		OffHeapTrades.enabled = enabled;
+	}
+
+	/**
+	 * @return Long The direct memory taken by the chunks, pooled ones
+	 *         included, in bytes.
+	 */
+	public static synchronized long getAllocatedBytes() {
+		return allocatedBytes;
+	}
+
+	/**
+	 * @return Integer The number of released buffers waiting in the pool.
+	 */
+	public static synchronized int getPooled() {
+		return pool.size();
+	}
+
+	/**
+	 * Takes a buffer from the pool or allocates a new one.
+	 *
+	 * @param capacity
+	 *            Integer The size of the buffer in bytes.
+	 * @return ByteBuffer A direct buffer in native order. Its contents are
+	 *         undefined.
+	 */
+	static ByteBuffer allocate(final int capacity) {
+		synchronized (OffHeapTrades.class) {
+			if (!pool.isEmpty() && pool.peekFirst().capacity() == capacity) {
+				return pool.pollFirst();
+			}
+			allocatedBytes += capacity;
+		}
+		return ByteBuffer.allocateDirect(capacity).order(
+				ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Gives a buffer no store holds any more back to the pool.
+	 *
+	 * @param buffer
+	 *            ByteBuffer A buffer taken from {@link #allocate(int)}.
+	 */
+	static synchronized void release(final ByteBuffer buffer) {
+		if (pool.size() < MAX_POOLED) {
+			pool.addLast(buffer);
+		} else {
+			allocatedBytes -= buffer.capacity();
+		}
+	}
+
+	/**
+	 * Empties the pool and forgets the buffers allocated so far, which are
+	 * left to the garbage collector. Only for tests, while no store holds
+	 * an off heap chunk.
+	 */
+	static synchronized void reset() {
+		pool.clear();
+		allocatedBytes = 0;
+	}
+}
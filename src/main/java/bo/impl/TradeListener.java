@@ -0,0 +1,31 @@
+package main.java.bo.impl;
+
+/**
+ * Receives the Trades recorded for a Stock. Listeners are called by the
+ * recording thread once the Trade is published, outside the append lock of
+ * the Stock.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public interface TradeListener {
+
+	/**
+	 * Called for every recorded Trade.
+	 *
+	 * @param stock
+	 *            AbstractStock The Stock the Trade was recorded for.
+	 * @param tradeId
+	 *            Integer The tradeId assigned to the Trade.
+	 * @param timestamp
+	 *            Long The Trade time in nanoseconds.
+	 * @param shares
+	 *            Integer The Trade shares.
+	 * @param price
+	 *            Long The Trade price in fixed point units.
+	 * @param sell
+	 *            Boolean True if the Trade is a sell.
+	 */
+	void onTrade(AbstractStock stock, int tradeId, long timestamp, int shares,
+			long price, boolean sell);
+}
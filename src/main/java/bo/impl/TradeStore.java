@@ -0,0 +1,879 @@
+package main.java.bo.impl;
+
+import java.nio.ByteBuffer;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+
+import main.java.bo.FixedPoint;
+import main.java.bo.Trade;
+
+/**
+ * Columnar store for the Trades of a single Stock. Trade fields are kept in
+ * parallel primitive arrays split in fixed size chunks, so the store grows one
+ * chunk at a time without copying and scans read contiguous memory. The sell
+ * flags are packed in a bitset. Prices are {@link FixedPoint} units.
+ * <p>
+ * Every block of {@link #BLOCK_SIZE} Trades keeps the cumulative traded
+ * value, shares, logarithm of the price and zero priced Trades before its
+ * first Trade, so the same totals up to any Trade are the base of its block
+ * plus a scan of at most a block, and any aggregate over a range of Trades is
+ * a subtraction of two prefixes. The value, shares and number of the sell
+ * Trades are kept the same way, the buy side being the difference with the
+ * totals. Keeping the prefixes per block instead of per Trade leaves about
+ * 21 bytes per Trade.
+ * <p>
+ * The highest and lowest prices are summarized in two levels: every block
+ * keeps its own, and every full chunk keeps those of the runs of 1, 2, 4...
+ * chunks ending with it, like a sparse table. The high or low of any range
+ * then reads at most two chunk summaries and the blocks and Trades at its
+ * two ends.
+ * <p>
+ * A store restored from a snapshot starts at a later index: it holds the
+ * Trades from that index on together with the cumulative values of the
+ * Trades before it, so the indexes, and therefore the tradeIds, go on where
+ * they were. The sell side prefixes of a restored store only count the
+ * Trades it holds, which is enough for ranges within them. Evicting old
+ * Trades works the same way: the new store shares the chunks kept and
+ * starts with the cumulative values of the ones dropped, while readers of
+ * the previous store go on reading its heap chunks untouched.
+ * <p>
+ * Chunks are kept on the heap, or off it in direct buffers while
+ * {@link OffHeapTrades} is enabled, leaving only their block summaries to
+ * the garbage collector. Every chunk counts the stores holding it; the
+ * buffer of an off heap chunk goes back to its pool as soon as the last of
+ * them is evicted or replaced, so readers of a replaced store must not read
+ * the Trades its replacement dropped.
+ * <p>
+ * The store has a single writer at a time: callers must serialize
+ * {@link #append(long, int, long, boolean)}. A Trade is published by the
+ * volatile size once all its columns are written, so readers reading below
+ * {@link #size()} see consistent values without locking.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+final class TradeStore {
+	static final int			CHUNK_BITS		= 12;
+	static final int			CHUNK_SIZE		= 1 << CHUNK_BITS;
+	static final int			CHUNK_MASK		= CHUNK_SIZE - 1;
+	/** A block is one word of sell bits. */
+	static final int			BLOCK_BITS		= 6;
+	static final int			BLOCK_SIZE		= 1 << BLOCK_BITS;
+	static final int			BLOCK_MASK		= BLOCK_SIZE - 1;
+	/**
+	 * Memory taken by a chunk: 20 bytes and a bit per Trade for its columns,
+	 * on or off the heap, and 64 bytes per block for its summaries.
+	 */
+	static final long			CHUNK_BYTES		= CHUNK_SIZE * 20L + CHUNK_SIZE / 8
+														+ (CHUNK_SIZE >>> BLOCK_BITS) * 64L;
+
+	private final int			firstIndex;
+	private final int			firstChunk;
+	private final long			baseValue;
+	private final long			baseShares;
+	private final double		baseLogPrice;
+	private final int			baseZeroPrices;
+	private final long			baseSellValue;
+	private final long			baseSellShares;
+	private final int			baseSells;
+	private volatile Chunk[]	chunks			= new Chunk[0];
+	private volatile int		size;
+	private long				lastTimestamp	= Long.MIN_VALUE;
+	// Totals of every Trade appended, only read by the writer.
+	private long				totalValue;
+	private long				totalShares;
+	private double				totalLogPrice;
+	private int					totalZeroPrices;
+	private long				totalSellValue;
+	private long				totalSellShares;
+	private int					totalSells;
+
+	/**
+	 * Creates an empty store.
+	 */
+	TradeStore() {
+		this(0, 0, 0, 0, 0);
+	}
+
+	/**
+	 * Creates a store whose first Trade will take a given index.
+	 *
+	 * @param firstIndex
+	 *            Integer The index of the first Trade, which is the number of
+	 *            Trades before it.
+	 * @param baseValue
+	 *            Long The traded value of the Trades before it.
+	 * @param baseShares
+	 *            Long The traded shares of the Trades before it.
+	 * @param baseLogPrice
+	 *            Double The sum of the logarithms of the non zero prices of
+	 *            the Trades before it.
+	 * @param baseZeroPrices
+	 *            Integer The number of Trades before it at a zero price.
+	 */
+	TradeStore(final int firstIndex, final long baseValue,
+			final long baseShares, final double baseLogPrice,
+			final int baseZeroPrices) {
+		this.firstIndex = firstIndex;
+		this.firstChunk = firstIndex >>> CHUNK_BITS;
+		this.baseValue = baseValue;
+		this.baseShares = baseShares;
+		this.baseLogPrice = baseLogPrice;
+		this.baseZeroPrices = baseZeroPrices;
+		this.baseSellValue = 0;
+		this.baseSellShares = 0;
+		this.baseSells = 0;
+		this.totalValue = baseValue;
+		this.totalShares = baseShares;
+		this.totalLogPrice = baseLogPrice;
+		this.totalZeroPrices = baseZeroPrices;
+		this.size = firstIndex;
+	}
+
+	/**
+	 * Creates a store holding the Trades of another one from a chunk on,
+	 * sharing its chunks. Only for the writer of the source store, which
+	 * must append to the new store from then on.
+	 *
+	 * @param source
+	 *            TradeStore The store evicting its first chunks.
+	 * @param firstChunk
+	 *            Integer The number of the first chunk kept.
+	 */
+	private TradeStore(final TradeStore source, final int firstChunk) {
+		this.firstIndex = firstChunk << CHUNK_BITS;
+		this.firstChunk = firstChunk;
+		this.baseValue = source.getCumulativeValue(firstIndex);
+		this.baseShares = source.getCumulativeShares(firstIndex);
+		this.baseLogPrice = source.getCumulativeLogPrice(firstIndex);
+		this.baseZeroPrices = source.getCumulativeZeroPrices(firstIndex);
+		this.baseSellValue = source.getCumulativeSellValue(firstIndex);
+		this.baseSellShares = source.getCumulativeSellShares(firstIndex);
+		this.baseSells = source.getCumulativeSells(firstIndex);
+		Chunk[] sourceChunks = source.chunks;
+		this.chunks = Arrays.copyOfRange(sourceChunks, firstChunk
+				- source.firstChunk, sourceChunks.length);
+		for (Chunk chunk : chunks) {
+			chunk.holders++;
+		}
+		this.lastTimestamp = source.lastTimestamp;
+		this.totalValue = source.totalValue;
+		this.totalShares = source.totalShares;
+		this.totalLogPrice = source.totalLogPrice;
+		this.totalZeroPrices = source.totalZeroPrices;
+		this.totalSellValue = source.totalSellValue;
+		this.totalSellShares = source.totalSellShares;
+		this.totalSells = source.totalSells;
+		this.size = source.size;
+	}
+
+	/**
+	 * Appends a Trade to the store. Timestamps are kept in arrival order: a
+	 * Trade older than the previous one is stored with the previous
+	 * timestamp.
+	 *
+	 * @param timestamp
+	 *            Long The Trade time in nanoseconds.
+	 * @param tradeShares
+	 *            Integer The Trade shares.
+	 * @param price
+	 *            Long The Trade price in fixed point units.
+	 * @param sell
+	 *            Boolean True if the Trade is a sell.
+	 * @return Integer The index of the appended Trade.
+	 */
+	int append(final long timestamp, final int tradeShares, final long price,
+			final boolean sell) {
+		int index = size;
+		int chunkIndex = (index >>> CHUNK_BITS) - firstChunk;
+		int offset = index & CHUNK_MASK;
+		Chunk[] current = chunks;
+		if (chunkIndex == current.length) {
+			current = addChunk(current);
+		}
+		Chunk chunk = current[chunkIndex];
+
+		lastTimestamp = Math.max(lastTimestamp, timestamp);
+		int block = offset >>> BLOCK_BITS;
+		if ((offset & BLOCK_MASK) == 0 || index == firstIndex) {
+			chunk.blockHighs[block] = price;
+			chunk.blockLows[block] = price;
+			chunk.blockValues[block] = totalValue;
+			chunk.blockShares[block] = totalShares;
+			chunk.blockLogPrices[block] = totalLogPrice;
+			chunk.blockZeroPrices[block] = totalZeroPrices;
+			chunk.blockSellValues[block] = totalSellValue;
+			chunk.blockSellShares[block] = totalSellShares;
+			chunk.blockSells[block] = totalSells;
+		} else {
+			chunk.blockHighs[block] = Math.max(chunk.blockHighs[block], price);
+			chunk.blockLows[block] = Math.min(chunk.blockLows[block], price);
+		}
+		chunk.put(offset, lastTimestamp, tradeShares, price, sell);
+
+		long value = price * tradeShares;
+		totalValue += value;
+		totalShares += tradeShares;
+		if (sell) {
+			totalSellValue += value;
+			totalSellShares += tradeShares;
+			totalSells++;
+		}
+		if (price > 0) {
+			totalLogPrice += Math.log(price) - FixedPoint.LOG_SCALE;
+		} else {
+			totalZeroPrices++;
+		}
+		if (offset == CHUNK_MASK) {
+			summarize(current, chunkIndex);
+		}
+		size = index + 1;
+		return index;
+	}
+
+	/**
+	 * Summarizes a chunk once it is full: its high and low and those of the
+	 * runs of 2, 4... chunks ending with it.
+	 *
+	 * @param current
+	 *            Chunk[] The chunk directory.
+	 * @param chunkIndex
+	 *            Integer The position of the full chunk in the directory.
+	 */
+	private void summarize(final Chunk[] current, final int chunkIndex) {
+		Chunk chunk = current[chunkIndex];
+		int firstBlock = chunkIndex == 0 ? (firstIndex & CHUNK_MASK) >>> BLOCK_BITS
+				: 0;
+		long high = Long.MIN_VALUE;
+		long low = Long.MAX_VALUE;
+		for (int block = firstBlock; block < chunk.blockHighs.length; block++) {
+			high = Math.max(high, chunk.blockHighs[block]);
+			low = Math.min(low, chunk.blockLows[block]);
+		}
+		int levels = 32 - Integer.numberOfLeadingZeros(chunkIndex + 1);
+		long[] spanHighs = new long[levels];
+		long[] spanLows = new long[levels];
+		spanHighs[0] = high;
+		spanLows[0] = low;
+		for (int level = 1; level < levels; level++) {
+			Chunk previous = current[chunkIndex - (1 << (level - 1))];
+			spanHighs[level] = Math.max(spanHighs[level - 1],
+					previous.spanHighs[level - 1]);
+			spanLows[level] = Math.min(spanLows[level - 1],
+					previous.spanLows[level - 1]);
+		}
+		chunk.spanHighs = spanHighs;
+		chunk.spanLows = spanLows;
+	}
+
+	/**
+	 * @param index
+	 *            Integer The Trade index.
+	 * @return Long The Trade time in nanoseconds.
+	 */
+	long getTimestamp(final int index) {
+		return chunk(index).timestamp(index & CHUNK_MASK);
+	}
+
+	/**
+	 * @param index
+	 *            Integer The Trade index.
+	 * @return Integer The Trade shares.
+	 */
+	int getShares(final int index) {
+		return chunk(index).shares(index & CHUNK_MASK);
+	}
+
+	/**
+	 * @param index
+	 *            Integer The Trade index.
+	 * @return Long The Trade price in fixed point units.
+	 */
+	long getPrice(final int index) {
+		return chunk(index).price(index & CHUNK_MASK);
+	}
+
+	/**
+	 * @param index
+	 *            Integer The Trade index.
+	 * @return Boolean True if the Trade is a sell.
+	 */
+	boolean isSell(final int index) {
+		return chunk(index).sell(index & CHUNK_MASK);
+	}
+
+	/**
+	 * Sum of price * shares of the first Trades in fixed point units. The sum
+	 * wraps on overflow, so the difference of two prefixes is exact as long
+	 * as the traded value between them fits in a long.
+	 *
+	 * @param count
+	 *            Integer The number of Trades from the first one, not lower
+	 *            than the first index of the store.
+	 * @return Long The traded value.
+	 */
+	long getCumulativeValue(final int count) {
+		if (count == firstIndex) {
+			return baseValue;
+		}
+		int index = count - 1;
+		Chunk chunk = chunk(index);
+		int offset = index & CHUNK_MASK;
+		long value = chunk.blockValues[offset >>> BLOCK_BITS];
+		for (int i = blockStart(index); i <= offset; i++) {
+			value += chunk.price(i) * chunk.shares(i);
+		}
+		return value;
+	}
+
+	/**
+	 * @param count
+	 *            Integer The number of Trades from the first one.
+	 * @return Long The traded shares.
+	 */
+	long getCumulativeShares(final int count) {
+		if (count == firstIndex) {
+			return baseShares;
+		}
+		int index = count - 1;
+		Chunk chunk = chunk(index);
+		int offset = index & CHUNK_MASK;
+		long shares = chunk.blockShares[offset >>> BLOCK_BITS];
+		for (int i = blockStart(index); i <= offset; i++) {
+			shares += chunk.shares(i);
+		}
+		return shares;
+	}
+
+	/**
+	 * @param count
+	 *            Integer The number of Trades from the first one.
+	 * @return Double The sum of the logarithms of the non zero prices in
+	 *         pennies.
+	 */
+	double getCumulativeLogPrice(final int count) {
+		if (count == firstIndex) {
+			return baseLogPrice;
+		}
+		int index = count - 1;
+		Chunk chunk = chunk(index);
+		int offset = index & CHUNK_MASK;
+		double logPrice = chunk.blockLogPrices[offset >>> BLOCK_BITS];
+		for (int i = blockStart(index); i <= offset; i++) {
+			long price = chunk.price(i);
+			if (price > 0) {
+				logPrice += Math.log(price) - FixedPoint.LOG_SCALE;
+			}
+		}
+		return logPrice;
+	}
+
+	/**
+	 * @param count
+	 *            Integer The number of Trades from the first one.
+	 * @return Integer The number of Trades at a zero price.
+	 */
+	int getCumulativeZeroPrices(final int count) {
+		if (count == firstIndex) {
+			return baseZeroPrices;
+		}
+		int index = count - 1;
+		Chunk chunk = chunk(index);
+		int offset = index & CHUNK_MASK;
+		int zeroPrices = chunk.blockZeroPrices[offset >>> BLOCK_BITS];
+		for (int i = blockStart(index); i <= offset; i++) {
+			if (chunk.price(i) <= 0) {
+				zeroPrices++;
+			}
+		}
+		return zeroPrices;
+	}
+
+	/**
+	 * @param count
+	 *            Integer The number of Trades from the first one.
+	 * @return Long The traded value of the sell Trades.
+	 */
+	long getCumulativeSellValue(final int count) {
+		if (count == firstIndex) {
+			return baseSellValue;
+		}
+		int index = count - 1;
+		Chunk chunk = chunk(index);
+		int offset = index & CHUNK_MASK;
+		long sellValue = chunk.blockSellValues[offset >>> BLOCK_BITS];
+		for (int i = blockStart(index); i <= offset; i++) {
+			if (chunk.sell(i)) {
+				sellValue += chunk.price(i) * chunk.shares(i);
+			}
+		}
+		return sellValue;
+	}
+
+	/**
+	 * @param count
+	 *            Integer The number of Trades from the first one.
+	 * @return Long The traded shares of the sell Trades.
+	 */
+	long getCumulativeSellShares(final int count) {
+		if (count == firstIndex) {
+			return baseSellShares;
+		}
+		int index = count - 1;
+		Chunk chunk = chunk(index);
+		int offset = index & CHUNK_MASK;
+		long sellShares = chunk.blockSellShares[offset >>> BLOCK_BITS];
+		for (int i = blockStart(index); i <= offset; i++) {
+			if (chunk.sell(i)) {
+				sellShares += chunk.shares(i);
+			}
+		}
+		return sellShares;
+	}
+
+	/**
+	 * @param count
+	 *            Integer The number of Trades from the first one.
+	 * @return Integer The number of sell Trades.
+	 */
+	int getCumulativeSells(final int count) {
+		if (count == firstIndex) {
+			return baseSells;
+		}
+		int index = count - 1;
+		Chunk chunk = chunk(index);
+		int offset = index & CHUNK_MASK;
+		// The block is a single word of sell bits, counted at once.
+		long bits = chunk.sellWord(offset >>> BLOCK_BITS)
+				& (-1L >>> (BLOCK_MASK - (offset & BLOCK_MASK)))
+				& (-1L << (blockStart(index) & BLOCK_MASK));
+		return chunk.blockSells[offset >>> BLOCK_BITS] + Long.bitCount(bits);
+	}
+
+	/**
+	 * @param index
+	 *            Integer A Trade index, not lower than the first index.
+	 * @return Integer The offset in its chunk of the first Trade held of the
+	 *         block of the Trade, which the prefixes of the block start at.
+	 */
+	private int blockStart(final int index) {
+		return Math.max(index & ~BLOCK_MASK, firstIndex) & CHUNK_MASK;
+	}
+
+	/**
+	 * @param from
+	 *            Integer The index of the first Trade of the range, not lower
+	 *            than the first index of the store.
+	 * @param to
+	 *            Integer The index after the last Trade of the range, not
+	 *            greater than the size.
+	 * @return Long The highest price of the range in fixed point units, or
+	 *         Long.MIN_VALUE when it is empty.
+	 */
+	long getHigh(final int from, final int to) {
+		return extreme(from, to, true);
+	}
+
+	/**
+	 * @param from
+	 *            Integer The index of the first Trade of the range, not lower
+	 *            than the first index of the store.
+	 * @param to
+	 *            Integer The index after the last Trade of the range, not
+	 *            greater than the size.
+	 * @return Long The lowest price of the range in fixed point units, or
+	 *         Long.MAX_VALUE when it is empty.
+	 */
+	long getLow(final int from, final int to) {
+		return extreme(from, to, false);
+	}
+
+	/**
+	 * Reads the Trades at the ends of a range one by one up to a block
+	 * boundary, the blocks up to a chunk boundary, and the full chunks
+	 * between them from two overlapping chunk runs.
+	 *
+	 * @param high
+	 *            Boolean True for the highest price, false for the lowest.
+	 * @return Long The highest or lowest price of the range.
+	 */
+	private long extreme(final int from, final int to, final boolean high) {
+		Chunk[] current = chunks;
+		long result = high ? Long.MIN_VALUE : Long.MAX_VALUE;
+		int index = from;
+		while (index < to && (index & BLOCK_MASK) != 0) {
+			result = pick(result, chunk(current, index).price(index
+					& CHUNK_MASK), high);
+			index++;
+		}
+		while (index + BLOCK_SIZE <= to && (index & CHUNK_MASK) != 0) {
+			result = pick(result, block(current, index, high), high);
+			index += BLOCK_SIZE;
+		}
+		int chunkCount = (to - index) >>> CHUNK_BITS;
+		if (chunkCount > 0) {
+			int first = (index >>> CHUNK_BITS) - firstChunk;
+			int level = 31 - Integer.numberOfLeadingZeros(chunkCount);
+			Chunk last = current[first + chunkCount - 1];
+			Chunk run = current[first + (1 << level) - 1];
+			result = pick(result, high ? last.spanHighs[level]
+					: last.spanLows[level], high);
+			result = pick(result, high ? run.spanHighs[level]
+					: run.spanLows[level], high);
+			index += chunkCount << CHUNK_BITS;
+		}
+		while (index + BLOCK_SIZE <= to) {
+			result = pick(result, block(current, index, high), high);
+			index += BLOCK_SIZE;
+		}
+		while (index < to) {
+			result = pick(result, chunk(current, index).price(index
+					& CHUNK_MASK), high);
+			index++;
+		}
+		return result;
+	}
+
+	/**
+	 * @return Long The highest or lowest price of the block starting at an
+	 *         index.
+	 */
+	private long block(final Chunk[] current, final int index,
+			final boolean high) {
+		Chunk chunk = chunk(current, index);
+		int block = (index & CHUNK_MASK) >>> BLOCK_BITS;
+		return high ? chunk.blockHighs[block] : chunk.blockLows[block];
+	}
+
+	/**
+	 * @return Long The higher or lower of two prices.
+	 */
+	private static long pick(final long result, final long price,
+			final boolean high) {
+		return high ? Math.max(result, price) : Math.min(result, price);
+	}
+
+	/**
+	 * Finds the first Trade at or after a given time within a range of
+	 * indexes. The search gallops forward from the start of the range, so it
+	 * is cheap when the answer is close to it.
+	 *
+	 * @param time
+	 *            Long The time in nanoseconds.
+	 * @param from
+	 *            Integer The first index to look at.
+	 * @param to
+	 *            Integer The index after the last one to look at.
+	 * @return Integer The index of the first Trade not older than the given
+	 *         time, or the end of the range when there is none.
+	 */
+	int firstIndexAtOrAfter(final long time, final int from, final int to) {
+		int low = from;
+		int high = to;
+		int step = 1;
+		while (low < high) {
+			int probe = low + step - 1;
+			if (probe >= high) {
+				break;
+			}
+			if (getTimestamp(probe) >= time) {
+				high = probe;
+				break;
+			}
+			low = probe + 1;
+			step <<= 1;
+		}
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (getTimestamp(middle) < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return Integer The index after the last published Trade, which is the
+	 *         number of Trades recorded including the ones before the first
+	 *         index.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * @return Integer The index of the first Trade held by the store.
+	 */
+	int getFirstIndex() {
+		return firstIndex;
+	}
+
+	/**
+	 * @return Long The memory taken by the chunks of the store in bytes, on
+	 *         or off the heap.
+	 */
+	long getHeldBytes() {
+		return chunks.length * CHUNK_BYTES;
+	}
+
+	/**
+	 * Drops the whole chunks below a Trade count. The Trades of the chunk
+	 * holding the count are kept, so fewer Trades may be dropped than asked,
+	 * and so is the chunk of the last Trade, so a store never evicts its last
+	 * price. The dropped chunks are released. Only for the writer, which must
+	 * append to the returned store from then on.
+	 *
+	 * @param count
+	 *            Integer The number of Trades from the first one that may be
+	 *            dropped.
+	 * @return TradeStore A store without the dropped chunks, or this store
+	 *         when no whole chunk can be dropped.
+	 */
+	TradeStore evictBefore(final int count) {
+		int last = size - 1;
+		if (last < firstIndex) {
+			return this;
+		}
+		int keptChunk = Math.min(count, last) >>> CHUNK_BITS;
+		if (keptChunk <= firstChunk) {
+			return this;
+		}
+		TradeStore kept = new TradeStore(this, keptChunk);
+		release();
+		return kept;
+	}
+
+	/**
+	 * Stops holding the chunks of the store, releasing those no other store
+	 * holds. Only for the writer, once another store replaced this one.
+	 */
+	void release() {
+		for (Chunk chunk : chunks) {
+			if (--chunk.holders == 0) {
+				chunk.release();
+			}
+		}
+	}
+
+	/**
+	 * Materializes a Trade. The tradeId is the position of the Trade in the
+	 * store starting at 1.
+	 *
+	 * @param index
+	 *            Integer The Trade index.
+	 * @return Trade A new Trade holding the stored values.
+	 */
+	Trade getTrade(final int index) {
+		Trade trade = new Trade(index + 1, getShares(index), isSell(index),
+				getPrice(index));
+		trade.setTimestamp(getTimestamp(index));
+		return trade;
+	}
+
+	/**
+	 * @return List<Trade> A read only view of the stored Trades, from the
+	 *         first index on. Each access materializes a new Trade.
+	 */
+	List<Trade> asList() {
+		return new AbstractList<Trade>() {
+			@Override
+			public Trade get(int index) {
+				if (index < 0 || index >= size()) {
+					throw new IndexOutOfBoundsException(String.valueOf(index));
+				}
+				return getTrade(firstIndex + index);
+			}
+
+			@Override
+			public int size() {
+				return size - firstIndex;
+			}
+		};
+	}
+
+	/**
+	 * @param index
+	 *            Integer The Trade index.
+	 * @return Chunk The chunk holding the Trade.
+	 */
+	private Chunk chunk(final int index) {
+		return chunks[(index >>> CHUNK_BITS) - firstChunk];
+	}
+
+	/**
+	 * @param current
+	 *            Chunk[] A chunk directory read by the caller.
+	 * @param index
+	 *            Integer The Trade index.
+	 * @return Chunk The chunk holding the Trade.
+	 */
+	private Chunk chunk(final Chunk[] current, final int index) {
+		return current[(index >>> CHUNK_BITS) - firstChunk];
+	}
+
+	/**
+	 * Publishes a new chunk directory with one more chunk.
+	 *
+	 * @param current
+	 *            Chunk[] The current chunk directory.
+	 * @return Chunk[] The new chunk directory.
+	 */
+	private Chunk[] addChunk(final Chunk[] current) {
+		Chunk[] newChunks = new Chunk[current.length + 1];
+		System.arraycopy(current, 0, newChunks, 0, current.length);
+		newChunks[current.length] = OffHeapTrades.isEnabled() ? new DirectChunk()
+				: new HeapChunk();
+		chunks = newChunks;
+		return newChunks;
+	}
+
+	/**
+	 * A block of {@link TradeStore#CHUNK_SIZE} Trades and the prefixes, high
+	 * and low summaries of its blocks and runs, which stay on the heap
+	 * whatever holds the Trades.
+	 */
+	private abstract static class Chunk {
+		private static final int	BLOCKS			= CHUNK_SIZE >>> BLOCK_BITS;
+
+		private final long[]		blockHighs		= new long[BLOCKS];
+		private final long[]		blockLows		= new long[BLOCKS];
+		private final long[]		blockValues		= new long[BLOCKS];
+		private final long[]		blockShares		= new long[BLOCKS];
+		private final double[]		blockLogPrices	= new double[BLOCKS];
+		private final int[]			blockZeroPrices	= new int[BLOCKS];
+		private final long[]		blockSellValues	= new long[BLOCKS];
+		private final long[]		blockSellShares	= new long[BLOCKS];
+		private final int[]			blockSells		= new int[BLOCKS];
+		private long[]				spanHighs		= null;
+		private long[]				spanLows		= null;
+		// The stores holding the chunk, only changed by their writer.
+		private int					holders			= 1;
+
+		/**
+		 * Writes every field of the Trade at an offset.
+		 */
+		abstract void put(int offset, long timestamp, int shares, long price,
+				boolean sell);
+
+		abstract long timestamp(int offset);
+
+		abstract int shares(int offset);
+
+		abstract long price(int offset);
+
+		/**
+		 * @return Long The sell bits of the 64 Trades from an offset that is
+		 *         a multiple of 64, lowest first.
+		 */
+		abstract long sellWord(int word);
+
+		final boolean sell(final int offset) {
+			return (sellWord(offset >>> 6) & (1L << offset)) != 0;
+		}
+
+		/**
+		 * Gives back the memory of the chunk once no store holds it.
+		 */
+		void release() {
+		}
+	}
+
+	/**
+	 * Chunk keeping every field in its own primitive array.
+	 */
+	private static final class HeapChunk extends Chunk {
+		private final long[]	timestamps	= new long[CHUNK_SIZE];
+		private final int[]		shares		= new int[CHUNK_SIZE];
+		private final long[]	prices		= new long[CHUNK_SIZE];
+		private final long[]	sellBits	= new long[CHUNK_SIZE >>> 6];
+
+		@Override
+		void put(final int offset, final long timestamp, final int tradeShares,
+				final long price, final boolean sell) {
+			timestamps[offset] = timestamp;
+			shares[offset] = tradeShares;
+			prices[offset] = price;
+			if (sell) {
+				sellBits[offset >>> 6] |= 1L << offset;
+			}
+		}
+
+		@Override
+		long timestamp(final int offset) {
+			return timestamps[offset];
+		}
+
+		@Override
+		int shares(final int offset) {
+			return shares[offset];
+		}
+
+		@Override
+		long price(final int offset) {
+			return prices[offset];
+		}
+
+		@Override
+		long sellWord(final int word) {
+			return sellBits[word];
+		}
+	}
+
+	/**
+	 * Chunk keeping the Trades off the heap, in a direct buffer from the
+	 * {@link OffHeapTrades} pool, as the same columns one after the other:
+	 * the timestamps and prices (8 bytes each), the shares (4 bytes) and the
+	 * sell bits.
+	 */
+	static final class DirectChunk extends Chunk {
+		private static final int	TIMESTAMPS	= 0;
+		private static final int	PRICES		= CHUNK_SIZE * 8;
+		private static final int	SHARES		= CHUNK_SIZE * 16;
+		private static final int	SELL_BITS	= CHUNK_SIZE * 20;
+		static final int			BUFFER_SIZE	= SELL_BITS + CHUNK_SIZE / 8;
+
+		private final ByteBuffer	columns		= OffHeapTrades
+														.allocate(BUFFER_SIZE);
+
+		@Override
+		void put(final int offset, final long timestamp, final int tradeShares,
+				final long price, final boolean sell) {
+			columns.putLong(TIMESTAMPS + offset * 8, timestamp);
+			columns.putLong(PRICES + offset * 8, price);
+			columns.putInt(SHARES + offset * 4, tradeShares);
+			// A pooled buffer holds old bits, so the bit is always written.
+			int word = SELL_BITS + (offset >>> 6) * 8;
+			long bits = columns.getLong(word);
+			columns.putLong(word, sell ? bits | (1L << offset) : bits
+					& ~(1L << offset));
+		}
+
+		@Override
+		long timestamp(final int offset) {
+			return columns.getLong(TIMESTAMPS + offset * 8);
+		}
+
+		@Override
+		int shares(final int offset) {
+			return columns.getInt(SHARES + offset * 4);
+		}
+
+		@Override
+		long price(final int offset) {
+			return columns.getLong(PRICES + offset * 8);
+		}
+
+		@Override
+		long sellWord(final int word) {
+			return columns.getLong(SELL_BITS + word * 8);
+		}
+
+		@Override
+		void release() {
+			OffHeapTrades.release(columns);
+		}
+	}
+}
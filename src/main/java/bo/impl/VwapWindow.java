@@ -0,0 +1,128 @@
+package main.java.bo.impl;
+
+import main.java.bo.FixedPoint;
+import main.java.bo.TradeFlow;
+
+/**
+ * Rolling time window over the Trades of a {@link TradeStore}. The window
+ * remembers the index of its first Trade and moves it forward as time
+ * advances; the traded value and shares inside the window come from the
+ * cumulative columns of the store, so the Volume Weighted Stock Price is
+ * available without scanning the Trades. The buy and sell side totals come
+ * from the sell side columns the same way.
+ * <p>
+ * The window holds no totals of its own, only a hint of where it starts.
+ * Concurrent readers may race on the hint, but every reader checks it against
+ * its own time, so the result is always the one for that time.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+final class VwapWindow {
+	private final TradeStore	store;
+	private final long			windowLength;
+	private volatile int		head;
+
+	/**
+	 * @param store
+	 *            TradeStore The Trades the window runs over.
+	 * @param windowLength
+	 *            Long The window length in nanoseconds.
+	 * @param nowTime
+	 *            Long The current time in nanoseconds, used to skip the
+	 *            Trades already outside the window.
+	 */
+	VwapWindow(final TradeStore store, final long windowLength,
+			final long nowTime) {
+		this.store = store;
+		this.windowLength = windowLength;
+		this.head = store.firstIndexAtOrAfter(nowTime - windowLength,
+				store.getFirstIndex(), store.size());
+	}
+
+	/**
+	 * Calculate the Volume Weighted Stock Price of the Trades not older than
+	 * the window length.
+	 *
+	 * @param nowTime
+	 *            Long The current time in nanoseconds.
+	 * @return Long The Stock price in fixed point units, rounded to the
+	 *         nearest unit, or 0 when the window is empty.
+	 */
+	long getStockPrice(final long nowTime) {
+		int size = store.size();
+		int start = advance(nowTime, size);
+
+		long tradedShares = store.getCumulativeShares(size)
+				- store.getCumulativeShares(start);
+		if (tradedShares == 0) {
+			return 0;
+		}
+		long tradedValue = store.getCumulativeValue(size)
+				- store.getCumulativeValue(start);
+		return FixedPoint.divide(tradedValue, tradedShares);
+	}
+
+	/**
+	 * Calculate the buy and sell side totals of the Trades not older than the
+	 * window length, from the same prefixes as the Stock price.
+	 *
+	 * @param nowTime
+	 *            Long The current time in nanoseconds.
+	 * @return TradeFlow The totals of each side in the window.
+	 */
+	TradeFlow getTradeFlow(final long nowTime) {
+		int size = store.size();
+		int start = advance(nowTime, size);
+
+		long sellValue = store.getCumulativeSellValue(size)
+				- store.getCumulativeSellValue(start);
+		long sellShares = store.getCumulativeSellShares(size)
+				- store.getCumulativeSellShares(start);
+		int sellTrades = store.getCumulativeSells(size)
+				- store.getCumulativeSells(start);
+		long buyValue = store.getCumulativeValue(size)
+				- store.getCumulativeValue(start) - sellValue;
+		long buyShares = store.getCumulativeShares(size)
+				- store.getCumulativeShares(start) - sellShares;
+		int buyTrades = size - start - sellTrades;
+		return new TradeFlow(windowLength, buyShares, buyValue, buyTrades,
+				sellShares, sellValue, sellTrades);
+	}
+
+	/**
+	 * Moves the start of the window to the first Trade not older than the
+	 * window length.
+	 *
+	 * @param nowTime
+	 *            Long The current time in nanoseconds.
+	 * @param size
+	 *            Integer The number of Trades read by the caller.
+	 * @return Integer The index of the first Trade in the window.
+	 */
+	private int advance(final long nowTime, final int size) {
+		long oldestTime = nowTime - windowLength;
+		int first = store.getFirstIndex();
+		int start = Math.min(head, size);
+		if (start > first && store.getTimestamp(start - 1) >= oldestTime) {
+			start = first;
+		}
+		start = store.firstIndexAtOrAfter(oldestTime, start, size);
+		head = start;
+		return start;
+	}
+
+	/**
+	 * @return TradeStore The Trades the window runs over.
+	 */
+	TradeStore getStore() {
+		return store;
+	}
+
+	/**
+	 * @return Long The window length in nanoseconds.
+	 */
+	long getWindowLength() {
+		return windowLength;
+	}
+}
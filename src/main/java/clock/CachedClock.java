@@ -0,0 +1,88 @@
+package main.java.clock;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Clock reading a time cached by a background thread, so the hot paths
+ * stamping Trades only read a volatile field. The time moves forward in
+ * steps of its resolution and never goes back.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class CachedClock implements Clock {
+	/** One millisecond. */
+	public static final long	DEFAULT_RESOLUTION	= 1000000;
+
+	private final Clock			source;
+	private final long			resolution;
+	private volatile long		time;
+	private volatile boolean	running				= false;
+	private Thread				ticker				= null;
+
+	/**
+	 * Caches the system clock every {@link #DEFAULT_RESOLUTION}.
+	 */
+	public CachedClock() {
+		this(SystemClock.INSTANCE, DEFAULT_RESOLUTION);
+	}
+
+	/**
+	 * @param source
+	 *            Clock The clock to cache.
+	 * @param resolution
+	 *            Long The time between updates in nanoseconds.
+	 */
+	public CachedClock(final Clock source, final long resolution) {
+		this.source = source;
+		this.resolution = resolution;
+		this.time = source.now();
+	}
+
+	/**
+	 * Starts updating the cached time in the background.
+	 */
+	public synchronized void start() {
+		if (ticker != null) {
+			return;
+		}
+		running = true;
+		ticker = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while (running) {
+					update();
+					LockSupport.parkNanos(resolution);
+				}
+			}
+		}, "cached-clock");
+		ticker.setDaemon(true);
+		ticker.start();
+	}
+
+	/**
+	 * Stops updating the cached time.
+	 */
+	public synchronized void close() {
+		running = false;
+		if (ticker != null) {
+			LockSupport.unpark(ticker);
+			ticker = null;
+		}
+	}
+
+	/**
+	 * Reads the source clock into the cached time.
+	 */
+	public void update() {
+		long sourceTime = source.now();
+		if (sourceTime > time) {
+			time = sourceTime;
+		}
+	}
+
+	@Override
+	public long now() {
+		return time;
+	}
+}
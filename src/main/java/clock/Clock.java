@@ -0,0 +1,18 @@
+package main.java.clock;
+
+/**
+ * Source of the time the Trades are stamped with and the Stock windows are
+ * evaluated against. Times are primitive nanoseconds since the epoch, so
+ * reading the clock never allocates and Trades recorded within the same
+ * millisecond keep their order.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public interface Clock {
+
+	/**
+	 * @return Long The current time in nanoseconds since the epoch.
+	 */
+	long now();
+}
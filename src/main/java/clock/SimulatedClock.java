@@ -0,0 +1,54 @@
+package main.java.clock;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Clock moved by hand, for simulations and for replaying a Trade history:
+ * the Stock windows are then evaluated against the replay time instead of
+ * the wall time. The time only moves forward.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class SimulatedClock implements Clock {
+	private final AtomicLong	time;
+
+	/**
+	 * @param time
+	 *            Long The initial time in nanoseconds since the epoch.
+	 */
+	public SimulatedClock(final long time) {
+		this.time = new AtomicLong(time);
+	}
+
+	/**
+	 * Moves the clock to a given time, unless it is already past it.
+	 *
+	 * @param newTime
+	 *            Long The time in nanoseconds since the epoch.
+	 * @return Long The time of the clock.
+	 */
+	public long advanceTo(final long newTime) {
+		long current = time.get();
+		while (newTime > current && !time.compareAndSet(current, newTime)) {
+			current = time.get();
+		}
+		return Math.max(current, newTime);
+	}
+
+	/**
+	 * Moves the clock forward.
+	 *
+	 * @param nanos
+	 *            Long The time to move forward in nanoseconds, not negative.
+	 * @return Long The time of the clock.
+	 */
+	public long advance(final long nanos) {
+		return time.addAndGet(Math.max(0, nanos));
+	}
+
+	@Override
+	public long now() {
+		return time.get();
+	}
+}
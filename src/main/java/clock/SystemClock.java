@@ -0,0 +1,27 @@
+package main.java.clock;
+
+/**
+ * Clock of the system. The wall clock is read once and the time is carried
+ * forward with {@link System#nanoTime()}, so the clock has nanosecond
+ * resolution and never goes back, even when the wall clock is adjusted.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public final class SystemClock implements Clock {
+	/** The system clock. */
+	public static final SystemClock	INSTANCE	= new SystemClock();
+
+	private final long				epochOrigin;
+	private final long				nanoOrigin;
+
+	private SystemClock() {
+		this.nanoOrigin = System.nanoTime();
+		this.epochOrigin = System.currentTimeMillis() * 1000000L;
+	}
+
+	@Override
+	public long now() {
+		return epochOrigin + (System.nanoTime() - nanoOrigin);
+	}
+}
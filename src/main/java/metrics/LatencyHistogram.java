@@ -0,0 +1,188 @@
+package main.java.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histogram in the manner of HdrHistogram: values are counted in
+ * buckets that split every power of two in 32 linear steps, so any value
+ * from a nanosecond to centuries is kept within about 3% of its magnitude
+ * in a fixed set of counters.
+ * <p>
+ * Recording is allocation free and lock free: each thread counts in one of
+ * several stripes of counters picked by its thread ID, so threads recording
+ * at the same time seldom touch the same cache line. Readers merge the
+ * stripes into a {@link Snapshot}.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public final class LatencyHistogram {
+	private static final int		SUB_BITS	= 5;
+	private static final int		SUB_COUNT	= 1 << SUB_BITS;
+	private static final int		BUCKETS		= (64 - SUB_BITS) * SUB_COUNT;
+	private static final int		SUM			= BUCKETS;
+	private static final int		MAX			= BUCKETS + 1;
+	private static final int		STRIDE		= BUCKETS + 2;
+
+	private final String			name;
+	private final int				stripeMask;
+	private final AtomicLongArray	counters;
+
+	/**
+	 * @param name
+	 *            String The name of the operation measured.
+	 */
+	public LatencyHistogram(final String name) {
+		this.name = name;
+		int stripes = Integer.highestOneBit(Math.min(8, Runtime.getRuntime()
+				.availableProcessors()) * 2 - 1);
+		this.stripeMask = stripes - 1;
+		this.counters = new AtomicLongArray(stripes * STRIDE);
+	}
+
+	/**
+	 * Records a value.
+	 *
+	 * @param value
+	 *            Long The value, usually a latency in nanoseconds. Negative
+	 *            values count as 0.
+	 */
+	public void record(final long value) {
+		long recorded = Math.max(0, value);
+		int offset = ((int) Thread.currentThread().getId() & stripeMask)
+				* STRIDE;
+		counters.incrementAndGet(offset + bucket(recorded));
+		counters.addAndGet(offset + SUM, recorded);
+		long max = counters.get(offset + MAX);
+		while (recorded > max
+				&& !counters.compareAndSet(offset + MAX, max, recorded)) {
+			max = counters.get(offset + MAX);
+		}
+	}
+
+	/**
+	 * @return Snapshot The values recorded so far.
+	 */
+	public Snapshot snapshot() {
+		long[] buckets = new long[BUCKETS];
+		long count = 0;
+		long sum = 0;
+		long max = 0;
+		for (int offset = 0; offset < counters.length(); offset += STRIDE) {
+			for (int i = 0; i < BUCKETS; i++) {
+				long bucketCount = counters.get(offset + i);
+				buckets[i] += bucketCount;
+				count += bucketCount;
+			}
+			sum += counters.get(offset + SUM);
+			max = Math.max(max, counters.get(offset + MAX));
+		}
+		return new Snapshot(name, buckets, count, sum, max);
+	}
+
+	/**
+	 * @return String The name of the operation measured.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @param value
+	 *            Long A non negative value.
+	 * @return Integer The bucket counting the value.
+	 */
+	private static int bucket(final long value) {
+		if (value < SUB_COUNT) {
+			return (int) value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int mantissa = (int) (value >>> (exponent - SUB_BITS));
+		return ((exponent - SUB_BITS + 1) << SUB_BITS) + mantissa - SUB_COUNT;
+	}
+
+	/**
+	 * @param bucket
+	 *            Integer A bucket.
+	 * @return Long The highest value counted by the bucket.
+	 */
+	private static long highestValue(final int bucket) {
+		if (bucket < SUB_COUNT) {
+			return bucket;
+		}
+		int shift = (bucket >>> SUB_BITS) - 1;
+		long mantissa = (bucket & (SUB_COUNT - 1)) + SUB_COUNT;
+		return ((mantissa + 1) << shift) - 1;
+	}
+
+	/**
+	 * The values of a histogram at one point in time.
+	 */
+	public static final class Snapshot {
+		private final String	name;
+		private final long[]	buckets;
+		private final long		count;
+		private final long		sum;
+		private final long		max;
+
+		private Snapshot(final String name, final long[] buckets,
+				final long count, final long sum, final long max) {
+			this.name = name;
+			this.buckets = buckets;
+			this.count = count;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * @param percentile
+		 *            Double The percentile, from 0 to 100.
+		 * @return Long The highest value of the bucket holding the
+		 *         percentile, at most the maximum recorded, 0 when nothing
+		 *         was recorded.
+		 */
+		public long getValueAtPercentile(final double percentile) {
+			if (count == 0) {
+				return 0;
+			}
+			long rank = Math.max(1,
+					(long) Math.ceil(count * Math.min(100, percentile) / 100));
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank) {
+					return Math.min(max, highestValue(i));
+				}
+			}
+			return max;
+		}
+
+		/**
+		 * @return String The name of the operation measured.
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return Long The number of values recorded.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return Double The mean of the values, 0 when nothing was recorded.
+		 */
+		public double getMean() {
+			return count == 0 ? 0 : (double) sum / count;
+		}
+
+		/**
+		 * @return Long The highest value recorded.
+		 */
+		public long getMax() {
+			return max;
+		}
+	}
+}
@@ -0,0 +1,103 @@
+package main.java.metrics;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hot path instrumentation: the latency of Trade recording and of the Stock
+ * calculations and the number of Trades recorded. The timed code calls
+ * {@link #start()} and {@link #stop(LatencyHistogram, long)} around the
+ * operation, which costs two clock reads and a few uncontended atomic
+ * increments and allocates nothing, so the metrics can stay on in
+ * production; disabling them leaves a volatile read.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public final class Metrics {
+	public static final LatencyHistogram		RECORD_TRADE	= new LatencyHistogram("recordTrade");
+	public static final LatencyHistogram		RECORD_TRADES	= new LatencyHistogram("recordTrades");
+	public static final LatencyHistogram		STOCK_PRICE		= new LatencyHistogram("getStockPrice");
+	public static final LatencyHistogram		TRADE_FLOW		= new LatencyHistogram("getTradeFlow");
+	public static final LatencyHistogram		GEOMETRIC_MEAN	= new LatencyHistogram("getGeometricMean");
+	public static final LatencyHistogram		TRADE_SUMMARY	= new LatencyHistogram("getTradeSummary");
+	public static final LatencyHistogram		ALL_SHARE_INDEX	= new LatencyHistogram("allShareIndex");
+	public static final LatencyHistogram		INDEX_ENGINE	= new LatencyHistogram("indexEngine");
+
+	private static final List<LatencyHistogram>	HISTOGRAMS		= Collections
+			.unmodifiableList(Arrays.asList(RECORD_TRADE, RECORD_TRADES,
+					STOCK_PRICE, TRADE_FLOW, GEOMETRIC_MEAN, TRADE_SUMMARY,
+					ALL_SHARE_INDEX, INDEX_ENGINE));
+	private static final LongAdder				TRADES_RECORDED	= new LongAdder();
+	private static volatile boolean				enabled			= true;
+
+	private Metrics() {
+	}
+
+	/**
+	 * Starts timing an operation.
+	 *
+	 * @return Long The start time in nanoseconds, or 0 when the metrics are
+	 *         disabled.
+	 */
+	public static long start() {
+		return enabled ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Records the latency of an operation.
+	 *
+	 * @param histogram
+	 *            LatencyHistogram The histogram of the operation.
+	 * @param start
+	 *            Long The value returned by {@link #start()}.
+	 */
+	public static void stop(final LatencyHistogram histogram, final long start) {
+		if (start != 0) {
+			histogram.record(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Counts recorded Trades.
+	 *
+	 * @param count
+	 *            Integer The number of Trades recorded.
+	 */
+	public static void tradesRecorded(final int count) {
+		if (enabled) {
+			TRADES_RECORDED.add(count);
+		}
+	}
+
+	/**
+	 * @return Long The number of Trades recorded while enabled.
+	 */
+	public static long getTradesRecorded() {
+		return TRADES_RECORDED.sum();
+	}
+
+	/**
+	 * @return List<LatencyHistogram> The histograms of every operation.
+	 */
+	public static List<LatencyHistogram> getHistograms() {
+		return HISTOGRAMS;
+	}
+
+	/**
+	 * @return Boolean True if the metrics are recorded.
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param enabled
+	 *            Boolean True to record the metrics.
+	 */
+	public static void setEnabled(final boolean enabled) {
+		Metrics.enabled = enabled;
+	}
+}
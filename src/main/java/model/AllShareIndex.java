@@ -0,0 +1,145 @@
+package main.java.model;
+
+import main.java.bo.TradeTotals;
+import main.java.bo.impl.AbstractStock;
+import main.java.metrics.Metrics;
+
+/**
+ * Calculates the GBCE All Share Index as the Geometric Mean of the prices of
+ * every Trade of every listed Stock. The logarithm accumulators of each Stock
+ * are cached by its registry ID and only the Stocks whose Trades changed
+ * since the last calculation are added again to the totals.
+ * <p>
+ * The totals can also be read as {@link IndexPartials}, so the indexes of
+ * several shards of the Stocks merge into the index of all of them.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class AllShareIndex {
+	private Contribution[]	contributions	= new Contribution[0];
+	private double			logPriceSum		= 0;
+	private long			tradeCount		= 0;
+	private long			zeroPriceTrades	= 0;
+	private double			cachedValue		= Double.NaN;
+	private boolean			dirty			= true;
+
+	/**
+	 * Calculate the GBCE All Share Index.
+	 *
+	 * @param registry
+	 *            StockRegistry The Stocks taking part in the index.
+	 * @return Double The All Share Index or NaN when there are no Trades.
+	 */
+	public synchronized double getValue(final StockRegistry registry) {
+		long start = Metrics.start();
+		update(registry);
+		if (dirty) {
+			cachedValue = calculate();
+			dirty = false;
+		}
+		Metrics.stop(Metrics.ALL_SHARE_INDEX, start);
+		return cachedValue;
+	}
+
+	/**
+	 * Get the logarithm totals of the index, to merge them with those of
+	 * other shards.
+	 *
+	 * @param registry
+	 *            StockRegistry The Stocks taking part in the index.
+	 * @return IndexPartials The totals of the Stocks.
+	 */
+	public synchronized IndexPartials getPartials(final StockRegistry registry) {
+		update(registry);
+		return new IndexPartials(logPriceSum, tradeCount, zeroPriceTrades);
+	}
+
+	/**
+	 * Adds to the totals the changes of the Stocks whose Trades changed
+	 * since the last update.
+	 *
+	 * @param registry
+	 *            StockRegistry The Stocks taking part in the index.
+	 */
+	private void update(final StockRegistry registry) {
+		int idCount = registry.getIdCount();
+		if (contributions.length < idCount) {
+			Contribution[] newContributions = new Contribution[idCount];
+			System.arraycopy(contributions, 0, newContributions, 0,
+					contributions.length);
+			contributions = newContributions;
+		}
+		for (int id = 0; id < idCount; id++) {
+			AbstractStock stock = registry.get(id);
+			Contribution contribution = contributions[id];
+			if (contribution == null) {
+				if (stock == null) {
+					continue;
+				}
+				contribution = new Contribution();
+				contributions[id] = contribution;
+			}
+			if (contribution.stock != stock) {
+				remove(contribution);
+				contribution.stock = stock;
+			}
+			if (stock == null || contribution.version == stock.getTradeVersion()) {
+				continue;
+			}
+			int version = stock.getTradeVersion();
+			TradeTotals stockTotals = stock.getTradeTotals();
+			int stockTrades = stockTotals.getTradeCount();
+			double stockLogPriceSum = stockTotals.getLogPriceSum();
+			int stockZeroPriceTrades = stockTotals.getZeroPriceTrades();
+			logPriceSum += stockLogPriceSum - contribution.logPriceSum;
+			tradeCount += stockTrades - contribution.tradeCount;
+			zeroPriceTrades += stockZeroPriceTrades
+					- contribution.zeroPriceTrades;
+			contribution.logPriceSum = stockLogPriceSum;
+			contribution.tradeCount = stockTrades;
+			contribution.zeroPriceTrades = stockZeroPriceTrades;
+			contribution.version = version;
+			dirty = true;
+		}
+	}
+
+	/**
+	 * Calculate the index from the accumulated totals.
+	 *
+	 * @return Double The All Share Index or NaN when there are no Trades.
+	 */
+	private double calculate() {
+		return new IndexPartials(logPriceSum, tradeCount, zeroPriceTrades)
+				.getValue();
+	}
+
+	/**
+	 * Takes the cached accumulators of a Stock out of the totals, used when
+	 * the Stock is delisted or replaced.
+	 *
+	 * @param contribution
+	 *            Contribution The cached accumulators.
+	 */
+	private void remove(final Contribution contribution) {
+		logPriceSum -= contribution.logPriceSum;
+		tradeCount -= contribution.tradeCount;
+		zeroPriceTrades -= contribution.zeroPriceTrades;
+		contribution.logPriceSum = 0;
+		contribution.tradeCount = 0;
+		contribution.zeroPriceTrades = 0;
+		contribution.version = -1;
+		dirty = true;
+	}
+
+	/**
+	 * Cached accumulators of a single Stock.
+	 */
+	private static final class Contribution {
+		private AbstractStock	stock			= null;
+		private double			logPriceSum		= 0;
+		private int				tradeCount		= 0;
+		private int				zeroPriceTrades	= 0;
+		private int				version			= -1;
+	}
+}
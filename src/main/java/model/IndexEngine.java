@@ -0,0 +1,177 @@
+package main.java.model;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import main.java.bo.TradeTotals;
+import main.java.bo.impl.AbstractStock;
+import main.java.metrics.Metrics;
+
+/**
+ * Calculates the GBCE All Share Index together with the Geometric Mean of
+ * every Stock in parallel. The registry ID range is split in a fork-join
+ * tree down to batches of Stocks; each batch reads the logarithm
+ * accumulators of its Stocks, which are kept up to date as Trades are
+ * recorded, and the partial totals are added up the tree into the index.
+ * <p>
+ * No Trade is scanned, so a calculation costs a few reads per Stock, spread
+ * over the threads of the pool. The split is fixed by the ID range, so the
+ * same Trades always give the same index.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class IndexEngine {
+	public static final int		DEFAULT_BATCH_SIZE	= 256;
+
+	private final ForkJoinPool	pool;
+	private final int			batchSize;
+
+	/**
+	 * Creates an engine running on the common fork-join pool.
+	 */
+	public IndexEngine() {
+		this(ForkJoinPool.commonPool(), DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param pool
+	 *            ForkJoinPool The pool running the calculations.
+	 * @param batchSize
+	 *            Integer The number of registry IDs a task calculates without
+	 *            splitting further.
+	 */
+	public IndexEngine(final ForkJoinPool pool, final int batchSize) {
+		this.pool = pool;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Calculate the All Share Index and the Geometric Mean of every listed
+	 * Stock.
+	 *
+	 * @param registry
+	 *            StockRegistry The Stocks taking part in the index.
+	 * @return IndexResult The index and the Geometric Means.
+	 */
+	public IndexResult calculate(final StockRegistry registry) {
+		long start = Metrics.start();
+		int idCount = registry.getIdCount();
+		String[] symbols = new String[idCount];
+		double[] geometricMeans = new double[idCount];
+		Totals totals = pool.invoke(new IndexTask(registry, symbols,
+				geometricMeans, 0, idCount));
+
+		int listed = 0;
+		for (int id = 0; id < idCount; id++) {
+			if (symbols[id] != null) {
+				symbols[listed] = symbols[id];
+				geometricMeans[listed] = geometricMeans[id];
+				listed++;
+			}
+		}
+		String[] listedSymbols = new String[listed];
+		double[] listedMeans = new double[listed];
+		System.arraycopy(symbols, 0, listedSymbols, 0, listed);
+		System.arraycopy(geometricMeans, 0, listedMeans, 0, listed);
+		IndexResult result = new IndexResult(totals.geometricMean(),
+				totals.tradeCount, listedSymbols, listedMeans);
+		Metrics.stop(Metrics.INDEX_ENGINE, start);
+		return result;
+	}
+
+	/**
+	 * Calculates a range of registry IDs, splitting it in halves down to the
+	 * batch size. The Geometric Mean of each Stock is written at its ID.
+	 */
+	private final class IndexTask extends RecursiveTask<Totals> {
+		private static final long		serialVersionUID	= 1L;
+
+		private final StockRegistry		registry;
+		private final String[]			symbols;
+		private final double[]			geometricMeans;
+		private final int				from;
+		private final int				to;
+
+		private IndexTask(final StockRegistry registry,
+				final String[] symbols, final double[] geometricMeans,
+				final int from, final int to) {
+			this.registry = registry;
+			this.symbols = symbols;
+			this.geometricMeans = geometricMeans;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Totals compute() {
+			if (to - from <= batchSize) {
+				return computeBatch();
+			}
+			int middle = (from + to) >>> 1;
+			IndexTask left = new IndexTask(registry, symbols, geometricMeans,
+					from, middle);
+			left.fork();
+			Totals totals = new IndexTask(registry, symbols, geometricMeans,
+					middle, to).compute();
+			return left.join().add(totals);
+		}
+
+		private Totals computeBatch() {
+			Totals totals = new Totals();
+			for (int id = from; id < to; id++) {
+				AbstractStock stock = registry.get(id);
+				if (stock == null) {
+					continue;
+				}
+				TradeTotals stockTotals = stock.getTradeTotals();
+				int stockTrades = stockTotals.getTradeCount();
+				double stockLogPriceSum = stockTotals.getLogPriceSum();
+				int stockZeroPriceTrades = stockTotals.getZeroPriceTrades();
+				symbols[id] = stock.getSymbol();
+				if (stockTrades == 0) {
+					geometricMeans[id] = Double.NaN;
+				} else if (stockZeroPriceTrades > 0) {
+					geometricMeans[id] = 0;
+				} else {
+					geometricMeans[id] = Math.exp(stockLogPriceSum
+							/ stockTrades);
+				}
+				totals.logPriceSum += stockLogPriceSum;
+				totals.tradeCount += stockTrades;
+				totals.zeroPriceTrades += stockZeroPriceTrades;
+			}
+			return totals;
+		}
+	}
+
+	/**
+	 * Logarithm accumulators of a range of Stocks.
+	 */
+	private static final class Totals {
+		private double	logPriceSum		= 0;
+		private long	tradeCount		= 0;
+		private long	zeroPriceTrades	= 0;
+
+		private Totals add(final Totals other) {
+			logPriceSum += other.logPriceSum;
+			tradeCount += other.tradeCount;
+			zeroPriceTrades += other.zeroPriceTrades;
+			return this;
+		}
+
+		/**
+		 * @return Double The Geometric Mean of the prices of the Trades, NaN
+		 *         when there are none.
+		 */
+		private double geometricMean() {
+			if (tradeCount == 0) {
+				return Double.NaN;
+			}
+			if (zeroPriceTrades > 0) {
+				return 0;
+			}
+			return Math.exp(logPriceSum / tradeCount);
+		}
+	}
+}
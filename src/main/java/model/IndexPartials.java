@@ -0,0 +1,81 @@
+package main.java.model;
+
+/**
+ * Logarithm totals of the GBCE All Share Index over a set of Stocks. The
+ * totals of disjoint sets, such as the shards of the Stocks, add up to the
+ * totals of their union, so the index of every Stock is calculated from the
+ * partials of every shard without moving their Trades.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class IndexPartials {
+	public static final IndexPartials	EMPTY	= new IndexPartials(0, 0, 0);
+
+	private final double				logPriceSum;
+	private final long					tradeCount;
+	private final long					zeroPriceTrades;
+
+	/**
+	 * @param logPriceSum
+	 *            Double The sum of the logarithms of the non zero prices in
+	 *            pennies.
+	 * @param tradeCount
+	 *            Long The number of Trades.
+	 * @param zeroPriceTrades
+	 *            Long The number of Trades at a zero price.
+	 */
+	public IndexPartials(final double logPriceSum, final long tradeCount,
+			final long zeroPriceTrades) {
+		this.logPriceSum = logPriceSum;
+		this.tradeCount = tradeCount;
+		this.zeroPriceTrades = zeroPriceTrades;
+	}
+
+	/**
+	 * @param other
+	 *            IndexPartials The totals of another set of Stocks.
+	 * @return IndexPartials The totals of both sets.
+	 */
+	public IndexPartials merge(final IndexPartials other) {
+		return new IndexPartials(logPriceSum + other.logPriceSum, tradeCount
+				+ other.tradeCount, zeroPriceTrades + other.zeroPriceTrades);
+	}
+
+	/**
+	 * Calculate the index from the totals.
+	 *
+	 * @return Double The All Share Index or NaN when there are no Trades.
+	 */
+	public double getValue() {
+		if (tradeCount == 0) {
+			return Double.NaN;
+		}
+		if (zeroPriceTrades > 0) {
+			return 0;
+		}
+		return Math.exp(logPriceSum / tradeCount);
+	}
+
+	/**
+	 * @return Double The sum of the logarithms of the non zero prices in
+	 *         pennies.
+	 */
+	public double getLogPriceSum() {
+		return logPriceSum;
+	}
+
+	/**
+	 * @return Long The number of Trades.
+	 */
+	public long getTradeCount() {
+		return tradeCount;
+	}
+
+	/**
+	 * @return Long The number of Trades at a zero price.
+	 */
+	public long getZeroPriceTrades() {
+		return zeroPriceTrades;
+	}
+}
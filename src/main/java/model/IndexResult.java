@@ -0,0 +1,74 @@
+package main.java.model;
+
+/**
+ * Result of an {@link IndexEngine} calculation: the GBCE All Share Index and
+ * the Geometric Mean of every listed Stock, in registry ID order.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class IndexResult {
+	private final double	value;
+	private final long		tradeCount;
+	private final String[]	symbols;
+	private final double[]	geometricMeans;
+
+	/**
+	 * @param value
+	 *            Double The All Share Index, NaN when there are no Trades.
+	 * @param tradeCount
+	 *            Long The number of Trades taking part in the index.
+	 * @param symbols
+	 *            String[] The symbols of the listed Stocks.
+	 * @param geometricMeans
+	 *            double[] The Geometric Mean of each Stock, NaN for the ones
+	 *            without Trades.
+	 */
+	public IndexResult(final double value, final long tradeCount,
+			final String[] symbols, final double[] geometricMeans) {
+		this.value = value;
+		this.tradeCount = tradeCount;
+		this.symbols = symbols;
+		this.geometricMeans = geometricMeans;
+	}
+
+	/**
+	 * @return Double The All Share Index, NaN when there are no Trades.
+	 */
+	public double getValue() {
+		return value;
+	}
+
+	/**
+	 * @return Long The number of Trades taking part in the index.
+	 */
+	public long getTradeCount() {
+		return tradeCount;
+	}
+
+	/**
+	 * @return Integer The number of Stocks in the result.
+	 */
+	public int getStockCount() {
+		return symbols.length;
+	}
+
+	/**
+	 * @param position
+	 *            Integer The position of the Stock in the result.
+	 * @return String The Stock symbol.
+	 */
+	public String getSymbol(final int position) {
+		return symbols[position];
+	}
+
+	/**
+	 * @param position
+	 *            Integer The position of the Stock in the result.
+	 * @return Double The Geometric Mean of the Stock, NaN when it has no
+	 *         Trades.
+	 */
+	public double getGeometricMean(final int position) {
+		return geometricMeans[position];
+	}
+}
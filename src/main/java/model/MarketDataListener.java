@@ -0,0 +1,29 @@
+package main.java.model;
+
+/**
+ * Receives the updates of a {@link MarketDataPublisher} subscription.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public interface MarketDataListener {
+
+	/**
+	 * Called with the latest value of a subscribed metric. Updates of one
+	 * subscription never overlap, and values produced while the previous
+	 * update was being delivered are conflated into the newest one. Runs on
+	 * a delivery thread shared with other subscriptions, so it must not
+	 * block, as on the stream of a client.
+	 *
+	 * @param metric
+	 *            Metric The metric updated.
+	 * @param symbol
+	 *            String The Stock symbol, or null for the All Share Index.
+	 * @param value
+	 *            Double The new value.
+	 * @param time
+	 *            Long The time the value was calculated in nanoseconds.
+	 */
+	void onUpdate(MarketDataPublisher.Metric metric, String symbol,
+			double value, long time);
+}
@@ -0,0 +1,334 @@
+package main.java.model;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import main.java.bo.FixedPoint;
+import main.java.bo.impl.AbstractStock;
+
+/**
+ * Publishes the All Share Index and the per Stock price, Dividend Yield and
+ * P/E Ratio to subscribers, so they get updates without polling.
+ * <p>
+ * Every cadence the publisher calculates each subscribed topic once, however
+ * many subscribers it has, and offers the value to the subscriptions whose
+ * last published value differs by at least their change threshold. A
+ * subscription only keeps its latest value: a pool of delivery threads
+ * hands it over to the listener, and values offered while a delivery is
+ * running replace each other. Recording Trades never touches the publisher,
+ * and a listener must not block: one writing to a client hands the update
+ * over to a writer of that client instead, so a slow subscriber delays only
+ * its own updates and never the deliveries of the others.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class MarketDataPublisher {
+	public static final long	DEFAULT_CADENCE				= 100;
+	public static final int		DEFAULT_DELIVERY_THREADS	= 2;
+
+	/**
+	 * The metrics that can be subscribed to.
+	 */
+	public enum Metric {
+		/** The GBCE All Share Index, not bound to a Stock. */
+		INDEX,
+		/** The Volume Weighted Stock Price of the ticker window. */
+		VWAP,
+		/** The Dividend Yield. */
+		DIVIDEND_YIELD,
+		/** The P/E Ratio. */
+		PE_RATIO
+	}
+
+	private final StockRegistry					registry;
+	private final AllShareIndex					allShareIndex;
+	private final long							tickerTime;
+	private final ConcurrentMap<String, Topic>	topics			= new ConcurrentHashMap<String, Topic>();
+	private ScheduledExecutorService			ticker			= null;
+	private ExecutorService						deliverers		= null;
+
+	/**
+	 * @param registry
+	 *            StockRegistry The Stocks published.
+	 * @param allShareIndex
+	 *            AllShareIndex The index published.
+	 * @param tickerTime
+	 *            Long The Stock price window in nanoseconds.
+	 */
+	public MarketDataPublisher(final StockRegistry registry,
+			final AllShareIndex allShareIndex, final long tickerTime) {
+		this.registry = registry;
+		this.allShareIndex = allShareIndex;
+		this.tickerTime = tickerTime;
+	}
+
+	/**
+	 * Starts publishing.
+	 *
+	 * @param cadence
+	 *            Long The time between two calculations of the subscribed
+	 *            metrics in milliseconds.
+	 * @param deliveryThreads
+	 *            Integer The number of threads delivering the updates.
+	 */
+	public synchronized void start(final long cadence,
+			final int deliveryThreads) {
+		ticker = Executors.newSingleThreadScheduledExecutor(daemonThreads(
+				"market-data-publisher", false));
+		deliverers = Executors.newFixedThreadPool(deliveryThreads,
+				daemonThreads("market-data-delivery-", true));
+		ticker.scheduleAtFixedRate(new Runnable() {
+			@Override
+			public void run() {
+				publish();
+			}
+		}, cadence, cadence, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops publishing. Updates being delivered are finished.
+	 */
+	public synchronized void close() {
+		if (ticker != null) {
+			ticker.shutdownNow();
+			deliverers.shutdown();
+			ticker = null;
+			deliverers = null;
+		}
+	}
+
+	/**
+	 * Subscribes to a metric.
+	 *
+	 * @param metric
+	 *            Metric The metric.
+	 * @param symbol
+	 *            String The Stock symbol, ignored for INDEX.
+	 * @param minChange
+	 *            Double The change from the last published value needed to
+	 *            publish a new one, 0 to publish every change.
+	 * @param listener
+	 *            MarketDataListener Receives the updates.
+	 * @return Subscription The subscription, to cancel it.
+	 */
+	public Subscription subscribe(final Metric metric, final String symbol,
+			final double minChange, final MarketDataListener listener) {
+		String topicSymbol = metric == Metric.INDEX ? null : symbol;
+		String key = metric + ":" + topicSymbol;
+		Topic topic = topics.get(key);
+		if (topic == null) {
+			Topic newTopic = new Topic(metric, topicSymbol);
+			topic = topics.putIfAbsent(key, newTopic);
+			if (topic == null) {
+				topic = newTopic;
+			}
+		}
+		Subscription subscription = new Subscription(topic, minChange,
+				listener);
+		topic.subscriptions.add(subscription);
+		return subscription;
+	}
+
+	/**
+	 * Calculates every subscribed topic once and offers the values to their
+	 * subscriptions. Runs on the publisher thread.
+	 */
+	void publish() {
+		long time = registry.getClock().now();
+		for (Topic topic : topics.values()) {
+			if (topic.subscriptions.isEmpty()) {
+				continue;
+			}
+			double value = calculate(topic);
+			for (Subscription subscription : topic.subscriptions) {
+				subscription.offer(value, time);
+			}
+		}
+	}
+
+	/**
+	 * @param topic
+	 *            Topic A topic.
+	 * @return Double The current value of the topic, NaN when its Stock is
+	 *         not listed.
+	 */
+	private double calculate(final Topic topic) {
+		if (topic.metric == Metric.INDEX) {
+			return allShareIndex.getValue(registry);
+		}
+		AbstractStock stock = registry.get(topic.symbol);
+		if (stock == null) {
+			return Double.NaN;
+		}
+		switch (topic.metric) {
+		case VWAP:
+			return FixedPoint.toDouble(stock.getStockPrice(tickerTime));
+		case DIVIDEND_YIELD:
+			return stock.getDividendYield();
+		default:
+			return stock.getPERatio();
+		}
+	}
+
+	/**
+	 * @return ThreadFactory A factory of daemon threads with a name.
+	 */
+	private static ThreadFactory daemonThreads(final String name,
+			final boolean numbered) {
+		return new ThreadFactory() {
+			private final AtomicInteger	count	= new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, numbered ? name
+						+ count.incrementAndGet() : name);
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/**
+	 * A metric, of a Stock or of the index, and its subscriptions.
+	 */
+	private static final class Topic {
+		private final Metric				metric;
+		private final String				symbol;
+		private final List<Subscription>	subscriptions	= new CopyOnWriteArrayList<Subscription>();
+
+		private Topic(final Metric metric, final String symbol) {
+			this.metric = metric;
+			this.symbol = symbol;
+		}
+	}
+
+	/**
+	 * A subscription to a topic, holding the latest value not yet delivered.
+	 */
+	public final class Subscription {
+		private final Topic						topic;
+		private final double					minChange;
+		private final MarketDataListener		listener;
+		private final AtomicReference<Sample>	latest		= new AtomicReference<Sample>();
+		private final AtomicBoolean				scheduled	= new AtomicBoolean();
+		private double							lastOffered	= Double.NaN;
+		private volatile boolean				cancelled	= false;
+		private final Runnable					delivery;
+
+		private Subscription(final Topic topic, final double minChange,
+				final MarketDataListener listener) {
+			this.topic = topic;
+			this.minChange = minChange;
+			this.listener = listener;
+			this.delivery = new Runnable() {
+				@Override
+				public void run() {
+					deliver();
+				}
+			};
+		}
+
+		/**
+		 * Stops the updates of the subscription.
+		 */
+		public void cancel() {
+			cancelled = true;
+			topic.subscriptions.remove(this);
+		}
+
+		/**
+		 * @return Metric The subscribed metric.
+		 */
+		public Metric getMetric() {
+			return topic.metric;
+		}
+
+		/**
+		 * @return String The subscribed Stock symbol, or null for the index.
+		 */
+		public String getSymbol() {
+			return topic.symbol;
+		}
+
+		/**
+		 * Keeps a value as the latest one if it changed enough, and makes
+		 * sure a delivery is on its way. Called by the publisher thread.
+		 */
+		private void offer(final double value, final long time) {
+			if (!changed(value)) {
+				return;
+			}
+			lastOffered = value;
+			latest.set(new Sample(value, time));
+			schedule();
+		}
+
+		/**
+		 * @return Boolean True if the value is to be published.
+		 */
+		private boolean changed(final double value) {
+			if (Double.isNaN(lastOffered) || Double.isNaN(value)) {
+				return Double.isNaN(lastOffered) != Double.isNaN(value);
+			}
+			double change = Math.abs(value - lastOffered);
+			return minChange > 0 ? change >= minChange : change > 0;
+		}
+
+		/**
+		 * Hands the subscription to a delivery thread unless one has it.
+		 */
+		private void schedule() {
+			ExecutorService executor = deliverers;
+			if (executor != null && scheduled.compareAndSet(false, true)) {
+				try {
+					executor.execute(delivery);
+				} catch (RuntimeException e) {
+					scheduled.set(false);
+				}
+			}
+		}
+
+		/**
+		 * Delivers the latest value until none is left. Runs on a delivery
+		 * thread.
+		 */
+		private void deliver() {
+			try {
+				Sample sample;
+				while (!cancelled && (sample = latest.getAndSet(null)) != null) {
+					listener.onUpdate(topic.metric, topic.symbol,
+							sample.value, sample.time);
+				}
+			} finally {
+				scheduled.set(false);
+			}
+			if (!cancelled && latest.get() != null) {
+				schedule();
+			}
+		}
+	}
+
+	/**
+	 * A published value and the time it was calculated.
+	 */
+	private static final class Sample {
+		private final double	value;
+		private final long		time;
+
+		private Sample(final double value, final long time) {
+			this.value = value;
+			this.time = time;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package main.java.model;
+
+import java.util.Map;
+
+/**
+ * JMX view of the hot path metrics and the Trade counts per Stock. Latencies
+ * are in microseconds and keyed by operation name.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public interface MetricsMXBean {
+
+	/**
+	 * @return Long The number of Trades recorded while the metrics were
+	 *         enabled.
+	 */
+	long getTradesRecorded();
+
+	/**
+	 * @return Map<String, Integer> The Trade count of every listed Stock.
+	 */
+	Map<String, Integer> getTradeCounts();
+
+	/**
+	 * @return Map<String, Long> The number of calls of every operation.
+	 */
+	Map<String, Long> getOperationCounts();
+
+	/**
+	 * @return Map<String, Double> The mean latency of every operation.
+	 */
+	Map<String, Double> getMeanMicros();
+
+	/**
+	 * @return Map<String, Double> The median latency of every operation.
+	 */
+	Map<String, Double> getP50Micros();
+
+	/**
+	 * @return Map<String, Double> The 99th percentile latency of every
+	 *         operation.
+	 */
+	Map<String, Double> getP99Micros();
+
+	/**
+	 * @return Map<String, Double> The 99.9th percentile latency of every
+	 *         operation.
+	 */
+	Map<String, Double> getP999Micros();
+
+	/**
+	 * @return Map<String, Double> The maximum latency of every operation.
+	 */
+	Map<String, Double> getMaxMicros();
+
+	/**
+	 * @return Boolean True if the metrics are recorded.
+	 */
+	boolean isEnabled();
+
+	/**
+	 * @param enabled
+	 *            Boolean True to record the metrics.
+	 */
+	void setEnabled(boolean enabled);
+
+	/**
+	 * @return String The text dump of every metric.
+	 */
+	String dump();
+}
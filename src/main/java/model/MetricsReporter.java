@@ -0,0 +1,244 @@
+package main.java.model;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import main.java.bo.impl.AbstractStock;
+import main.java.bo.impl.OffHeapTrades;
+import main.java.metrics.LatencyHistogram;
+import main.java.metrics.Metrics;
+
+/**
+ * Exposes the hot path {@link Metrics} and the Trade count of every Stock of
+ * a registry through JMX and as a text dump, appended periodically to a file
+ * by a background thread. The Trade counts per Stock are read from the
+ * Stocks themselves, so recording a Trade pays nothing for them.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class MetricsReporter implements MetricsMXBean {
+	public static final String			OBJECT_NAME		= "SuperSimpleStocks:type=Metrics";
+	public static final long			DEFAULT_PERIOD	= 60000;
+
+	private final StockRegistry			registry;
+	private ScheduledExecutorService	scheduler		= null;
+	private volatile IOException		lastFailure		= null;
+
+	/**
+	 * @param registry
+	 *            StockRegistry The Stocks whose Trade counts are reported.
+	 */
+	public MetricsReporter(final StockRegistry registry) {
+		this.registry = registry;
+	}
+
+	/**
+	 * Registers the reporter in the platform MBean server as
+	 * {@link #OBJECT_NAME}.
+	 *
+	 * @throws JMException
+	 *             When the reporter can not be registered.
+	 */
+	public void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(OBJECT_NAME);
+		if (server.isRegistered(name)) {
+			server.unregisterMBean(name);
+		}
+		server.registerMBean(this, name);
+	}
+
+	/**
+	 * Starts appending the text dump to a file in the background.
+	 *
+	 * @param file
+	 *            File The file the dumps are appended to.
+	 * @param period
+	 *            Long The time between dumps in milliseconds.
+	 */
+	public synchronized void start(final File file, final long period) {
+		scheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "metrics-reporter");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Writer writer = new FileWriter(file, true);
+					try {
+						dump(writer);
+					} finally {
+						writer.close();
+					}
+				} catch (IOException e) {
+					lastFailure = e;
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops the background dumps.
+	 */
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * Writes every metric as text: the Trades recorded, the off heap Trade
+	 * memory, one line per operation with its call count and latency in
+	 * microseconds, and one line per Stock with its Trade count.
+	 *
+	 * @param out
+	 *            Appendable Receives the text.
+	 * @throws IOException
+	 *             When the text can not be written.
+	 */
+	public void dump(final Appendable out) throws IOException {
+		out.append(String.format("metrics %tFT%<tT%n",
+				System.currentTimeMillis()));
+		out.append(String.format("tradesRecorded %d%n",
+				Metrics.getTradesRecorded()));
+		out.append(String.format("offHeapBytes %d pooled %d%n",
+				OffHeapTrades.getAllocatedBytes(), OffHeapTrades.getPooled()));
+		for (LatencyHistogram histogram : Metrics.getHistograms()) {
+			LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+			out.append(String.format(
+					"%-16s count %d mean %.3f p50 %.3f p99 %.3f p999 %.3f "
+							+ "max %.3f%n", snapshot.getName(),
+					snapshot.getCount(), snapshot.getMean() / 1000,
+					micros(snapshot.getValueAtPercentile(50)),
+					micros(snapshot.getValueAtPercentile(99)),
+					micros(snapshot.getValueAtPercentile(99.9)),
+					micros(snapshot.getMax())));
+		}
+		for (AbstractStock stock : registry) {
+			out.append(String.format("stock %s trades %d held %d%n",
+					stock.getSymbol(), stock.getTradeCount(), stock
+							.getTrades().size()));
+		}
+	}
+
+	@Override
+	public String dump() {
+		StringBuilder text = new StringBuilder();
+		try {
+			dump(text);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return text.toString();
+	}
+
+	@Override
+	public long getTradesRecorded() {
+		return Metrics.getTradesRecorded();
+	}
+
+	@Override
+	public Map<String, Integer> getTradeCounts() {
+		Map<String, Integer> counts = new LinkedHashMap<String, Integer>();
+		for (AbstractStock stock : registry) {
+			counts.put(stock.getSymbol(), stock.getTradeCount());
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Long> getOperationCounts() {
+		Map<String, Long> counts = new LinkedHashMap<String, Long>();
+		for (LatencyHistogram histogram : Metrics.getHistograms()) {
+			counts.put(histogram.getName(), histogram.snapshot().getCount());
+		}
+		return counts;
+	}
+
+	@Override
+	public Map<String, Double> getMeanMicros() {
+		Map<String, Double> means = new LinkedHashMap<String, Double>();
+		for (LatencyHistogram histogram : Metrics.getHistograms()) {
+			means.put(histogram.getName(),
+					histogram.snapshot().getMean() / 1000);
+		}
+		return means;
+	}
+
+	@Override
+	public Map<String, Double> getP50Micros() {
+		return percentiles(50);
+	}
+
+	@Override
+	public Map<String, Double> getP99Micros() {
+		return percentiles(99);
+	}
+
+	@Override
+	public Map<String, Double> getP999Micros() {
+		return percentiles(99.9);
+	}
+
+	@Override
+	public Map<String, Double> getMaxMicros() {
+		return percentiles(100);
+	}
+
+	@Override
+	public boolean isEnabled() {
+		return Metrics.isEnabled();
+	}
+
+	@Override
+	public void setEnabled(final boolean enabled) {
+		Metrics.setEnabled(enabled);
+	}
+
+	/**
+	 * @return IOException The failure of the last background dump, or null.
+	 */
+	public IOException getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * @param percentile
+	 *            Double The percentile, from 0 to 100.
+	 * @return Map<String, Double> The latency at the percentile of every
+	 *         operation in microseconds.
+	 */
+	private static Map<String, Double> percentiles(final double percentile) {
+		Map<String, Double> values = new LinkedHashMap<String, Double>();
+		for (LatencyHistogram histogram : Metrics.getHistograms()) {
+			values.put(histogram.getName(), micros(histogram.snapshot()
+					.getValueAtPercentile(percentile)));
+		}
+		return values;
+	}
+
+	private static double micros(final long nanos) {
+		return nanos / 1000.0;
+	}
+}
@@ -0,0 +1,180 @@
+package main.java.model;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
+
+import main.java.bo.FixedPoint;
+import main.java.bo.ReferenceData;
+import main.java.bo.impl.AbstractStock;
+
+/**
+ * Loads the reference data of the Stocks of a registry from a file and
+ * loads it again, in the background, every time the file changes, without
+ * stopping the ingestion of Trades.
+ * <p>
+ * The file is CSV, one Stock per line:
+ * <code>SYMBOL,lastDividend,fixedDividend,parValue</code> with the dividend
+ * and the par value in pennies with up to {@link FixedPoint#DECIMALS}
+ * decimal places. Lines not following the format, such as a header, and
+ * symbols not in the registry are skipped.
+ * <p>
+ * The whole file is parsed before any Stock is touched. Each Stock then
+ * swaps its {@link ReferenceData} at once, and only the Stocks whose values
+ * changed invalidate their cached metrics. Writers should replace the file
+ * by renaming a complete one over it, so it is never read half written.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class ReferenceDataWatcher {
+	private static final int		FIELDS			= 4;
+
+	private final StockRegistry		registry;
+	private final Path				file;
+	private WatchService			watchService	= null;
+	private volatile IOException	lastFailure		= null;
+
+	/**
+	 * @param registry
+	 *            StockRegistry The Stocks receiving the reference data.
+	 * @param file
+	 *            File The reference data file.
+	 */
+	public ReferenceDataWatcher(final StockRegistry registry, final File file) {
+		this.registry = registry;
+		this.file = file.getAbsoluteFile().toPath();
+	}
+
+	/**
+	 * Loads the reference data file into the Stocks.
+	 *
+	 * @return Integer The number of Stocks whose reference data changed.
+	 * @throws IOException
+	 *             When the file can not be read.
+	 */
+	public int reload() throws IOException {
+		List<AbstractStock> stocks = new ArrayList<AbstractStock>();
+		List<ReferenceData> values = new ArrayList<ReferenceData>();
+		BufferedReader reader = Files.newBufferedReader(file,
+				StandardCharsets.UTF_8);
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String[] fields = line.split(",");
+				if (fields.length != FIELDS) {
+					continue;
+				}
+				AbstractStock stock = registry.get(fields[0].trim());
+				if (stock == null) {
+					continue;
+				}
+				try {
+					values.add(new ReferenceData(FixedPoint.parse(fields[1]
+							.trim()), Integer.parseInt(fields[2].trim()),
+							FixedPoint.parse(fields[3].trim())));
+					stocks.add(stock);
+				} catch (NumberFormatException e) {
+					continue;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		int changed = 0;
+		for (int i = 0; i < stocks.size(); i++) {
+			if (stocks.get(i).setReferenceData(values.get(i))) {
+				changed++;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Starts watching the directory of the file in the background, loading
+	 * the file again whenever it is written or replaced.
+	 *
+	 * @throws IOException
+	 *             When the directory can not be watched.
+	 */
+	public synchronized void start() throws IOException {
+		final WatchService service = FileSystems.getDefault()
+				.newWatchService();
+		file.getParent().register(service,
+				StandardWatchEventKinds.ENTRY_CREATE,
+				StandardWatchEventKinds.ENTRY_MODIFY);
+		watchService = service;
+		Thread watcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				watch(service);
+			}
+		}, "reference-data-watcher");
+		watcher.setDaemon(true);
+		watcher.start();
+	}
+
+	/**
+	 * Stops watching the file.
+	 */
+	public synchronized void close() {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				lastFailure = e;
+			}
+			watchService = null;
+		}
+	}
+
+	/**
+	 * @return IOException The last failure to load the file in the
+	 *         background, or null.
+	 */
+	public IOException getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * Waits for the changes of the directory and loads the file again when
+	 * one of them is about it. Runs on the watcher thread until the watch
+	 * service is closed.
+	 */
+	private void watch(final WatchService service) {
+		Path name = file.getFileName();
+		try {
+			while (true) {
+				WatchKey key = service.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents()) {
+					changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+							|| name.equals(event.context());
+				}
+				key.reset();
+				if (changed) {
+					try {
+						reload();
+					} catch (IOException e) {
+						lastFailure = e;
+					}
+				}
+			}
+		} catch (ClosedWatchServiceException e) {
+			return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
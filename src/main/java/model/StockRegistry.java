@@ -0,0 +1,222 @@
+package main.java.model;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import main.java.bo.impl.AbstractStock;
+import main.java.clock.Clock;
+import main.java.clock.SystemClock;
+
+/**
+ * Registry of the listed Stocks. Every symbol is interned into a dense
+ * integer ID the first time it is registered and keeps it for the life of the
+ * registry, also across delisting and listing again, so Stocks can be looked
+ * up in constant time by symbol or by ID and iterated in ID order.
+ * <p>
+ * Lookups never lock; registration and delisting are serialized. Listed
+ * Stocks take the {@link Clock} of the registry.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class StockRegistry implements Iterable<AbstractStock> {
+	private static final int								INITIAL_CAPACITY	= 16;
+
+	private final ConcurrentMap<String, Integer>			symbolIds			= new ConcurrentHashMap<String, Integer>();
+	private volatile AtomicReferenceArray<AbstractStock>	stocks				= new AtomicReferenceArray<AbstractStock>(
+																						INITIAL_CAPACITY);
+	private volatile int									idCount				= 0;
+	private volatile int									listedCount			= 0;
+	private volatile Clock									clock				= SystemClock.INSTANCE;
+
+	/**
+	 * Lists a Stock under its symbol.
+	 *
+	 * @param stock
+	 *            AbstractStock The Stock to list.
+	 * @return Integer The ID of the Stock symbol.
+	 * @throws IllegalArgumentException
+	 *             When a Stock with the same symbol is already listed.
+	 */
+	public synchronized int register(final AbstractStock stock) {
+		Integer id = symbolIds.get(stock.getSymbol());
+		if (id == null) {
+			id = idCount;
+			if (id == stocks.length()) {
+				grow();
+			}
+			stocks.set(id, stock);
+			symbolIds.put(stock.getSymbol(), id);
+			idCount = id + 1;
+		} else if (stocks.get(id) == null) {
+			stocks.set(id, stock);
+		} else {
+			throw new IllegalArgumentException("Stock " + stock.getSymbol()
+					+ " is already listed");
+		}
+		stock.setClock(clock);
+		listedCount++;
+		return id;
+	}
+
+	/**
+	 * Delists the Stock with a given symbol. The symbol keeps its ID.
+	 *
+	 * @param symbol
+	 *            String The Stock symbol.
+	 * @return AbstractStock The delisted Stock or null when it was not listed.
+	 */
+	public synchronized AbstractStock delist(final String symbol) {
+		Integer id = symbolIds.get(symbol);
+		if (id == null) {
+			return null;
+		}
+		AbstractStock stock = stocks.getAndSet(id, null);
+		if (stock != null) {
+			listedCount--;
+		}
+		return stock;
+	}
+
+	/**
+	 * @param symbol
+	 *            String The Stock symbol.
+	 * @return AbstractStock The listed Stock or null.
+	 */
+	public AbstractStock get(final String symbol) {
+		Integer id = symbolIds.get(symbol);
+		return id == null ? null : stocks.get(id);
+	}
+
+	/**
+	 * @param id
+	 *            Integer The Stock ID.
+	 * @return AbstractStock The listed Stock or null.
+	 */
+	public AbstractStock get(final int id) {
+		if (id < 0 || id >= idCount) {
+			return null;
+		}
+		return stocks.get(id);
+	}
+
+	/**
+	 * @param symbol
+	 *            String The Stock symbol.
+	 * @return Integer The ID of the symbol or -1 when it was never
+	 *         registered.
+	 */
+	public int getId(final String symbol) {
+		Integer id = symbolIds.get(symbol);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * @return Integer The number of IDs handed out, listed or not. IDs go
+	 *         from 0 to this value minus one.
+	 */
+	public int getIdCount() {
+		return idCount;
+	}
+
+	/**
+	 * @return Integer The number of listed Stocks.
+	 */
+	public int size() {
+		return listedCount;
+	}
+
+	/**
+	 * @return List<AbstractStock> The listed Stocks in ID order.
+	 */
+	public List<AbstractStock> getStocks() {
+		List<AbstractStock> listed = new ArrayList<AbstractStock>(listedCount);
+		for (AbstractStock stock : this) {
+			listed.add(stock);
+		}
+		return listed;
+	}
+
+	/**
+	 * @return Clock The clock of the listed Stocks.
+	 */
+	public Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Sets the clock of the registry and of every listed Stock.
+	 *
+	 * @param clock
+	 *            Clock The clock the Trades are stamped with and the windows
+	 *            are evaluated against.
+	 */
+	public synchronized void setClock(final Clock clock) {
+		this.clock = clock;
+		for (AbstractStock stock : this) {
+			stock.setClock(clock);
+		}
+	}
+
+	/**
+	 * Iterates the listed Stocks in ID order.
+	 */
+	@Override
+	public Iterator<AbstractStock> iterator() {
+		return new Iterator<AbstractStock>() {
+			// The count first: a table read after it holds every ID below.
+			private final int									count		= idCount;
+			private final AtomicReferenceArray<AbstractStock>	table		= stocks;
+			private int											nextId		= 0;
+			private AbstractStock								nextStock	= find();
+
+			@Override
+			public boolean hasNext() {
+				return nextStock != null;
+			}
+
+			@Override
+			public AbstractStock next() {
+				if (nextStock == null) {
+					throw new NoSuchElementException();
+				}
+				AbstractStock stock = nextStock;
+				nextStock = find();
+				return stock;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			private AbstractStock find() {
+				while (nextId < count) {
+					AbstractStock stock = table.get(nextId++);
+					if (stock != null) {
+						return stock;
+					}
+				}
+				return null;
+			}
+		};
+	}
+
+	/**
+	 * Doubles the capacity of the ID table.
+	 */
+	private void grow() {
+		AtomicReferenceArray<AbstractStock> current = stocks;
+		AtomicReferenceArray<AbstractStock> newStocks = new AtomicReferenceArray<AbstractStock>(
+				current.length() * 2);
+		for (int i = 0; i < current.length(); i++) {
+			newStocks.set(i, current.get(i));
+		}
+		stocks = newStocks;
+	}
+}
@@ -0,0 +1,407 @@
+package main.java.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import main.java.bo.CommonStock;
+import main.java.bo.PreferredStock;
+import main.java.bo.ReferenceData;
+import main.java.bo.TradeTotals;
+import main.java.bo.impl.AbstractStock;
+import main.java.bo.impl.TradeListener;
+
+/**
+ * Periodic compact snapshots of the Stocks of a registry, so a restart loads
+ * the latest snapshot and only replays the journal written after it.
+ * <p>
+ * A snapshot keeps, for every Stock, its metadata, the Trades inside the
+ * retained window given at construction, always with the last Trade the
+ * ticker price is read from, and the totals of the Trades before them:
+ * traded value and shares, the logarithm and zero price accumulators of the
+ * Geometric Mean and the Trade count, which is the tradeId sequence. After
+ * a restore a longer Stock price or flow window, such as one a client asks
+ * for, only sees the retained Trades until new ones fill it. Snapshots are taken by a background thread reading
+ * the published Trades without locking, so ingestion never pauses.
+ * <p>
+ * The journal checkpoint is taken before the Stocks are read. A Trade
+ * missing from the snapshot was recorded after its Stock was read, so it is
+ * journaled in the checkpoint segment or a later one; a Trade in both is
+ * skipped by tradeId on replay. Once the snapshot is on disk the older
+ * segments are deleted.
+ * <p>
+ * File layout, big endian and followed by the CRC32 of everything before
+ * it: magic (int), version (int), snapshot time (long), journal segment
+ * (int), Stock count (int) and for every Stock its symbol (UTF), preferred
+ * flag (boolean), last dividend, par value and tick size (long, fixed point
+ * units), fixed dividend (int), Trade count before the retained Trades
+ * (int), their traded value and shares (long), logarithm sum (double) and
+ * zero price count (int), followed by the retained Trade count (int) and
+ * each retained Trade as timestamp (long), shares (int), price (long, fixed
+ * point units) and sell flag (boolean). Times are nanoseconds since the
+ * epoch, as read from the clock of the registry.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class StockSnapshots {
+	public static final long			DEFAULT_PERIOD	= 60000;
+
+	private static final int			MAGIC			= 0x53535353;
+	private static final int			VERSION			= 3;
+	private static final String			SNAPSHOT_FILE	= "stocks.snapshot";
+	private static final String			TEMPORARY_FILE	= "stocks.snapshot.tmp";
+
+	private final File					directory;
+	private final StockRegistry			registry;
+	private final long					retainLength;
+	private TradeJournal				journal			= null;
+	private ScheduledExecutorService	scheduler		= null;
+	private volatile IOException		lastFailure		= null;
+
+	/**
+	 * @param directory
+	 *            File The directory of the snapshot.
+	 * @param registry
+	 *            StockRegistry The Stocks to snapshot and restore.
+	 * @param retainLength
+	 *            Long The length in nanoseconds of the Trade window kept
+	 *            with each Stock, the longest window whose Trades survive a
+	 *            restore.
+	 */
+	public StockSnapshots(final File directory, final StockRegistry registry,
+			final long retainLength) {
+		this.directory = directory;
+		this.registry = registry;
+		this.retainLength = retainLength;
+	}
+
+	/**
+	 * Restores the Stocks of the registry from the latest snapshot, if any.
+	 * Stocks in the snapshot and not in the registry are listed; the Trades
+	 * of the restored Stocks are replaced by the snapshot ones.
+	 *
+	 * @return Integer The journal segment to replay from, 0 when there is no
+	 *         snapshot.
+	 * @throws IOException
+	 *             When the snapshot can not be read or is corrupt.
+	 */
+	public int restore() throws IOException {
+		File file = new File(directory, SNAPSHOT_FILE);
+		if (!file.isFile()) {
+			return 0;
+		}
+		List<StockState> states = new ArrayList<StockState>();
+		int segment;
+		BufferedInputStream buffered = new BufferedInputStream(
+				new FileInputStream(file));
+		try {
+			CheckedInputStream checked = new CheckedInputStream(buffered,
+					new CRC32());
+			DataInputStream in = new DataInputStream(checked);
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("Not a snapshot " + file);
+			}
+			in.readLong();
+			segment = in.readInt();
+			int stockCount = in.readInt();
+			for (int i = 0; i < stockCount; i++) {
+				states.add(StockState.read(in));
+			}
+			int expected = (int) checked.getChecksum().getValue();
+			if (new DataInputStream(buffered).readInt() != expected) {
+				throw new IOException("Corrupt snapshot " + file);
+			}
+		} finally {
+			buffered.close();
+		}
+		for (StockState state : states) {
+			state.apply(registry);
+		}
+		return segment;
+	}
+
+	/**
+	 * Starts taking snapshots in the background.
+	 *
+	 * @param journal
+	 *            TradeJournal The journal to checkpoint and truncate, or null
+	 *            when the Trades are not journaled.
+	 * @param period
+	 *            Long The time between snapshots in milliseconds.
+	 */
+	public synchronized void start(final TradeJournal journal,
+			final long period) {
+		this.journal = journal;
+		scheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable,
+								"stock-snapshot-writer");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					snapshot();
+				} catch (IOException e) {
+					lastFailure = e;
+				} catch (RuntimeException e) {
+					// Thrown out of the task, it would cancel the snapshots.
+					lastFailure = new IOException(e);
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Takes a snapshot now and deletes the journal segments it makes
+	 * redundant.
+	 *
+	 * @throws IOException
+	 *             When the snapshot can not be written.
+	 */
+	public synchronized void snapshot() throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can not create " + directory);
+		}
+		long nowTime = registry.getClock().now();
+		int segment = journal == null ? 0 : journal.checkpoint();
+		List<AbstractStock> stocks = registry.getStocks();
+		File temporary = new File(directory, TEMPORARY_FILE);
+		FileOutputStream file = new FileOutputStream(temporary);
+		try {
+			BufferedOutputStream buffered = new BufferedOutputStream(file);
+			CheckedOutputStream checked = new CheckedOutputStream(buffered,
+					new CRC32());
+			DataOutputStream out = new DataOutputStream(checked);
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeLong(nowTime);
+			out.writeInt(segment);
+			out.writeInt(stocks.size());
+			for (AbstractStock stock : stocks) {
+				write(out, stock, nowTime - retainLength);
+			}
+			out.flush();
+			new DataOutputStream(buffered).writeInt((int) checked
+					.getChecksum().getValue());
+			buffered.flush();
+			file.getFD().sync();
+		} finally {
+			file.close();
+		}
+		Files.move(temporary.toPath(),
+				new File(directory, SNAPSHOT_FILE).toPath(),
+				StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		if (journal != null) {
+			journal.deleteSegmentsBefore(segment);
+		}
+	}
+
+	/**
+	 * Stops the background snapshots and takes a last one, so the next
+	 * start has no journal to replay.
+	 *
+	 * @throws IOException
+	 *             When the last snapshot can not be written.
+	 */
+	public synchronized void close() throws IOException {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+		snapshot();
+	}
+
+	/**
+	 * @return File The directory of the snapshot.
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return IOException The failure of the last background snapshot, or
+	 *         null.
+	 */
+	public IOException getLastFailure() {
+		return lastFailure;
+	}
+
+	/**
+	 * Writes the state of a Stock.
+	 *
+	 * @param out
+	 *            DataOutputStream The snapshot.
+	 * @param stock
+	 *            AbstractStock The Stock.
+	 * @param oldestTime
+	 *            Long The time of the oldest Trade to keep in nanoseconds.
+	 * @throws IOException
+	 *             When the snapshot can not be written.
+	 */
+	private static void write(final DataOutputStream out,
+			final AbstractStock stock, final long oldestTime)
+			throws IOException {
+		boolean preferred = stock instanceof PreferredStock;
+		ReferenceData reference = stock.getReferenceData();
+		// The retained Trades are buffered as their count leads them.
+		ByteArrayOutputStream retained = new ByteArrayOutputStream();
+		TradeWriter writer = new TradeWriter(new DataOutputStream(retained));
+		TradeTotals base = stock.visitTradesSince(oldestTime, writer);
+		if (writer.failure != null) {
+			throw writer.failure;
+		}
+		out.writeUTF(stock.getSymbol());
+		out.writeBoolean(preferred);
+		out.writeLong(reference.getLastDividend());
+		out.writeLong(reference.getParValue());
+		out.writeLong(stock.getTickSize());
+		out.writeInt(preferred ? reference.getFixedDividend() : 0);
+		out.writeInt(base.getTradeCount());
+		out.writeLong(base.getTradedValue());
+		out.writeLong(base.getTradedShares());
+		out.writeDouble(base.getLogPriceSum());
+		out.writeInt(base.getZeroPriceTrades());
+		out.writeInt(writer.count);
+		retained.writeTo(out);
+	}
+
+	/**
+	 * Writes the visited Trades to a snapshot, keeping the first failure.
+	 */
+	private static final class TradeWriter implements TradeListener {
+		private final DataOutputStream	out;
+		private IOException				failure	= null;
+		private int						count	= 0;
+
+		private TradeWriter(final DataOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void onTrade(final AbstractStock stock, final int tradeId,
+				final long timestamp, final int shares, final long price,
+				final boolean sell) {
+			if (failure != null) {
+				return;
+			}
+			try {
+				out.writeLong(timestamp);
+				out.writeInt(shares);
+				out.writeLong(price);
+				out.writeBoolean(sell);
+				count++;
+			} catch (IOException e) {
+				failure = e;
+			}
+		}
+	}
+
+	/**
+	 * The state of a Stock read from a snapshot, applied once the whole
+	 * snapshot passed its CRC.
+	 */
+	private static final class StockState {
+		private String		symbol;
+		private boolean		preferred;
+		private long		lastDividend;
+		private long		parValue;
+		private long		tickSize;
+		private int			fixedDividend;
+		private int			baseCount;
+		private long		baseValue;
+		private long		baseShares;
+		private double		baseLogPrice;
+		private int			baseZeroPrices;
+		private int			count;
+		private long[]		timestamps;
+		private int[]		shares;
+		private long[]		prices;
+		private boolean[]	sells;
+
+		/**
+		 * @param in
+		 *            DataInputStream The snapshot.
+		 * @return StockState The state of the next Stock.
+		 * @throws IOException
+		 *             When the snapshot can not be read.
+		 */
+		private static StockState read(final DataInputStream in)
+				throws IOException {
+			StockState state = new StockState();
+			state.symbol = in.readUTF();
+			state.preferred = in.readBoolean();
+			state.lastDividend = in.readLong();
+			state.parValue = in.readLong();
+			state.tickSize = in.readLong();
+			state.fixedDividend = in.readInt();
+			state.baseCount = in.readInt();
+			state.baseValue = in.readLong();
+			state.baseShares = in.readLong();
+			state.baseLogPrice = in.readDouble();
+			state.baseZeroPrices = in.readInt();
+			state.count = in.readInt();
+			if (state.baseCount < 0 || state.count < 0) {
+				throw new IOException("Corrupt snapshot of " + state.symbol);
+			}
+			state.timestamps = new long[state.count];
+			state.shares = new int[state.count];
+			state.prices = new long[state.count];
+			state.sells = new boolean[state.count];
+			for (int i = 0; i < state.count; i++) {
+				state.timestamps[i] = in.readLong();
+				state.shares[i] = in.readInt();
+				state.prices[i] = in.readLong();
+				state.sells[i] = in.readBoolean();
+			}
+			return state;
+		}
+
+		/**
+		 * Restores the Stock in a registry, listing it when missing or
+		 * listed with another type.
+		 *
+		 * @param registry
+		 *            StockRegistry The Stocks to restore into.
+		 */
+		private void apply(final StockRegistry registry) {
+			AbstractStock stock = registry.get(symbol);
+			if (stock == null || (stock instanceof PreferredStock) != preferred) {
+				registry.delist(symbol);
+				stock = preferred ? new PreferredStock() : new CommonStock();
+				stock.setSymbol(symbol);
+				registry.register(stock);
+			}
+			stock.setReferenceData(new ReferenceData(lastDividend,
+					preferred ? fixedDividend : 0, parValue));
+			stock.setTickSize(tickSize);
+			stock.restoreTrades(baseCount, baseValue, baseShares,
+					baseLogPrice, baseZeroPrices, timestamps, shares, prices,
+					sells, count);
+		}
+	}
+}
@@ -0,0 +1,481 @@
+package main.java.model;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import main.java.bo.FixedPoint;
+import main.java.bo.impl.AbstractStock;
+
+/**
+ * Bulk loader for end of day Trade files. The file is memory mapped and split
+ * in ranges parsed in parallel, straight from the mapped bytes and without
+ * creating a String per row. Each range collects its Trades per Stock; the
+ * ranges are then appended to every Stock in file order.
+ * <p>
+ * Two formats are read:
+ * <ul>
+ * <li>CSV, one Trade per line: <code>SYMBOL,timestamp,shares,price,B|S</code>
+ * with the timestamp in epoch milliseconds and the price in pennies with up
+ * to {@link FixedPoint#DECIMALS} decimal places. Lines not following the
+ * format, such as a header, are skipped.</li>
+ * <li>Binary, fixed records of {@link #RECORD_SIZE} bytes in big endian:
+ * symbol (8 bytes ASCII, padded with spaces or zeros), timestamp (long),
+ * shares (int), price (int, whole pennies), flags (byte, bit 0 set for a
+ * sell) and 7 bytes of padding.</li>
+ * </ul>
+ * Rows for symbols not in the registry are skipped. File timestamps are
+ * converted to the nanoseconds the Stocks keep.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+final class TradeFileLoader {
+	static final int			RECORD_SIZE			= 32;
+	static final int			SYMBOL_SIZE			= 8;
+
+	private static final long	MAX_RANGE_SIZE		= 256L * 1024 * 1024;
+	private static final int	MAX_LINE_SIZE		= 1024;
+	private static final int	MAX_PRICE_DIGITS	= 14;
+
+	private final StockRegistry	registry;
+	private final SymbolTable	symbols;
+
+	/**
+	 * @param registry
+	 *            StockRegistry The Stocks receiving the Trades.
+	 */
+	TradeFileLoader(final StockRegistry registry) {
+		this.registry = registry;
+		this.symbols = new SymbolTable(registry);
+	}
+
+	/**
+	 * Loads a Trade file.
+	 *
+	 * @param fileName
+	 *            String The path of the file.
+	 * @param binary
+	 *            Boolean True for the binary format, false for CSV.
+	 * @return Long The number of Trades loaded.
+	 * @throws IOException
+	 *             When the file can not be read.
+	 */
+	long load(final String fileName, final boolean binary) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			long size = channel.size();
+			if (binary) {
+				size -= size % RECORD_SIZE;
+			}
+			int cores = Runtime.getRuntime().availableProcessors();
+			int ranges = (int) Math.max(cores,
+					(size + MAX_RANGE_SIZE - 1) / MAX_RANGE_SIZE);
+			long rangeSize = (size + ranges - 1) / ranges;
+			if (binary && rangeSize % RECORD_SIZE != 0) {
+				rangeSize += RECORD_SIZE - rangeSize % RECORD_SIZE;
+			}
+
+			ExecutorService executor = Executors.newFixedThreadPool(cores);
+			try {
+				List<Future<TradeBatch[]>> parsed = new ArrayList<Future<TradeBatch[]>>();
+				for (long start = 0; start < size; start += rangeSize) {
+					long end = Math.min(size, start + rangeSize);
+					Callable<TradeBatch[]> parser = binary ? new BinaryRangeParser(
+							channel, start, end) : new CsvRangeParser(channel,
+							start, end, size);
+					parsed.add(executor.submit(parser));
+				}
+				List<TradeBatch[]> batches = new ArrayList<TradeBatch[]>();
+				for (Future<TradeBatch[]> result : parsed) {
+					batches.add(result.get());
+				}
+				return append(batches, executor);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException(e);
+			} catch (ExecutionException e) {
+				throw new IOException(e.getCause());
+			} finally {
+				executor.shutdownNow();
+			}
+		} finally {
+			file.close();
+		}
+	}
+
+	/**
+	 * Appends the parsed ranges to their Stocks, one task per Stock, keeping
+	 * the file order.
+	 *
+	 * @param batches
+	 *            List<TradeBatch[]> The Trades of every range by Stock ID.
+	 * @param executor
+	 *            ExecutorService The executor running the appends.
+	 * @return Long The number of Trades appended.
+	 * @throws InterruptedException
+	 *             When interrupted while waiting for the appends.
+	 * @throws ExecutionException
+	 *             When an append fails.
+	 */
+	private long append(final List<TradeBatch[]> batches,
+			final ExecutorService executor) throws InterruptedException,
+			ExecutionException {
+		List<Future<Long>> appended = new ArrayList<Future<Long>>();
+		for (int id = 0; id < symbols.getIdCount(); id++) {
+			final AbstractStock stock = registry.get(id);
+			final int stockId = id;
+			if (stock == null) {
+				continue;
+			}
+			appended.add(executor.submit(new Callable<Long>() {
+				@Override
+				public Long call() {
+					long count = 0;
+					for (TradeBatch[] rangeBatches : batches) {
+						TradeBatch batch = rangeBatches[stockId];
+						if (batch != null) {
+							stock.recordTrades(batch.timestamps, batch.shares,
+									batch.prices, batch.sells, batch.size);
+							count += batch.size;
+						}
+					}
+					return count;
+				}
+			}));
+		}
+		long total = 0;
+		for (Future<Long> result : appended) {
+			total += result.get();
+		}
+		return total;
+	}
+
+	/**
+	 * Adds a parsed Trade to the batch of its Stock.
+	 *
+	 * @param batches
+	 *            TradeBatch[] The batches of the range by Stock ID.
+	 * @param stockId
+	 *            Integer The Stock ID.
+	 * @return TradeBatch The batch of the Stock.
+	 */
+	private static TradeBatch batchFor(final TradeBatch[] batches,
+			final int stockId) {
+		TradeBatch batch = batches[stockId];
+		if (batch == null) {
+			batch = new TradeBatch();
+			batches[stockId] = batch;
+		}
+		return batch;
+	}
+
+	/**
+	 * Parses the CSV lines starting inside a range of the file. A line
+	 * crossing the end of the range belongs to it; a line crossing its start
+	 * belongs to the previous range.
+	 */
+	private final class CsvRangeParser implements Callable<TradeBatch[]> {
+		private final FileChannel	channel;
+		private final long			start;
+		private final long			end;
+		private final long			fileSize;
+		private MappedByteBuffer	buffer;
+		private int					position;
+
+		CsvRangeParser(final FileChannel channel, final long start,
+				final long end, final long fileSize) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.fileSize = fileSize;
+		}
+
+		@Override
+		public TradeBatch[] call() throws IOException {
+			TradeBatch[] batches = new TradeBatch[symbols.getIdCount()];
+			long mapStart = start == 0 ? 0 : start - 1;
+			long mapEnd = Math.min(fileSize, end + MAX_LINE_SIZE);
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, mapStart,
+					mapEnd - mapStart);
+			int limit = buffer.limit();
+			int rangeEnd = (int) (end - mapStart);
+			position = 0;
+			if (start > 0) {
+				skipLine(limit);
+			}
+			while (position < limit && position < rangeEnd) {
+				parseLine(batches, limit);
+			}
+			return batches;
+		}
+
+		/**
+		 * Parses the line at the current position and moves to the next one.
+		 */
+		private void parseLine(final TradeBatch[] batches, final int limit) {
+			int symbolStart = position;
+			while (position < limit && buffer.get(position) != ','
+					&& buffer.get(position) != '\n') {
+				position++;
+			}
+			int stockId = symbols.find(buffer, symbolStart, position
+					- symbolStart);
+			if (stockId < 0 || !expect(',', limit)) {
+				skipLine(limit);
+				return;
+			}
+			long timestamp = parseNumber(limit);
+			if (timestamp < 0 || !expect(',', limit)) {
+				skipLine(limit);
+				return;
+			}
+			long shares = parseNumber(limit);
+			if (shares < 0 || shares > Integer.MAX_VALUE || !expect(',', limit)) {
+				skipLine(limit);
+				return;
+			}
+			long price = parsePrice(limit);
+			if (price < 0 || !expect(',', limit) || position >= limit) {
+				skipLine(limit);
+				return;
+			}
+			byte side = buffer.get(position);
+			skipLine(limit);
+			if (side == 'B' || side == 'b' || side == 'S' || side == 's') {
+				batchFor(batches, stockId).add(
+						TimeUnit.MILLISECONDS.toNanos(timestamp), (int) shares,
+						price, side == 'S' || side == 's');
+			}
+		}
+
+		/**
+		 * Parses an unsigned number at the current position.
+		 *
+		 * @return Long The number or -1 when there are no digits.
+		 */
+		private long parseNumber(final int limit) {
+			long value = 0;
+			int digitsStart = position;
+			while (position < limit) {
+				int digit = buffer.get(position) - '0';
+				if (digit < 0 || digit > 9) {
+					break;
+				}
+				value = value * 10 + digit;
+				position++;
+			}
+			return position == digitsStart ? -1 : value;
+		}
+
+		/**
+		 * Parses an unsigned decimal amount of pennies at the current
+		 * position, with up to {@link FixedPoint#DECIMALS} decimal places.
+		 *
+		 * @return Long The amount in fixed point units or -1 when it is not
+		 *         such an amount.
+		 */
+		private long parsePrice(final int limit) {
+			int digitsStart = position;
+			long pennies = parseNumber(limit);
+			if (pennies < 0 || position - digitsStart > MAX_PRICE_DIGITS) {
+				return -1;
+			}
+			long price = FixedPoint.fromPennies(pennies);
+			if (position < limit && buffer.get(position) == '.') {
+				position++;
+				int decimalsStart = position;
+				long fraction = parseNumber(limit);
+				int decimals = position - decimalsStart;
+				if (decimals > FixedPoint.DECIMALS) {
+					return -1;
+				}
+				for (int i = decimals; i < FixedPoint.DECIMALS; i++) {
+					fraction *= 10;
+				}
+				price += Math.max(fraction, 0);
+			}
+			return price;
+		}
+
+		/**
+		 * Consumes a separator at the current position.
+		 *
+		 * @return Boolean True if the separator was found.
+		 */
+		private boolean expect(final char separator, final int limit) {
+			if (position < limit && buffer.get(position) == separator) {
+				position++;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Moves the position after the next line feed.
+		 */
+		private void skipLine(final int limit) {
+			while (position < limit && buffer.get(position) != '\n') {
+				position++;
+			}
+			position++;
+		}
+	}
+
+	/**
+	 * Parses the fixed size records of a range of the file.
+	 */
+	private final class BinaryRangeParser implements Callable<TradeBatch[]> {
+		private final FileChannel	channel;
+		private final long			start;
+		private final long			end;
+
+		BinaryRangeParser(final FileChannel channel, final long start,
+				final long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		public TradeBatch[] call() throws IOException {
+			TradeBatch[] batches = new TradeBatch[symbols.getIdCount()];
+			MappedByteBuffer buffer = channel.map(
+					FileChannel.MapMode.READ_ONLY, start, end - start);
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			for (int record = 0; record < buffer.limit(); record += RECORD_SIZE) {
+				int symbolLength = 0;
+				while (symbolLength < SYMBOL_SIZE) {
+					byte symbolByte = buffer.get(record + symbolLength);
+					if (symbolByte == 0 || symbolByte == ' ') {
+						break;
+					}
+					symbolLength++;
+				}
+				int stockId = symbols.find(buffer, record, symbolLength);
+				int shares = buffer.getInt(record + SYMBOL_SIZE + 8);
+				int price = buffer.getInt(record + SYMBOL_SIZE + 12);
+				if (stockId < 0 || shares < 0 || price < 0) {
+					continue;
+				}
+				batchFor(batches, stockId).add(
+						TimeUnit.MILLISECONDS.toNanos(buffer.getLong(record
+								+ SYMBOL_SIZE)), shares,
+						FixedPoint.fromPennies(price),
+						(buffer.get(record + SYMBOL_SIZE + 16) & 1) != 0);
+			}
+			return batches;
+		}
+	}
+
+	/**
+	 * Growable columns holding the Trades of one Stock parsed from a range.
+	 */
+	private static final class TradeBatch {
+		private long[]		timestamps	= new long[64];
+		private int[]		shares		= new int[64];
+		private long[]		prices		= new long[64];
+		private boolean[]	sells		= new boolean[64];
+		private int			size		= 0;
+
+		private void add(final long timestamp, final int tradeShares,
+				final long price, final boolean sell) {
+			if (size == timestamps.length) {
+				int capacity = size * 2;
+				timestamps = Arrays.copyOf(timestamps, capacity);
+				shares = Arrays.copyOf(shares, capacity);
+				prices = Arrays.copyOf(prices, capacity);
+				sells = Arrays.copyOf(sells, capacity);
+			}
+			timestamps[size] = timestamp;
+			shares[size] = tradeShares;
+			prices[size] = price;
+			sells[size] = sell;
+			size++;
+		}
+	}
+
+	/**
+	 * Open addressing table from symbol bytes to Stock ID, so rows can be
+	 * matched to their Stock without decoding the symbol.
+	 */
+	private static final class SymbolTable {
+		private final byte[][]	keys;
+		private final int[]		ids;
+		private final int		mask;
+		private final int		idCount;
+
+		private SymbolTable(final StockRegistry registry) {
+			idCount = registry.getIdCount();
+			int capacity = Integer.highestOneBit(Math.max(1, idCount) * 4);
+			keys = new byte[capacity][];
+			ids = new int[capacity];
+			mask = capacity - 1;
+			for (AbstractStock stock : registry) {
+				byte[] key = stock.getSymbol().getBytes(
+						StandardCharsets.US_ASCII);
+				int slot = hash(key, 0, key.length) & mask;
+				while (keys[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = key;
+				ids[slot] = registry.getId(stock.getSymbol());
+			}
+		}
+
+		private int getIdCount() {
+			return idCount;
+		}
+
+		private int find(final MappedByteBuffer buffer, final int from,
+				final int length) {
+			int hash = 0x811c9dc5;
+			for (int i = 0; i < length; i++) {
+				hash = (hash ^ buffer.get(from + i)) * 0x01000193;
+			}
+			int slot = hash & mask;
+			while (keys[slot] != null) {
+				if (matches(keys[slot], buffer, from, length)) {
+					return ids[slot];
+				}
+				slot = (slot + 1) & mask;
+			}
+			return -1;
+		}
+
+		private static boolean matches(final byte[] key,
+				final MappedByteBuffer buffer, final int from, final int length) {
+			if (key.length != length) {
+				return false;
+			}
+			for (int i = 0; i < length; i++) {
+				if (key[i] != buffer.get(from + i)) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static int hash(final byte[] key, final int from,
+				final int length) {
+			int hash = 0x811c9dc5;
+			for (int i = from; i < from + length; i++) {
+				hash = (hash ^ key[i]) * 0x01000193;
+			}
+			return hash;
+		}
+	}
+}
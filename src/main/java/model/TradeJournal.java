@@ -0,0 +1,672 @@
+package main.java.model;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import main.java.bo.impl.AbstractStock;
+import main.java.bo.impl.TradeListener;
+
+/**
+ * Durable append only journal of the recorded Trades. Trades are written as
+ * fixed size records protected by a CRC to a sequence of segment files,
+ * rolling to a new segment once the current one reaches its maximum size.
+ * <p>
+ * Record layout, {@link #RECORD_SIZE} bytes in big endian: magic (int),
+ * symbol (8 bytes ASCII padded with spaces), timestamp (long, nanoseconds
+ * since the epoch), tradeId (int), shares (int), price (long, fixed point
+ * units), flags (byte, bit 0 set for a sell), 3 bytes of padding and the
+ * CRC32 of the previous bytes (int). Only Stocks whose symbol fits in 8
+ * ASCII characters can be journaled.
+ * <p>
+ * How often the journal is forced to disk depends on its {@link FsyncPolicy}.
+ * With group commit, recording a Trade only queues its record: a flusher
+ * thread writes and forces the queued records together, and whoever
+ * acknowledges Trades calls {@link #awaitDurable()} once per batch of them,
+ * so one fsync makes a whole batch durable without a wait per Trade.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class TradeJournal implements TradeListener {
+	public static final int		RECORD_SIZE				= 44;
+	public static final long	DEFAULT_SEGMENT_SIZE	= 64L * 1024 * 1024;
+	public static final long	DEFAULT_INTERVAL		= 100;
+
+	private static final int	MAGIC					= 0x53535356;
+	private static final int	CRC_OFFSET				= RECORD_SIZE - 4;
+	private static final int	BUFFER_RECORDS			= 4096;
+	private static final String	SEGMENT_PREFIX			= "trades-";
+	private static final String	SEGMENT_SUFFIX			= ".journal";
+
+	/**
+	 * When the journal is forced to disk.
+	 */
+	public enum FsyncPolicy {
+		/** Every Trade is forced before its recording call returns. */
+		PER_TRADE,
+		/**
+		 * Trades are forced in batches; {@link TradeJournal#awaitDurable()}
+		 * waits for them.
+		 */
+		GROUP_COMMIT,
+		/** Trades are forced at a fixed interval; recording never waits. */
+		INTERVAL
+	}
+
+	private final File			directory;
+	private final FsyncPolicy	policy;
+	private final long			segmentSize;
+	private final long			interval;
+	private final ReentrantLock	lock			= new ReentrantLock();
+	private final Condition		dataAvailable	= lock.newCondition();
+	private final Condition		flushed			= lock.newCondition();
+	private final CRC32			crc				= new CRC32();
+	private ByteBuffer			pending			= ByteBuffer.allocate(RECORD_SIZE * BUFFER_RECORDS);
+	private ByteBuffer			writing			= ByteBuffer.allocate(RECORD_SIZE * BUFFER_RECORDS);
+	private long				appendedRecords	= 0;
+	private long				durableRecords	= 0;
+	private volatile int		segmentNumber	= 0;
+	private volatile boolean	rollRequested	= false;
+	private FileChannel			segment			= null;
+	private Thread				flusher			= null;
+	private volatile boolean	running			= false;
+	private IOException			failure			= null;
+
+	/**
+	 * @param directory
+	 *            File The directory holding the segment files.
+	 * @param policy
+	 *            FsyncPolicy When the journal is forced to disk.
+	 */
+	public TradeJournal(final File directory, final FsyncPolicy policy) {
+		this(directory, policy, DEFAULT_SEGMENT_SIZE, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * @param directory
+	 *            File The directory holding the segment files.
+	 * @param policy
+	 *            FsyncPolicy When the journal is forced to disk.
+	 * @param segmentSize
+	 *            Long The size in bytes after which a new segment is started.
+	 * @param interval
+	 *            Long The time in milliseconds between forces with the
+	 *            INTERVAL policy.
+	 */
+	public TradeJournal(final File directory, final FsyncPolicy policy,
+			final long segmentSize, final long interval) {
+		this.directory = directory;
+		this.policy = policy;
+		this.segmentSize = segmentSize;
+		this.interval = interval;
+	}
+
+	/**
+	 * Replays the journal into the Stocks of a registry. Records of Trades
+	 * the Stocks already held before the replay, by tradeId, are skipped. A
+	 * record failing its CRC ends the segment; when it is the last segment
+	 * the torn tail is truncated so new records follow the valid ones.
+	 * <p>
+	 * Trades are journaled after they are recorded, so two threads recording
+	 * the same Stock may journal its Trades out of tradeId order. The replay
+	 * records the Trades of a Stock in tradeId order, holding back a record
+	 * until the ones before it are replayed, so every Trade gets its
+	 * journaled tradeId again. Should one of them be missing, as when a crash
+	 * lost it while a later Trade was already durable, the held back Trades
+	 * are recorded at the end in tradeId order and take the next tradeIds.
+	 *
+	 * @param registry
+	 *            StockRegistry The Stocks receiving the Trades.
+	 * @return Long The number of Trades replayed.
+	 * @throws IOException
+	 *             When the journal can not be read.
+	 */
+	public long replay(final StockRegistry registry) throws IOException {
+		return replay(registry, 0);
+	}
+
+	/**
+	 * Replays the journal from a given segment on, as after restoring a
+	 * snapshot taken at that segment.
+	 *
+	 * @param registry
+	 *            StockRegistry The Stocks receiving the Trades.
+	 * @param fromSegment
+	 *            Integer The number of the first segment to replay.
+	 * @return Long The number of Trades replayed.
+	 * @throws IOException
+	 *             When the journal can not be read.
+	 * @see #replay(StockRegistry)
+	 */
+	public long replay(final StockRegistry registry, final int fromSegment)
+			throws IOException {
+		int[] knownTrades = new int[registry.getIdCount()];
+		for (int id = 0; id < knownTrades.length; id++) {
+			AbstractStock stock = registry.get(id);
+			knownTrades[id] = stock == null ? 0 : stock.getTradeCount();
+		}
+		Map<AbstractStock, PriorityQueue<JournaledTrade>> heldBack = new HashMap<AbstractStock, PriorityQueue<JournaledTrade>>();
+		File[] segments = listSegments();
+		long replayed = 0;
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		byte[] symbol = new byte[TradeFileLoader.SYMBOL_SIZE];
+		for (int i = 0; i < segments.length; i++) {
+			if (segmentNumber(segments[i]) < fromSegment) {
+				continue;
+			}
+			RandomAccessFile file = new RandomAccessFile(segments[i], "rw");
+			try {
+				FileChannel channel = file.getChannel();
+				long position = 0;
+				while (position + RECORD_SIZE <= channel.size()) {
+					record.clear();
+					while (record.hasRemaining()
+							&& channel.read(record, position + record.position()) > 0) {
+						// Reads until the record is complete.
+					}
+					if (!isValid(record)) {
+						break;
+					}
+					record.position(4);
+					record.get(symbol);
+					int id = registry.getId(decodeSymbol(symbol));
+					AbstractStock stock = registry.get(id);
+					long timestamp = record.getLong();
+					int tradeId = record.getInt();
+					int shares = record.getInt();
+					long price = record.getLong();
+					boolean sell = (record.get() & 1) != 0;
+					if (stock != null
+							&& (id >= knownTrades.length || tradeId > knownTrades[id])) {
+						replayed += replayInOrder(stock, new JournaledTrade(
+								tradeId, timestamp, shares, price, sell),
+								heldBack);
+					}
+					position += RECORD_SIZE;
+				}
+				if (i == segments.length - 1 && position < channel.size()) {
+					channel.truncate(position);
+				}
+			} finally {
+				file.close();
+			}
+		}
+		for (Map.Entry<AbstractStock, PriorityQueue<JournaledTrade>> entry : heldBack
+				.entrySet()) {
+			JournaledTrade trade;
+			while ((trade = entry.getValue().poll()) != null) {
+				trade.record(entry.getKey());
+				replayed++;
+			}
+		}
+		return replayed;
+	}
+
+	/**
+	 * Records a replayed Trade if it is the next one of its Stock, followed
+	 * by the held back Trades it makes next, or holds it back otherwise.
+	 *
+	 * @return Integer The number of Trades recorded.
+	 */
+	private static int replayInOrder(final AbstractStock stock,
+			final JournaledTrade trade,
+			final Map<AbstractStock, PriorityQueue<JournaledTrade>> heldBack) {
+		PriorityQueue<JournaledTrade> queue = heldBack.get(stock);
+		if (trade.tradeId != stock.getTradeCount() + 1) {
+			if (queue == null) {
+				queue = new PriorityQueue<JournaledTrade>();
+				heldBack.put(stock, queue);
+			}
+			queue.add(trade);
+			return 0;
+		}
+		trade.record(stock);
+		int recorded = 1;
+		while (queue != null && !queue.isEmpty()
+				&& queue.peek().tradeId == stock.getTradeCount() + 1) {
+			queue.poll().record(stock);
+			recorded++;
+		}
+		return recorded;
+	}
+
+	/**
+	 * Opens the last segment for appending and starts the flusher thread
+	 * used by the GROUP_COMMIT and INTERVAL policies.
+	 *
+	 * @throws IOException
+	 *             When the segment can not be opened.
+	 */
+	public void open() throws IOException {
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Can not create " + directory);
+		}
+		File[] segments = listSegments();
+		segmentNumber = segments.length == 0 ? 1
+				: segmentNumber(segments[segments.length - 1]);
+		openSegment();
+		running = true;
+		if (policy != FsyncPolicy.PER_TRADE) {
+			flusher = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					flushLoop();
+				}
+			}, "trade-journal-flusher");
+			flusher.setDaemon(true);
+			flusher.start();
+		}
+	}
+
+	/**
+	 * Journals the Trades of every Stock in a registry from now on.
+	 *
+	 * @param registry
+	 *            StockRegistry The Stocks to journal.
+	 * @throws IllegalArgumentException
+	 *             When the symbol of a Stock does not fit in a record; no
+	 *             Stock is attached then.
+	 */
+	public void attach(final StockRegistry registry) {
+		for (AbstractStock stock : registry) {
+			symbolBytes(stock.getSymbol());
+		}
+		for (AbstractStock stock : registry) {
+			stock.setTradeListener(this);
+		}
+	}
+
+	/**
+	 * Appends a Trade to the journal. With the PER_TRADE policy it is on
+	 * disk when this returns; with GROUP_COMMIT it is only queued for the
+	 * flusher, see {@link #awaitDurable()}.
+	 *
+	 * @throws IllegalArgumentException
+	 *             When the symbol of the Stock does not fit in a record.
+	 * @throws IllegalStateException
+	 *             When the journal can not be written.
+	 */
+	@Override
+	public void onTrade(final AbstractStock stock, final int tradeId,
+			final long timestamp, final int shares, final long price,
+			final boolean sell) {
+		byte[] symbol = symbolBytes(stock.getSymbol());
+		lock.lock();
+		try {
+			checkFailure();
+			while (pending.remaining() < RECORD_SIZE) {
+				if (policy == FsyncPolicy.PER_TRADE) {
+					flushPending();
+				} else {
+					dataAvailable.signal();
+					flushed.awaitUninterruptibly();
+					checkFailure();
+				}
+			}
+			encode(symbol, tradeId, timestamp, shares, price, sell);
+			appendedRecords++;
+			if (policy == FsyncPolicy.PER_TRADE) {
+				flushPending();
+			} else if (policy == FsyncPolicy.GROUP_COMMIT) {
+				dataAvailable.signal();
+			}
+		} catch (IOException e) {
+			failure = e;
+			throw new IllegalStateException(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Waits until every Trade journaled so far, by any thread, is on disk.
+	 * With GROUP_COMMIT this is the one wait of a batch: Trades recorded
+	 * together are acknowledged after a single call, which the flusher
+	 * answers with a single fsync. It returns at once with the other
+	 * policies, whose Trades are forced by their own rules.
+	 *
+	 * @throws IllegalStateException
+	 *             When the journal can not be written.
+	 */
+	public void awaitDurable() {
+		if (policy != FsyncPolicy.GROUP_COMMIT) {
+			return;
+		}
+		lock.lock();
+		try {
+			checkFailure();
+			long sequence = appendedRecords;
+			if (durableRecords < sequence) {
+				dataAvailable.signal();
+			}
+			while (durableRecords < sequence) {
+				flushed.awaitUninterruptibly();
+				checkFailure();
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Starts a checkpoint. Every Trade journaled from now on is written to
+	 * the returned segment or a later one, so a snapshot of the Stocks taken
+	 * after this call only needs the journal from that segment on. The
+	 * journal also rolls to a new segment on its next write, so the segments
+	 * before it stop growing.
+	 *
+	 * @return Integer The number of the segment to replay from.
+	 */
+	public int checkpoint() {
+		int current = segmentNumber;
+		rollRequested = true;
+		return current;
+	}
+
+	/**
+	 * Deletes the segments made redundant by a snapshot.
+	 *
+	 * @param segment
+	 *            Integer The number of the first segment to keep.
+	 * @return Integer The number of segments deleted.
+	 * @throws IOException
+	 *             When a segment can not be deleted.
+	 */
+	public int deleteSegmentsBefore(final int segment) throws IOException {
+		int deleted = 0;
+		for (File segmentFile : listSegments()) {
+			if (segmentNumber(segmentFile) >= segment) {
+				break;
+			}
+			if (!segmentFile.delete()) {
+				throw new IOException("Can not delete " + segmentFile);
+			}
+			deleted++;
+		}
+		return deleted;
+	}
+
+	/**
+	 * Forces every pending record to disk and closes the journal.
+	 *
+	 * @throws IOException
+	 *             When the journal can not be written.
+	 */
+	public void close() throws IOException {
+		running = false;
+		if (flusher != null) {
+			lock.lock();
+			try {
+				dataAvailable.signal();
+			} finally {
+				lock.unlock();
+			}
+			try {
+				flusher.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		lock.lock();
+		try {
+			if (segment != null) {
+				flushPending();
+				segment.close();
+				segment = null;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Body of the flusher thread: writes and forces the pending records as a
+	 * batch whenever there are some, or every interval with the INTERVAL
+	 * policy.
+	 */
+	private void flushLoop() {
+		lock.lock();
+		try {
+			while (running) {
+				if (policy == FsyncPolicy.INTERVAL) {
+					dataAvailable.await(interval, TimeUnit.MILLISECONDS);
+				} else if (pending.position() == 0) {
+					dataAvailable.await();
+				}
+				if (pending.position() == 0) {
+					continue;
+				}
+				ByteBuffer batch = pending;
+				long batchRecords = appendedRecords;
+				pending = writing;
+				writing = batch;
+				lock.unlock();
+				try {
+					batch.flip();
+					write(batch);
+					segment.force(false);
+				} finally {
+					lock.lock();
+				}
+				batch.clear();
+				durableRecords = batchRecords;
+				flushed.signalAll();
+			}
+		} catch (IOException e) {
+			failure = e;
+			flushed.signalAll();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Writes and forces the pending records from the calling thread. Called
+	 * holding the lock.
+	 *
+	 * @throws IOException
+	 *             When the journal can not be written.
+	 */
+	private void flushPending() throws IOException {
+		if (pending.position() > 0) {
+			pending.flip();
+			write(pending);
+			pending.clear();
+			segment.force(false);
+		}
+		durableRecords = appendedRecords;
+		flushed.signalAll();
+	}
+
+	/**
+	 * Writes a batch of records, rolling to a new segment first when the
+	 * batch does not fit in the current one or a checkpoint asked for it.
+	 *
+	 * @param batch
+	 *            ByteBuffer The records to write.
+	 * @throws IOException
+	 *             When the journal can not be written.
+	 */
+	private void write(final ByteBuffer batch) throws IOException {
+		long position = segment.position();
+		if (position > 0
+				&& (rollRequested || position + batch.remaining() > segmentSize)) {
+			rollRequested = false;
+			segment.force(false);
+			segment.close();
+			segmentNumber++;
+			openSegment();
+		}
+		while (batch.hasRemaining()) {
+			segment.write(batch);
+		}
+	}
+
+	/**
+	 * Opens the current segment positioned at its end.
+	 *
+	 * @throws IOException
+	 *             When the segment can not be opened.
+	 */
+	private void openSegment() throws IOException {
+		File file = new File(directory, String.format("%s%06d%s",
+				SEGMENT_PREFIX, segmentNumber, SEGMENT_SUFFIX));
+		@SuppressWarnings("resource")
+		FileChannel channel = new RandomAccessFile(file, "rw").getChannel();
+		channel.position(channel.size());
+		segment = channel;
+	}
+
+	/**
+	 * Encodes a record at the end of the pending buffer.
+	 */
+	private void encode(final byte[] symbol, final int tradeId,
+			final long timestamp, final int shares, final long price,
+			final boolean sell) {
+		int start = pending.position();
+		pending.putInt(MAGIC);
+		for (int i = 0; i < TradeFileLoader.SYMBOL_SIZE; i++) {
+			pending.put(i < symbol.length ? symbol[i] : (byte) ' ');
+		}
+		pending.putLong(timestamp);
+		pending.putInt(tradeId);
+		pending.putInt(shares);
+		pending.putLong(price);
+		pending.put((byte) (sell ? 1 : 0));
+		pending.put((byte) 0).put((byte) 0).put((byte) 0);
+		crc.reset();
+		crc.update(pending.array(), start, CRC_OFFSET);
+		pending.putInt((int) crc.getValue());
+	}
+
+	/**
+	 * @param symbol
+	 *            String The symbol of a Stock.
+	 * @return byte[] The symbol as journaled, before padding.
+	 * @throws IllegalArgumentException
+	 *             When the symbol is not ASCII or longer than a record holds.
+	 */
+	private static byte[] symbolBytes(final String symbol) {
+		byte[] bytes = symbol.getBytes(StandardCharsets.US_ASCII);
+		if (bytes.length > TradeFileLoader.SYMBOL_SIZE
+				|| !symbol.equals(new String(bytes, StandardCharsets.US_ASCII))) {
+			throw new IllegalArgumentException(String.format(
+					"Symbol %s does not fit in %d ASCII characters", symbol,
+					TradeFileLoader.SYMBOL_SIZE));
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param record
+	 *            ByteBuffer A full record.
+	 * @return Boolean True if the magic and the CRC of the record match.
+	 */
+	private boolean isValid(final ByteBuffer record) {
+		if (record.hasRemaining() || record.getInt(0) != MAGIC) {
+			return false;
+		}
+		crc.reset();
+		crc.update(record.array(), 0, CRC_OFFSET);
+		return record.getInt(CRC_OFFSET) == (int) crc.getValue();
+	}
+
+	/**
+	 * @param symbol
+	 *            byte[] A symbol padded with spaces.
+	 * @return String The symbol without padding.
+	 */
+	private static String decodeSymbol(final byte[] symbol) {
+		int length = symbol.length;
+		while (length > 0 && symbol[length - 1] == ' ') {
+			length--;
+		}
+		return new String(symbol, 0, length, StandardCharsets.US_ASCII);
+	}
+
+	/**
+	 * @throws IOException
+	 *             The failure of a previous write, if any.
+	 */
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * A replayed Trade held back until the Trades before it are replayed.
+	 */
+	private static final class JournaledTrade implements
+			Comparable<JournaledTrade> {
+		private final int		tradeId;
+		private final long		timestamp;
+		private final int		shares;
+		private final long		price;
+		private final boolean	sell;
+
+		private JournaledTrade(final int tradeId, final long timestamp,
+				final int shares, final long price, final boolean sell) {
+			this.tradeId = tradeId;
+			this.timestamp = timestamp;
+			this.shares = shares;
+			this.price = price;
+			this.sell = sell;
+		}
+
+		private void record(final AbstractStock stock) {
+			stock.recordTrade(shares, price, sell, timestamp);
+		}
+
+		@Override
+		public int compareTo(final JournaledTrade other) {
+			return Integer.compare(tradeId, other.tradeId);
+		}
+	}
+
+	/**
+	 * @return File[] The segment files sorted by number.
+	 */
+	private File[] listSegments() {
+		File[] segments = directory.listFiles(new FilenameFilter() {
+			@Override
+			public boolean accept(File dir, String name) {
+				return name.startsWith(SEGMENT_PREFIX)
+						&& name.endsWith(SEGMENT_SUFFIX);
+			}
+		});
+		if (segments == null) {
+			return new File[0];
+		}
+		Arrays.sort(segments);
+		return segments;
+	}
+
+	/**
+	 * @param segmentFile
+	 *            File A segment file.
+	 * @return Integer The number of the segment.
+	 */
+	private static int segmentNumber(final File segmentFile) {
+		String name = segmentFile.getName();
+		return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(),
+				name.length() - SEGMENT_SUFFIX.length()));
+	}
+}
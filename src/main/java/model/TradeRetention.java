@@ -0,0 +1,112 @@
+package main.java.model;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import main.java.bo.RetentionPolicy;
+import main.java.bo.impl.AbstractStock;
+
+/**
+ * Evicts in the background the raw Trades the Stocks of a registry no longer
+ * need to keep, so memory stays flat however long the program runs. Each
+ * Stock is evicted under its own {@link RetentionPolicy}, or the default one
+ * when it has none. Eviction only takes the append lock of one Stock at a
+ * time, for as long as it takes to swap its chunk directory.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class TradeRetention {
+	public static final long			DEFAULT_PERIOD	= 10000;
+
+	private final StockRegistry			registry;
+	private final RetentionPolicy		defaultPolicy;
+	private final AtomicLong			evictedTrades	= new AtomicLong();
+	private ScheduledExecutorService	scheduler		= null;
+	private volatile RuntimeException	lastFailure		= null;
+
+	/**
+	 * @param registry
+	 *            StockRegistry The Stocks to evict Trades from.
+	 * @param defaultPolicy
+	 *            RetentionPolicy The policy of the Stocks without one.
+	 */
+	public TradeRetention(final StockRegistry registry,
+			final RetentionPolicy defaultPolicy) {
+		this.registry = registry;
+		this.defaultPolicy = defaultPolicy;
+	}
+
+	/**
+	 * Starts evicting in the background.
+	 *
+	 * @param period
+	 *            Long The time between evictions in milliseconds.
+	 */
+	public synchronized void start(final long period) {
+		scheduler = Executors
+				.newSingleThreadScheduledExecutor(new ThreadFactory() {
+					@Override
+					public Thread newThread(Runnable runnable) {
+						Thread thread = new Thread(runnable, "trade-retention");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					evict();
+				} catch (RuntimeException e) {
+					// Thrown out of the task, it would cancel the evictions.
+					lastFailure = e;
+				}
+			}
+		}, period, period, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Evicts now the Trades beyond the policy of every Stock.
+	 *
+	 * @return Long The number of Trades evicted.
+	 */
+	public long evict() {
+		long evicted = 0;
+		for (AbstractStock stock : registry) {
+			RetentionPolicy policy = stock.getRetentionPolicy();
+			evicted += stock.evictTrades(policy == null ? defaultPolicy
+					: policy, stock.getClock().now());
+		}
+		evictedTrades.addAndGet(evicted);
+		return evicted;
+	}
+
+	/**
+	 * Stops the background eviction.
+	 */
+	public synchronized void close() {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * @return Long The number of Trades evicted since the creation.
+	 */
+	public long getEvictedTrades() {
+		return evictedTrades.get();
+	}
+
+	/**
+	 * @return RuntimeException The failure of the last background eviction,
+	 *         or null.
+	 */
+	public RuntimeException getLastFailure() {
+		return lastFailure;
+	}
+}
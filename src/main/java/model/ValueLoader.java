@@ -1,35 +1,158 @@
-package main.java.model;
-
-import java.util.LinkedList;
-import java.util.List;
-
-import main.java.bo.CommonStock;
-import main.java.bo.PreferredStock;
-import main.java.bo.impl.AbstractStock;
-
-/**
- * Class to load values to the SuperSimpleStocks
- * 
- * @author Samuel Maya Miles
- * @version 1.0
- */
-public class ValueLoader {
-
-	/**
-	 * Creates a dummy set of data (Should load objects from persistence in real
-	 * life).
-	 * 
-	 * @return List<AbstractStock> List containing demo data.
-	 */
-	public List<AbstractStock> loadDummyValues() {
-		List<AbstractStock> dummyList = new LinkedList<AbstractStock>();
-
-		dummyList.add(new CommonStock("TEA", 0, 100));
-		dummyList.add(new CommonStock("POP", 8, 100));
-		dummyList.add(new CommonStock("ALE", 23, 60));
-		dummyList.add(new PreferredStock("GIN", 8, 2, 100));
-		dummyList.add(new CommonStock("JOE", 13, 250));
-
-		return dummyList;
-	}
-}
+package main.java.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+import main.java.bo.CommonStock;
+import main.java.bo.PreferredStock;
+import main.java.exceptions.SuperSimpleStocksException;
+
+/**
+ * Class to load values to the SuperSimpleStocks
+ * 
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class ValueLoader {
+	private ResourceBundle	textBundle	= null;
+
+	public ValueLoader() {
+		this.textBundle = ResourceBundle.getBundle("main.java.bundles.Text",
+				new Locale("en", "US"));
+	}
+
+	/**
+	 * Creates a dummy set of data (Should load objects from persistence in real
+	 * life).
+	 * 
+	 * @return StockRegistry Registry containing demo data.
+	 */
+	public StockRegistry loadDummyValues() {
+		StockRegistry dummyRegistry = new StockRegistry();
+
+		dummyRegistry.register(new CommonStock("TEA", 0, 100));
+		dummyRegistry.register(new CommonStock("POP", 8, 100));
+		dummyRegistry.register(new CommonStock("ALE", 23, 60));
+		dummyRegistry.register(new PreferredStock("GIN", 8, 2, 100));
+		dummyRegistry.register(new CommonStock("JOE", 13, 250));
+
+		return dummyRegistry;
+	}
+
+	/**
+	 * Loads an end of day Trade file into the Stocks of a registry. Files
+	 * ending in .csv are read as CSV, any other file as fixed size binary
+	 * records.
+	 * 
+	 * @param fileName
+	 *            String The path of the Trade file.
+	 * @param registry
+	 *            StockRegistry The Stocks receiving the Trades.
+	 * @return Long The number of Trades loaded.
+	 * @throws SuperSimpleStocksException
+	 *             When the file can not be read.
+	 */
+	public long loadTrades(final String fileName, final StockRegistry registry)
+			throws SuperSimpleStocksException {
+		boolean binary = !fileName.toLowerCase(Locale.ROOT).endsWith(".csv");
+		try {
+			return new TradeFileLoader(registry).load(fileName, binary);
+		} catch (IOException e) {
+			throw new SuperSimpleStocksException(String.format(
+					textBundle.getString("load.error"), fileName), e);
+		}
+	}
+
+	/**
+	 * Replays a Trade journal into the Stocks of a registry and opens it to
+	 * journal every Trade recorded from then on.
+	 * 
+	 * @param directory
+	 *            File The directory of the journal.
+	 * @param policy
+	 *            FsyncPolicy When the journal is forced to disk.
+	 * @param registry
+	 *            StockRegistry The Stocks to replay into and journal.
+	 * @param fromSegment
+	 *            Integer The first journal segment to replay, as returned by
+	 *            {@link #restoreSnapshot(StockSnapshots)}.
+	 * @return TradeJournal The open journal.
+	 * @throws SuperSimpleStocksException
+	 *             When the journal can not be read or opened, or a Stock
+	 *             symbol does not fit in its records.
+	 */
+	public TradeJournal openJournal(final File directory,
+			final TradeJournal.FsyncPolicy policy,
+			final StockRegistry registry, final int fromSegment)
+			throws SuperSimpleStocksException {
+		TradeJournal journal = new TradeJournal(directory, policy);
+		try {
+			journal.replay(registry, fromSegment);
+			journal.open();
+		} catch (IOException e) {
+			throw new SuperSimpleStocksException(String.format(
+					textBundle.getString("journal.error"), directory), e);
+		}
+		try {
+			journal.attach(registry);
+		} catch (IllegalArgumentException e) {
+			try {
+				journal.close();
+			} catch (IOException closeFailure) {
+				// The journal is given up anyway.
+			}
+			throw new SuperSimpleStocksException(String.format(
+					textBundle.getString("journal.error.symbol"), directory,
+					e.getMessage()), e);
+		}
+		return journal;
+	}
+
+	/**
+	 * Restores the Stocks from their latest snapshot, if any.
+	 * 
+	 * @param snapshots
+	 *            StockSnapshots The snapshots of the Stocks.
+	 * @return Integer The first journal segment to replay.
+	 * @throws SuperSimpleStocksException
+	 *             When the snapshot can not be read.
+	 */
+	public int restoreSnapshot(final StockSnapshots snapshots)
+			throws SuperSimpleStocksException {
+		try {
+			return snapshots.restore();
+		} catch (IOException e) {
+			throw new SuperSimpleStocksException(String.format(
+					textBundle.getString("snapshot.error"),
+					snapshots.getDirectory()), e);
+		}
+	}
+
+	/**
+	 * Loads the reference data file of the Stocks of a registry and keeps
+	 * watching it, loading it again whenever it changes.
+	 * 
+	 * @param fileName
+	 *            String The path of the reference data file.
+	 * @param registry
+	 *            StockRegistry The Stocks receiving the reference data.
+	 * @return ReferenceDataWatcher The watcher of the file, to close it.
+	 * @throws SuperSimpleStocksException
+	 *             When the file can not be read or watched.
+	 */
+	public ReferenceDataWatcher watchReferenceData(final String fileName,
+			final StockRegistry registry) throws SuperSimpleStocksException {
+		ReferenceDataWatcher watcher = new ReferenceDataWatcher(registry,
+				new File(fileName));
+		try {
+			watcher.reload();
+			watcher.start();
+		} catch (IOException e) {
+			throw new SuperSimpleStocksException(String.format(
+					textBundle.getString("refdata.error"), fileName), e);
+		}
+		return watcher;
+	}
+}
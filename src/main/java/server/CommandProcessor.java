@@ -0,0 +1,431 @@
+package main.java.server;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import main.java.bo.FixedPoint;
+import main.java.bo.ReferenceData;
+import main.java.bo.TradeFlow;
+import main.java.bo.TradeSummary;
+import main.java.bo.impl.AbstractStock;
+import main.java.model.AllShareIndex;
+import main.java.model.MarketDataListener;
+import main.java.model.MarketDataPublisher;
+import main.java.model.MarketDataPublisher.Metric;
+import main.java.model.MarketDataPublisher.Subscription;
+import main.java.model.StockRegistry;
+
+/**
+ * Executes the commands of the headless line protocol against the Stocks of
+ * a registry. Commands are a keyword followed by arguments separated by
+ * spaces, and every command but QUIT answers with exactly one line:
+ *
+ * <pre>
+ * RECORD &lt;symbol&gt; &lt;shares&gt; &lt;price&gt; &lt;B|S&gt; [epochMillis]  OK &lt;tradeId&gt;
+ * PRICE &lt;symbol&gt; [windowMillis]                          PRICE &lt;symbol&gt; &lt;pennies&gt;
+ * FLOW &lt;symbol&gt; [windowMillis]                           FLOW &lt;symbol&gt; &lt;buyShares&gt; &lt;sellShares&gt;
+ *                                                            &lt;buyVwap&gt; &lt;sellVwap&gt; &lt;buyTrades&gt;
+ *                                                            &lt;sellTrades&gt; &lt;imbalance&gt;
+ * RANGE &lt;symbol&gt; &lt;fromMillis&gt; &lt;toMillis&gt;               RANGE &lt;symbol&gt; &lt;trades&gt; &lt;shares&gt; &lt;vwap&gt;
+ *                                                            &lt;high&gt; &lt;low&gt; &lt;geometricMean&gt;
+ * REFDATA &lt;symbol&gt; &lt;lastDividend&gt; &lt;fixedDividend&gt;     REFDATA &lt;symbol&gt; &lt;CHANGED|UNCHANGED&gt;
+ *         &lt;parValue&gt;
+ * YIELD &lt;symbol&gt;                                         YIELD &lt;symbol&gt; &lt;value&gt;
+ * PE &lt;symbol&gt;                                            PE &lt;symbol&gt; &lt;value&gt;
+ * INDEX                                                  INDEX &lt;value|NaN&gt;
+ * SUBSCRIBE INDEX [minChange]                            SUBSCRIBED INDEX
+ * SUBSCRIBE &lt;VWAP|YIELD|PE&gt; &lt;symbol&gt; [minChange]         SUBSCRIBED &lt;metric&gt; &lt;symbol&gt;
+ * UNSUBSCRIBE                                            UNSUBSCRIBED &lt;count&gt;
+ * QUIT                                                   (ends the session)
+ * </pre>
+ *
+ * Prices are pennies written in decimal with up to
+ * {@link FixedPoint#DECIMALS} decimal places, like 120 or 120.2575. Times
+ * are milliseconds; a RECORD without time is stamped with the clock of the
+ * Stock. A RANGE covers the Trades from its start, included, to its end,
+ * excluded. A REFDATA swaps the dividends and par value of a Stock at once,
+ * the dividend and par value written like prices.
+ * <p>
+ * Once subscribed, a session also receives lines UPDATE &lt;metric&gt;
+ * [symbol] &lt;value&gt; pushed by the {@link MarketDataPublisher} between
+ * the answers. They are handed to the {@link SessionWriter} of the session,
+ * which only keeps the latest update of each subscription it has not
+ * written yet, so a slow client never holds the publisher.
+ * <p>
+ * A command that can not be executed answers ERROR followed by the reason.
+ * Blank lines and lines starting with # are skipped without an answer, so
+ * scripts can be commented. The processor holds no state of its own and can
+ * be shared by several sessions.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class CommandProcessor {
+	private static final int			MAX_FIELDS		= 7;
+
+	private final StockRegistry			registry;
+	private final AllShareIndex			allShareIndex;
+	private final long					tickerTime;
+	private final MarketDataPublisher	publisher;
+
+	/**
+	 * @param registry
+	 *            StockRegistry The Stocks the commands run against.
+	 * @param allShareIndex
+	 *            AllShareIndex The index answering the INDEX command.
+	 * @param tickerTime
+	 *            Long The default Stock price window in nanoseconds.
+	 * @param publisher
+	 *            MarketDataPublisher The publisher of the subscriptions, or
+	 *            null when they are not available.
+	 */
+	public CommandProcessor(final StockRegistry registry,
+			final AllShareIndex allShareIndex, final long tickerTime,
+			final MarketDataPublisher publisher) {
+		this.registry = registry;
+		this.allShareIndex = allShareIndex;
+		this.tickerTime = tickerTime;
+		this.publisher = publisher;
+	}
+
+	/**
+	 * Executes a command line and appends its answer.
+	 *
+	 * @param line
+	 *            String The command line.
+	 * @param out
+	 *            Appendable Receives the answer line.
+	 * @return Boolean False when the command ends the session.
+	 * @throws IOException
+	 *             When the answer can not be written.
+	 */
+	public boolean process(final String line, final Appendable out)
+			throws IOException {
+		return process(line, out, null, null);
+	}
+
+	/**
+	 * Executes a command line of a session able to subscribe and appends its
+	 * answer.
+	 *
+	 * @param line
+	 *            String The command line.
+	 * @param out
+	 *            Appendable Receives the answer line.
+	 * @param subscriptions
+	 *            List<Subscription> The subscriptions of the session, or null
+	 *            when it can not subscribe.
+	 * @param updates
+	 *            SessionWriter Receives the updates of the subscriptions, or
+	 *            null when the session can not subscribe.
+	 * @return Boolean False when the command ends the session.
+	 * @throws IOException
+	 *             When the answer can not be written.
+	 */
+	public boolean process(final String line, final Appendable out,
+			final List<Subscription> subscriptions,
+			final SessionWriter updates) throws IOException {
+		String[] fields = new String[MAX_FIELDS];
+		int count = split(line, fields);
+		if (count == 0 || fields[0].charAt(0) == '#') {
+			return true;
+		}
+		String command = fields[0];
+		if ("QUIT".equalsIgnoreCase(command)) {
+			return false;
+		}
+		try {
+			if ("RECORD".equalsIgnoreCase(command)) {
+				record(fields, count, out);
+			} else if ("PRICE".equalsIgnoreCase(command)) {
+				AbstractStock stock = getStock(fields, count, 2, 3);
+				long window = count > 2 ? TimeUnit.MILLISECONDS.toNanos(Long
+						.parseLong(fields[2])) : tickerTime;
+				answer(out, "PRICE", stock).append(
+						FixedPoint.format(stock.getStockPrice(window)));
+			} else if ("FLOW".equalsIgnoreCase(command)) {
+				AbstractStock stock = getStock(fields, count, 2, 3);
+				long window = count > 2 ? TimeUnit.MILLISECONDS.toNanos(Long
+						.parseLong(fields[2])) : tickerTime;
+				TradeFlow flow = stock.getTradeFlow(window);
+				answer(out, "FLOW", stock)
+						.append(String.valueOf(flow.getBuyShares())).append(' ')
+						.append(String.valueOf(flow.getSellShares())).append(' ')
+						.append(FixedPoint.format(flow.getBuyVwap())).append(' ')
+						.append(FixedPoint.format(flow.getSellVwap())).append(' ')
+						.append(String.valueOf(flow.getBuyTrades())).append(' ')
+						.append(String.valueOf(flow.getSellTrades())).append(' ')
+						.append(String.valueOf(flow.getImbalance()));
+			} else if ("RANGE".equalsIgnoreCase(command)) {
+				AbstractStock stock = getStock(fields, count, 4, 4);
+				TradeSummary summary = stock.getTradeSummary(
+						TimeUnit.MILLISECONDS.toNanos(Long.parseLong(fields[2])),
+						TimeUnit.MILLISECONDS.toNanos(Long.parseLong(fields[3])));
+				answer(out, "RANGE", stock)
+						.append(String.valueOf(summary.getTradeCount()))
+						.append(' ')
+						.append(String.valueOf(summary.getShares())).append(' ')
+						.append(FixedPoint.format(summary.getVwap())).append(' ')
+						.append(FixedPoint.format(summary.getHigh())).append(' ')
+						.append(FixedPoint.format(summary.getLow())).append(' ')
+						.append(String.valueOf(summary.getGeometricMean()));
+			} else if ("REFDATA".equalsIgnoreCase(command)) {
+				AbstractStock stock = getStock(fields, count, 5, 5);
+				ReferenceData reference = new ReferenceData(
+						FixedPoint.parse(fields[2]), Integer.parseInt(fields[3]),
+						FixedPoint.parse(fields[4]));
+				answer(out, "REFDATA", stock).append(
+						stock.setReferenceData(reference) ? "CHANGED"
+								: "UNCHANGED");
+			} else if ("YIELD".equalsIgnoreCase(command)) {
+				AbstractStock stock = getStock(fields, count, 2, 2);
+				answer(out, "YIELD", stock).append(
+						String.valueOf(stock.getDividendYield()));
+			} else if ("PE".equalsIgnoreCase(command)) {
+				AbstractStock stock = getStock(fields, count, 2, 2);
+				answer(out, "PE", stock).append(
+						String.valueOf(stock.getPERatio()));
+			} else if ("INDEX".equalsIgnoreCase(command)) {
+				checkFields(count, 1, 1);
+				out.append("INDEX ").append(
+						String.valueOf(allShareIndex.getValue(registry)));
+			} else if ("SUBSCRIBE".equalsIgnoreCase(command)) {
+				subscribe(fields, count, out, subscriptions, updates);
+			} else if ("UNSUBSCRIBE".equalsIgnoreCase(command)) {
+				checkSubscriptions(subscriptions, updates);
+				checkFields(count, 1, 1);
+				for (Subscription subscription : subscriptions) {
+					subscription.cancel();
+				}
+				out.append("UNSUBSCRIBED ").append(
+						String.valueOf(subscriptions.size()));
+				subscriptions.clear();
+			} else {
+				throw new IllegalArgumentException("unknown command "
+						+ command);
+			}
+		} catch (NumberFormatException e) {
+			out.append("ERROR not a number ").append(e.getMessage());
+		} catch (IllegalArgumentException e) {
+			out.append("ERROR ").append(e.getMessage());
+		}
+		out.append('\n');
+		return true;
+	}
+
+	/**
+	 * Records a Trade and answers its tradeId.
+	 */
+	private void record(final String[] fields, final int count,
+			final Appendable out) throws IOException {
+		AbstractStock stock = getStock(fields, count, 5, 6);
+		int shares = Integer.parseInt(fields[2]);
+		long price = FixedPoint.parse(fields[3]);
+		if (shares < 0 || price < 0) {
+			throw new IllegalArgumentException("negative shares or price");
+		}
+		boolean sell;
+		if ("S".equalsIgnoreCase(fields[4])) {
+			sell = true;
+		} else if ("B".equalsIgnoreCase(fields[4])) {
+			sell = false;
+		} else {
+			throw new IllegalArgumentException("not B or S " + fields[4]);
+		}
+		int tradeId;
+		try {
+			if (count > 5) {
+				tradeId = stock.recordTrade(shares, price, sell,
+						TimeUnit.MILLISECONDS.toNanos(Long
+								.parseLong(fields[5])));
+			} else {
+				tradeId = stock.recordTrade(shares, price, sell);
+			}
+		} catch (IllegalStateException e) {
+			// Thrown by the journal once the Trade is in the Stock.
+			out.append("ERROR recorded but not journaled");
+			return;
+		}
+		out.append("OK ").append(String.valueOf(tradeId));
+	}
+
+	/**
+	 * Subscribes the session to a metric, handing its updates to the
+	 * session output.
+	 */
+	private void subscribe(final String[] fields, final int count,
+			final Appendable out, final List<Subscription> subscriptions,
+			final SessionWriter updates) throws IOException {
+		checkSubscriptions(subscriptions, updates);
+		Metric metric = count > 1 ? toMetric(fields[1]) : null;
+		if (metric == null) {
+			throw new IllegalArgumentException("unknown metric");
+		}
+		String symbol = null;
+		int thresholdField = 2;
+		if (metric == Metric.INDEX) {
+			checkFields(count, 2, 3);
+		} else {
+			checkFields(count, 3, 4);
+			if (registry.get(fields[2]) == null) {
+				throw new IllegalArgumentException("unknown stock "
+						+ fields[2]);
+			}
+			symbol = fields[2];
+			thresholdField = 3;
+		}
+		double minChange = count > thresholdField ? Double
+				.parseDouble(fields[thresholdField]) : 0;
+		subscriptions.add(publisher.subscribe(metric, symbol, minChange,
+				new MarketDataListener() {
+					@Override
+					public void onUpdate(Metric updated, String updatedSymbol,
+							double value, long time) {
+						StringBuilder line = new StringBuilder("UPDATE ")
+								.append(keyword(updated)).append(' ');
+						if (updatedSymbol != null) {
+							line.append(updatedSymbol).append(' ');
+						}
+						line.append(value).append('\n');
+						updates.update(this, line.toString());
+					}
+				}));
+		out.append("SUBSCRIBED ").append(keyword(metric));
+		if (symbol != null) {
+			out.append(' ').append(symbol);
+		}
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             When the session can not subscribe.
+	 */
+	private void checkSubscriptions(final List<Subscription> subscriptions,
+			final SessionWriter updates) {
+		if (subscriptions == null || updates == null || publisher == null) {
+			throw new IllegalArgumentException(
+					"subscriptions not available");
+		}
+	}
+
+	/**
+	 * @param keyword
+	 *            String A metric keyword of the protocol.
+	 * @return Metric The metric or null when unknown.
+	 */
+	private static Metric toMetric(final String keyword) {
+		if ("INDEX".equalsIgnoreCase(keyword)) {
+			return Metric.INDEX;
+		} else if ("VWAP".equalsIgnoreCase(keyword)
+				|| "PRICE".equalsIgnoreCase(keyword)) {
+			return Metric.VWAP;
+		} else if ("YIELD".equalsIgnoreCase(keyword)) {
+			return Metric.DIVIDEND_YIELD;
+		} else if ("PE".equalsIgnoreCase(keyword)) {
+			return Metric.PE_RATIO;
+		}
+		return null;
+	}
+
+	/**
+	 * @param metric
+	 *            Metric A metric.
+	 * @return String The keyword of the metric in the protocol.
+	 */
+	private static String keyword(final Metric metric) {
+		switch (metric) {
+		case INDEX:
+			return "INDEX";
+		case VWAP:
+			return "VWAP";
+		case DIVIDEND_YIELD:
+			return "YIELD";
+		default:
+			return "PE";
+		}
+	}
+
+	/**
+	 * Checks the number of fields and looks up the Stock named by the second
+	 * one.
+	 *
+	 * @param fields
+	 *            String[] The command fields.
+	 * @param count
+	 *            Integer The number of fields.
+	 * @param minFields
+	 *            Integer The minimum number of fields of the command.
+	 * @param maxFields
+	 *            Integer The maximum number of fields of the command.
+	 * @return AbstractStock The listed Stock.
+	 * @throws IllegalArgumentException
+	 *             When the fields are wrong or the Stock is not listed.
+	 */
+	private AbstractStock getStock(final String[] fields, final int count,
+			final int minFields, final int maxFields) {
+		checkFields(count, minFields, maxFields);
+		AbstractStock stock = registry.get(fields[1]);
+		if (stock == null) {
+			throw new IllegalArgumentException("unknown stock " + fields[1]);
+		}
+		return stock;
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             When the number of fields is out of range.
+	 */
+	private static void checkFields(final int count, final int minFields,
+			final int maxFields) {
+		if (count < minFields || count > maxFields) {
+			throw new IllegalArgumentException("wrong number of arguments");
+		}
+	}
+
+	/**
+	 * Starts an answer with the command and the Stock symbol.
+	 */
+	private static Appendable answer(final Appendable out,
+			final String command, final AbstractStock stock)
+			throws IOException {
+		return out.append(command).append(' ').append(stock.getSymbol())
+				.append(' ');
+	}
+
+	/**
+	 * Splits a line into fields separated by spaces or tabs.
+	 *
+	 * @param line
+	 *            String The command line.
+	 * @param fields
+	 *            String[] Receives the fields.
+	 * @return Integer The number of fields, or one more than the capacity
+	 *         of the array when the line has too many.
+	 */
+	private static int split(final String line, final String[] fields) {
+		int count = 0;
+		int length = line.length();
+		int position = 0;
+		while (position < length) {
+			while (position < length && isSeparator(line.charAt(position))) {
+				position++;
+			}
+			int start = position;
+			while (position < length && !isSeparator(line.charAt(position))) {
+				position++;
+			}
+			if (start < position) {
+				if (count == fields.length) {
+					return count + 1;
+				}
+				fields[count++] = line.substring(start, position);
+			}
+		}
+		return count;
+	}
+
+	private static boolean isSeparator(final char character) {
+		return character == ' ' || character == '\t';
+	}
+}
@@ -0,0 +1,201 @@
+package main.java.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary message protocol of the {@link TradeGateway}. Every message has a
+ * fixed size given by its type, big endian, and starts with its type (byte)
+ * and a request id chosen by the client (int) that the answer echoes.
+ * <p>
+ * Requests:
+ *
+ * <pre>
+ * TRADE  type, requestId, symbol (8 bytes ASCII padded with spaces),
+ *        timestamp (long, epoch nanos, 0 for the gateway time),
+ *        shares (int), price (long, fixed point units), flags (byte)
+ * QUERY  type, requestId, query (byte), symbol (8 bytes),
+ *        window (long, nanos for PRICE, 0 for the default)
+ * </pre>
+ *
+ * A TRADE is only answered when it asks for an acknowledgement in its flags
+ * or when it is rejected. Answers are a RESPONSE: type, requestId and a
+ * value (long) holding the tradeId of an acknowledged Trade, the bits of
+ * the double result of a query, with Stock prices in pennies, or the error
+ * code of a rejection.
+ * <p>
+ * The INDEX_PARTS query is answered instead with an INDEX_PARTS message:
+ * type, requestId, sum of the logarithms of the prices (double), Trade
+ * count (long) and zero price Trade count (long), the totals a
+ * {@link ShardCoordinator} merges into the index of every shard.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public final class GatewayProtocol {
+	public static final byte	TRADE				= 1;
+	public static final byte	QUERY				= 2;
+	public static final byte	ACK					= 3;
+	public static final byte	VALUE				= 4;
+	public static final byte	ERROR				= 5;
+	public static final byte	INDEX_PARTS			= 6;
+
+	public static final int		SYMBOL_SIZE			= 8;
+	public static final int		TRADE_SIZE			= 34;
+	public static final int		QUERY_SIZE			= 22;
+	public static final int		RESPONSE_SIZE		= 13;
+	public static final int		INDEX_PARTS_SIZE	= 29;
+
+	public static final byte	FLAG_SELL			= 1;
+	public static final byte	FLAG_ACK			= 2;
+
+	public static final byte	QUERY_PRICE			= 1;
+	public static final byte	QUERY_YIELD			= 2;
+	public static final byte	QUERY_PE			= 3;
+	public static final byte	QUERY_INDEX			= 4;
+	public static final byte	QUERY_INDEX_PARTS	= 5;
+
+	public static final long	ERROR_UNKNOWN_STOCK	= 1;
+	public static final long	ERROR_INVALID_TRADE	= 2;
+	public static final long	ERROR_UNKNOWN_QUERY	= 3;
+	public static final long	ERROR_JOURNAL		= 4;
+
+	private GatewayProtocol() {
+	}
+
+	/**
+	 * @param type
+	 *            Byte A message type.
+	 * @return Integer The size of the requests of the type, or 0 when it is
+	 *         not a request.
+	 */
+	public static int requestSize(final byte type) {
+		if (type == TRADE) {
+			return TRADE_SIZE;
+		}
+		if (type == QUERY) {
+			return QUERY_SIZE;
+		}
+		return 0;
+	}
+
+	/**
+	 * Encodes a TRADE request.
+	 *
+	 * @param buffer
+	 *            ByteBuffer Receives the message.
+	 * @param requestId
+	 *            Integer The request id.
+	 * @param symbol
+	 *            Long The Stock symbol packed by {@link #packSymbol(String)}.
+	 * @param timestamp
+	 *            Long The Trade time in nanoseconds, 0 for the gateway time.
+	 * @param shares
+	 *            Integer The Trade shares.
+	 * @param price
+	 *            Long The Trade price in fixed point units.
+	 * @param flags
+	 *            Byte FLAG_SELL and FLAG_ACK as needed.
+	 */
+	public static void putTrade(final ByteBuffer buffer, final int requestId,
+			final long symbol, final long timestamp, final int shares,
+			final long price, final byte flags) {
+		buffer.put(TRADE).putInt(requestId).putLong(symbol)
+				.putLong(timestamp).putInt(shares).putLong(price).put(flags);
+	}
+
+	/**
+	 * Encodes a QUERY request.
+	 *
+	 * @param buffer
+	 *            ByteBuffer Receives the message.
+	 * @param requestId
+	 *            Integer The request id.
+	 * @param query
+	 *            Byte One of the QUERY_ values.
+	 * @param symbol
+	 *            Long The Stock symbol packed by {@link #packSymbol(String)},
+	 *            ignored by QUERY_INDEX and QUERY_INDEX_PARTS.
+	 * @param window
+	 *            Long The Stock price window in nanoseconds, 0 for the
+	 *            default.
+	 */
+	public static void putQuery(final ByteBuffer buffer, final int requestId,
+			final byte query, final long symbol, final long window) {
+		buffer.put(QUERY).putInt(requestId).put(query).putLong(symbol)
+				.putLong(window);
+	}
+
+	/**
+	 * Encodes a RESPONSE.
+	 *
+	 * @param buffer
+	 *            ByteBuffer Receives the message.
+	 * @param type
+	 *            Byte ACK, VALUE or ERROR.
+	 * @param requestId
+	 *            Integer The request id answered.
+	 * @param value
+	 *            Long The tradeId, the double bits or the error code.
+	 */
+	public static void putResponse(final ByteBuffer buffer, final byte type,
+			final int requestId, final long value) {
+		buffer.put(type).putInt(requestId).putLong(value);
+	}
+
+	/**
+	 * Encodes an INDEX_PARTS answer.
+	 *
+	 * @param buffer
+	 *            ByteBuffer Receives the message.
+	 * @param requestId
+	 *            Integer The request id answered.
+	 * @param logPriceSum
+	 *            Double The sum of the logarithms of the non zero prices.
+	 * @param tradeCount
+	 *            Long The number of Trades.
+	 * @param zeroPriceTrades
+	 *            Long The number of Trades at a zero price.
+	 */
+	public static void putIndexParts(final ByteBuffer buffer,
+			final int requestId, final double logPriceSum,
+			final long tradeCount, final long zeroPriceTrades) {
+		buffer.put(INDEX_PARTS).putInt(requestId).putDouble(logPriceSum)
+				.putLong(tradeCount).putLong(zeroPriceTrades);
+	}
+
+	/**
+	 * Packs a symbol into the 8 bytes it takes on the wire, so it travels
+	 * and is looked up as a single long.
+	 *
+	 * @param symbol
+	 *            String The Stock symbol, up to 8 ASCII characters.
+	 * @return Long The packed symbol.
+	 */
+	public static long packSymbol(final String symbol) {
+		byte[] bytes = symbol.getBytes(StandardCharsets.US_ASCII);
+		long packed = 0;
+		for (int i = 0; i < SYMBOL_SIZE; i++) {
+			packed = (packed << 8)
+					| ((i < bytes.length ? bytes[i] : ' ') & 0xFF);
+		}
+		return packed;
+	}
+
+	/**
+	 * @param packed
+	 *            Long A packed symbol.
+	 * @return String The symbol without padding.
+	 */
+	public static String unpackSymbol(final long packed) {
+		byte[] bytes = new byte[SYMBOL_SIZE];
+		int length = 0;
+		for (int i = 0; i < SYMBOL_SIZE; i++) {
+			bytes[i] = (byte) (packed >>> (56 - 8 * i));
+			if (bytes[i] != ' ') {
+				length = i + 1;
+			}
+		}
+		return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+	}
+}
@@ -0,0 +1,184 @@
+package main.java.server;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import main.java.model.MarketDataPublisher.Subscription;
+import main.java.model.TradeJournal;
+
+/**
+ * Runs the headless line protocol of {@link CommandProcessor} over a stream
+ * pair, such as the standard input and output, or over the connections of a
+ * local socket.
+ * <p>
+ * Commands are pipelined: a session keeps reading and executing commands
+ * and only hands the answers over once there is no more input waiting, so a
+ * replayed feed or a script is answered in large batches instead of one
+ * write per line. Each session writes through a {@link SessionWriter}, which
+ * also takes the updates of its subscriptions without making the publisher
+ * wait for the client. With a {@link #setJournal(TradeJournal) journal}
+ * set, a batch of answers is only handed over once the Trades it
+ * acknowledges are durable, which costs one wait per batch.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class HeadlessServer {
+	private static final int		BUFFER_SIZE	= 64 * 1024;
+
+	private final CommandProcessor	processor;
+	private volatile TradeJournal	journal		= null;
+
+	/**
+	 * @param processor
+	 *            CommandProcessor Executes the commands.
+	 */
+	public HeadlessServer(final CommandProcessor processor) {
+		this.processor = processor;
+	}
+
+	/**
+	 * @param journal
+	 *            TradeJournal The journal the Trades must be durable in
+	 *            before they are acknowledged, or null for none.
+	 */
+	public void setJournal(final TradeJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Runs a session until the end of the input or a QUIT command.
+	 *
+	 * @param in
+	 *            InputStream The commands.
+	 * @param out
+	 *            OutputStream Receives the answers.
+	 * @return Long The number of lines read.
+	 * @throws IOException
+	 *             When the streams fail.
+	 */
+	public long serve(final InputStream in, final OutputStream out)
+			throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+				StandardCharsets.US_ASCII), BUFFER_SIZE);
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+				StandardCharsets.US_ASCII), BUFFER_SIZE);
+		SessionWriter output = new SessionWriter(writer, Thread
+				.currentThread().getName() + "-writer");
+		List<Subscription> subscriptions = new ArrayList<Subscription>();
+		StringBuilder answers = new StringBuilder(BUFFER_SIZE);
+		long lines = 0;
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines++;
+				if (!processor.process(line, answers, subscriptions, output)) {
+					break;
+				}
+				if (!reader.ready() || answers.length() >= BUFFER_SIZE) {
+					handOver(answers, output);
+				}
+			}
+		} finally {
+			for (Subscription subscription : subscriptions) {
+				subscription.cancel();
+			}
+			try {
+				handOver(answers, output);
+			} finally {
+				output.close();
+			}
+		}
+		return lines;
+	}
+
+	/**
+	 * Hands a batch of answers over to the session output once the Trades
+	 * they acknowledge are durable.
+	 *
+	 * @param answers
+	 *            StringBuilder The answers, emptied.
+	 * @param output
+	 *            SessionWriter The session output.
+	 * @throws IOException
+	 *             When the output failed or the Trades are not journaled.
+	 */
+	private void handOver(final StringBuilder answers,
+			final SessionWriter output) throws IOException {
+		if (answers.length() == 0) {
+			return;
+		}
+		TradeJournal tradeJournal = journal;
+		if (tradeJournal != null) {
+			try {
+				tradeJournal.awaitDurable();
+			} catch (IllegalStateException e) {
+				// Ends the session rather than acknowledging its Trades.
+				throw new IOException("Trades not journaled", e);
+			}
+		}
+		output.answer(answers);
+		answers.setLength(0);
+	}
+
+	/**
+	 * Accepts connections on a loopback port and runs a session on each one
+	 * in its own thread. Does not return unless the socket fails.
+	 *
+	 * @param port
+	 *            Integer The port to listen on.
+	 * @throws IOException
+	 *             When the port can not be listened on.
+	 */
+	public void listen(final int port) throws IOException {
+		ServerSocket serverSocket = new ServerSocket(port, 50,
+				InetAddress.getLoopbackAddress());
+		try {
+			int sessions = 0;
+			while (true) {
+				final Socket socket = serverSocket.accept();
+				socket.setTcpNoDelay(true);
+				Thread session = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							serve(socket.getInputStream(),
+									socket.getOutputStream());
+						} catch (IOException e) {
+							// The client went away, nothing to answer.
+						} finally {
+							close(socket);
+						}
+					}
+				}, "headless-session-" + ++sessions);
+				session.setDaemon(true);
+				session.start();
+			}
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * Closes a client socket quietly.
+	 */
+	private static void close(final Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Already closed.
+		}
+	}
+}
@@ -0,0 +1,237 @@
+package main.java.server;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import main.java.bo.FixedPoint;
+
+/**
+ * Load generator client for the {@link TradeGateway}. Several connections
+ * send batches of random Trades for a set of symbols, the last Trade of each
+ * batch asking for an acknowledgement, and a Stock price query every few
+ * batches. Each connection waits for the answers of a batch before sending
+ * the next one, so the batch round trip is the latency reported.
+ * <p>
+ * Usage: LoadGenerator &lt;port&gt; [connections] [seconds] [batchSize]
+ * [symbols], the symbols separated by commas.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class LoadGenerator {
+	private static final int		QUERY_EVERY	= 16;
+
+	private final InetSocketAddress	address;
+	private final long[]			symbols;
+	private final int				batchSize;
+	private final AtomicLong		trades		= new AtomicLong();
+	private final AtomicLong		queries		= new AtomicLong();
+	private final AtomicLong		errors		= new AtomicLong();
+
+	/**
+	 * @param address
+	 *            InetSocketAddress The gateway address.
+	 * @param symbols
+	 *            String[] The symbols to trade.
+	 * @param batchSize
+	 *            Integer The number of Trades per batch.
+	 */
+	public LoadGenerator(final InetSocketAddress address,
+			final String[] symbols, final int batchSize) {
+		this.address = address;
+		this.symbols = new long[symbols.length];
+		for (int i = 0; i < symbols.length; i++) {
+			this.symbols[i] = GatewayProtocol.packSymbol(symbols[i]);
+		}
+		this.batchSize = batchSize;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("Usage: LoadGenerator <port> [connections] "
+					+ "[seconds] [batchSize] [symbols]");
+			return;
+		}
+		int port = Integer.parseInt(args[0]);
+		int connections = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int batchSize = args.length > 3 ? Integer.parseInt(args[3]) : 256;
+		String[] symbols = (args.length > 4 ? args[4] : "TEA,POP,ALE,GIN,JOE")
+				.split(",");
+		LoadGenerator generator = new LoadGenerator(new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), port), symbols, batchSize);
+		generator.run(connections, seconds * 1000L);
+	}
+
+	/**
+	 * Runs the connections for a time and prints the results.
+	 *
+	 * @param connections
+	 *            Integer The number of concurrent connections.
+	 * @param duration
+	 *            Long The run time in milliseconds.
+	 * @throws InterruptedException
+	 *             When interrupted while waiting for the connections.
+	 */
+	public void run(final int connections, final long duration)
+			throws InterruptedException {
+		final long deadline = System.nanoTime() + duration * 1000000L;
+		final long[][] latencies = new long[connections][];
+		Thread[] threads = new Thread[connections];
+		for (int i = 0; i < connections; i++) {
+			final int connection = i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						latencies[connection] = runConnection(connection,
+								deadline);
+					} catch (IOException e) {
+						errors.incrementAndGet();
+						latencies[connection] = new long[0];
+						System.out.println("Connection " + connection
+								+ " failed: " + e.getMessage());
+					}
+				}
+			}, "load-generator-" + i);
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		int batches = 0;
+		for (long[] connectionLatencies : latencies) {
+			batches += connectionLatencies.length;
+		}
+		long[] all = new long[batches];
+		int position = 0;
+		for (long[] connectionLatencies : latencies) {
+			System.arraycopy(connectionLatencies, 0, all, position,
+					connectionLatencies.length);
+			position += connectionLatencies.length;
+		}
+		Arrays.sort(all);
+		double seconds = duration / 1000.0;
+		System.out.printf("%d connections, %d Trades (%.0f/s), %d queries, "
+				+ "%d errors%n", connections, trades.get(), trades.get()
+				/ seconds, queries.get(), errors.get());
+		if (all.length > 0) {
+			System.out.printf("Batch of %d round trip us: p50 %.1f, p99 %.1f, "
+					+ "max %.1f%n", batchSize, percentile(all, 0.5) / 1000.0,
+					percentile(all, 0.99) / 1000.0,
+					all[all.length - 1] / 1000.0);
+		}
+	}
+
+	/**
+	 * Sends batches on one connection until the deadline.
+	 *
+	 * @param connection
+	 *            Integer The connection number, seeding its Trades.
+	 * @param deadline
+	 *            Long The System.nanoTime() to stop at.
+	 * @return long[] The round trip of every batch in nanoseconds.
+	 * @throws IOException
+	 *             When the connection fails.
+	 */
+	private long[] runConnection(final int connection, final long deadline)
+			throws IOException {
+		Random random = new Random(connection);
+		ByteBuffer out = ByteBuffer.allocateDirect(batchSize
+				* GatewayProtocol.TRADE_SIZE + GatewayProtocol.QUERY_SIZE);
+		ByteBuffer in = ByteBuffer
+				.allocateDirect(GatewayProtocol.RESPONSE_SIZE * 64);
+		long[] latencies = new long[1024];
+		int batches = 0;
+		int requestId = 0;
+		SocketChannel channel = SocketChannel.open(address);
+		try {
+			channel.socket().setTcpNoDelay(true);
+			while (System.nanoTime() < deadline) {
+				out.clear();
+				for (int i = 0; i < batchSize; i++) {
+					byte flags = random.nextBoolean() ? GatewayProtocol.FLAG_SELL
+							: 0;
+					if (i == batchSize - 1) {
+						flags |= GatewayProtocol.FLAG_ACK;
+					}
+					GatewayProtocol.putTrade(out, ++requestId,
+							symbols[random.nextInt(symbols.length)], 0,
+							1 + random.nextInt(1000),
+							FixedPoint.fromPennies(1 + random.nextInt(500)),
+							flags);
+				}
+				int ackId = requestId;
+				int queryId = 0;
+				if (batches % QUERY_EVERY == 0) {
+					queryId = ++requestId;
+					GatewayProtocol.putQuery(out, queryId,
+							GatewayProtocol.QUERY_PRICE,
+							symbols[random.nextInt(symbols.length)], 0);
+				}
+				long start = System.nanoTime();
+				out.flip();
+				while (out.hasRemaining()) {
+					channel.write(out);
+				}
+				boolean acked = false;
+				boolean answered = queryId == 0;
+				while (!acked || !answered) {
+					readResponse(channel, in);
+					byte type = in.get();
+					int answeredId = in.getInt();
+					in.getLong();
+					if (type == GatewayProtocol.ERROR) {
+						errors.incrementAndGet();
+					}
+					acked |= answeredId == ackId;
+					answered |= answeredId == queryId;
+				}
+				if (batches == latencies.length) {
+					latencies = Arrays.copyOf(latencies, batches * 2);
+				}
+				latencies[batches++] = System.nanoTime() - start;
+				trades.addAndGet(batchSize);
+				if (queryId != 0) {
+					queries.incrementAndGet();
+				}
+			}
+		} finally {
+			channel.close();
+		}
+		return Arrays.copyOf(latencies, batches);
+	}
+
+	/**
+	 * Reads one whole response into a buffer, left ready to decode.
+	 */
+	private static void readResponse(final SocketChannel channel,
+			final ByteBuffer in) throws IOException {
+		in.clear().limit(GatewayProtocol.RESPONSE_SIZE);
+		while (in.hasRemaining()) {
+			if (channel.read(in) < 0) {
+				throw new EOFException("Gateway closed the connection");
+			}
+		}
+		in.flip();
+	}
+
+	/**
+	 * @param sorted
+	 *            long[] Sorted values.
+	 * @param fraction
+	 *            Double The percentile as a fraction.
+	 * @return Long The value at the percentile.
+	 */
+	private static long percentile(final long[] sorted, final double fraction) {
+		return sorted[Math.min(sorted.length - 1,
+				(int) (sorted.length * fraction))];
+	}
+}
@@ -0,0 +1,216 @@
+package main.java.server;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import main.java.bo.CommonStock;
+import main.java.bo.FixedPoint;
+import main.java.bo.impl.AbstractStock;
+import main.java.clock.SimulatedClock;
+import main.java.metrics.LatencyHistogram;
+import main.java.model.StockRegistry;
+import main.java.model.ValueLoader;
+
+/**
+ * Market simulation harness. Several producer threads record generated
+ * Trades straight into the Stocks of the {@link ValueLoader}, paced at a
+ * target rate, with a Stock price query every few Trades, and the sustained
+ * throughput and the latency percentiles are reported at the end.
+ * <p>
+ * The run is deterministic: every producer draws its Trades from its own
+ * seeded random stream, and every Trade is stamped with the time of its
+ * slot in the schedule on a {@link SimulatedClock}, so the same arguments
+ * replay the same Trade streams. Latencies are measured from the scheduled
+ * time of each Trade, so a producer falling behind counts the wait of the
+ * Trades queued behind it.
+ * <p>
+ * Usage: MarketSimulator [producers] [rate] [seconds] [symbols] [seed], the
+ * rate in Trades per second across all producers (0 for as fast as
+ * possible). Symbols beyond those of the ValueLoader are added as common
+ * Stocks without dividend.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class MarketSimulator {
+	/** Simulated time of the first Trade: 2026-01-01T00:00:00Z. */
+	private static final long			SIMULATION_START	= TimeUnit.SECONDS
+																	.toNanos(1767225600L);
+	/** Simulated time between Trades when the rate is not paced. */
+	private static final long			UNPACED_INTERVAL	= 1000;
+	private static final int			QUERY_EVERY			= 64;
+	private static final long			SPIN_NANOS			= TimeUnit.MICROSECONDS
+																	.toNanos(50);
+	private static final long			TICKER_TIME			= TimeUnit.MINUTES
+																	.toNanos(15);
+
+	private final AbstractStock[]		stocks;
+	private final SimulatedClock		clock				= new SimulatedClock(
+																	SIMULATION_START);
+	private final long					rate;
+	private final long					seed;
+	private final AtomicLong			trades				= new AtomicLong();
+	private final AtomicLong			queries				= new AtomicLong();
+	private final LatencyHistogram		tradeLatency		= new LatencyHistogram(
+																	"recordTrade");
+	private final LatencyHistogram		queryLatency		= new LatencyHistogram(
+																	"getStockPrice");
+
+	/**
+	 * @param registry
+	 *            StockRegistry The Stocks to trade. Its clock is replaced by
+	 *            the simulated clock.
+	 * @param rate
+	 *            Long The target Trades per second across all producers, 0
+	 *            for as fast as possible.
+	 * @param seed
+	 *            Long The seed of the Trade streams.
+	 */
+	public MarketSimulator(final StockRegistry registry, final long rate,
+			final long seed) {
+		List<AbstractStock> listed = registry.getStocks();
+		this.stocks = listed.toArray(new AbstractStock[listed.size()]);
+		this.rate = rate;
+		this.seed = seed;
+		registry.setClock(clock);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int producers = args.length > 0 ? Integer.parseInt(args[0]) : Runtime
+				.getRuntime().availableProcessors();
+		long rate = args.length > 1 ? Long.parseLong(args[1]) : 1000000;
+		int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+		int symbols = args.length > 3 ? Integer.parseInt(args[3]) : 0;
+		long seed = args.length > 4 ? Long.parseLong(args[4]) : 42;
+		StockRegistry registry = new ValueLoader().loadDummyValues();
+		for (int i = registry.size(); i < symbols; i++) {
+			registry.register(new CommonStock(String.format("S%03d", i), 0,
+					100));
+		}
+		MarketSimulator simulator = new MarketSimulator(registry, rate, seed);
+		simulator.run(producers, TimeUnit.SECONDS.toNanos(seconds));
+	}
+
+	/**
+	 * Runs the producers for a time and prints the results.
+	 *
+	 * @param producers
+	 *            Integer The number of producer threads.
+	 * @param duration
+	 *            Long The run time in nanoseconds.
+	 * @throws InterruptedException
+	 *             When interrupted while waiting for the producers.
+	 */
+	public void run(final int producers, final long duration)
+			throws InterruptedException {
+		final long startTime = System.nanoTime();
+		final long deadline = startTime + duration;
+		Thread[] threads = new Thread[producers];
+		for (int i = 0; i < producers; i++) {
+			final int producer = i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					produce(producer, producers, startTime, deadline);
+				}
+			}, "market-simulator-" + i);
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		double seconds = (System.nanoTime() - startTime) / 1e9;
+		System.out.printf("%d producers, %d symbols, %d Trades (%.0f/s, "
+				+ "target %s), %d queries%n", producers, stocks.length,
+				trades.get(), trades.get() / seconds, rate == 0 ? "unpaced"
+						: rate + "/s", queries.get());
+		print(tradeLatency.snapshot());
+		print(queryLatency.snapshot());
+	}
+
+	/**
+	 * Records the Trades of one producer until the deadline. Trade number k
+	 * of producer p takes the slot k * producers + p of the schedule.
+	 *
+	 * @param producer
+	 *            Integer The producer number, seeding its Trades.
+	 * @param producers
+	 *            Integer The number of producers.
+	 * @param startTime
+	 *            Long The System.nanoTime() the schedule starts at.
+	 * @param deadline
+	 *            Long The System.nanoTime() to stop at.
+	 */
+	private void produce(final int producer, final int producers,
+			final long startTime, final long deadline) {
+		Random random = new Random(seed * 31 + producer);
+		long[] prices = new long[stocks.length];
+		for (int i = 0; i < stocks.length; i++) {
+			prices[i] = stocks[i].getParValue();
+		}
+		long wallInterval = rate == 0 ? 0 : TimeUnit.SECONDS.toNanos(1)
+				* producers / rate;
+		long simulatedInterval = rate == 0 ? UNPACED_INTERVAL : TimeUnit.SECONDS
+				.toNanos(1) / rate;
+		long count = 0;
+		long now = System.nanoTime();
+		while (now < deadline) {
+			long scheduled = rate == 0 ? now : startTime + count * wallInterval;
+			if (scheduled >= deadline) {
+				break;
+			}
+			waitUntil(scheduled);
+			int symbol = random.nextInt(stocks.length);
+			long step = prices[symbol] / 200 + 1;
+			prices[symbol] = Math.max(FixedPoint.fromPennies(1), prices[symbol]
+					+ step * (random.nextInt(3) - 1));
+			long timestamp = SIMULATION_START + (count * producers + producer)
+					* simulatedInterval;
+			clock.advanceTo(timestamp);
+			stocks[symbol].recordTrade(1 + random.nextInt(1000),
+					prices[symbol], random.nextBoolean(), timestamp);
+			now = System.nanoTime();
+			tradeLatency.record(now - scheduled);
+			count++;
+			if (count % QUERY_EVERY == 0) {
+				long queryStart = now;
+				stocks[random.nextInt(stocks.length)].getStockPrice(TICKER_TIME);
+				now = System.nanoTime();
+				queryLatency.record(now - queryStart);
+				queries.incrementAndGet();
+			}
+		}
+		trades.addAndGet(count);
+	}
+
+	/**
+	 * Parks, then spins, until a System.nanoTime().
+	 */
+	private static void waitUntil(final long time) {
+		long wait = time - System.nanoTime();
+		while (wait > 0) {
+			if (wait > SPIN_NANOS) {
+				LockSupport.parkNanos(wait - SPIN_NANOS);
+			}
+			wait = time - System.nanoTime();
+		}
+	}
+
+	/**
+	 * Prints the latency percentiles of a histogram in microseconds.
+	 */
+	private static void print(final LatencyHistogram.Snapshot snapshot) {
+		System.out.printf("%s latency us: count %d, mean %.1f, p50 %.1f, "
+				+ "p99 %.1f, p99.9 %.1f, p99.99 %.1f, max %.1f%n",
+				snapshot.getName(), snapshot.getCount(),
+				snapshot.getMean() / 1000.0,
+				snapshot.getValueAtPercentile(50) / 1000.0,
+				snapshot.getValueAtPercentile(99) / 1000.0,
+				snapshot.getValueAtPercentile(99.9) / 1000.0,
+				snapshot.getValueAtPercentile(99.99) / 1000.0,
+				snapshot.getMax() / 1000.0);
+	}
+}
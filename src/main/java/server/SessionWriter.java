@@ -0,0 +1,173 @@
+package main.java.server;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Output of a headless session, written by a thread of its own so that no
+ * other thread ever blocks on a slow client. The session hands its answers
+ * over in batches, which are written in order; the subscriptions of the
+ * session hand over their updates, of which only the latest one of each
+ * subscription is kept until the thread gets to it. Updates are written
+ * between two batches of answers, never inside one.
+ * <p>
+ * A client that stops reading holds back only the writer thread and,
+ * once {@link #MAX_PENDING} characters of answers are waiting, the session
+ * handing over more; the publisher threads delivering updates never wait.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class SessionWriter {
+	public static final int				MAX_PENDING	= 256 * 1024;
+
+	private final Writer				writer;
+	private final StringBuilder			answers		= new StringBuilder();
+	private final Map<Object, String>	updates		= new LinkedHashMap<Object, String>();
+	private final Thread				thread;
+	private boolean						closed		= false;
+	private IOException					failure		= null;
+
+	/**
+	 * Starts the writer thread.
+	 *
+	 * @param writer
+	 *            Writer The session stream, only written by the thread.
+	 * @param name
+	 *            String The name of the thread.
+	 */
+	public SessionWriter(final Writer writer, final String name) {
+		this.writer = writer;
+		this.thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeLoop();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Hands a batch of answers over, waiting while too many are waiting to
+	 * be written.
+	 *
+	 * @param batch
+	 *            CharSequence Complete answer lines.
+	 * @throws IOException
+	 *             When the stream failed or the writer is closed.
+	 */
+	public synchronized void answer(final CharSequence batch)
+			throws IOException {
+		while (failure == null && !closed
+				&& answers.length() >= MAX_PENDING) {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted writing answers", e);
+			}
+		}
+		checkOpen();
+		answers.append(batch);
+		notifyAll();
+	}
+
+	/**
+	 * Hands an update over without waiting, replacing the update of the
+	 * same subscription not written yet. Dropped once the writer is closed.
+	 *
+	 * @param subscription
+	 *            Object The subscription the update belongs to.
+	 * @param line
+	 *            String The complete update line.
+	 */
+	public synchronized void update(final Object subscription,
+			final String line) {
+		if (!closed && failure == null) {
+			updates.put(subscription, line);
+			notifyAll();
+		}
+	}
+
+	/**
+	 * Writes what was handed over and stops the writer thread.
+	 *
+	 * @throws IOException
+	 *             When the stream failed.
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			closed = true;
+			notifyAll();
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (this) {
+			if (failure != null) {
+				throw failure;
+			}
+		}
+	}
+
+	/**
+	 * Body of the writer thread: writes and sends whatever was handed over,
+	 * answers first, until closed.
+	 */
+	private void writeLoop() {
+		StringBuilder batch = new StringBuilder();
+		List<String> lines = new ArrayList<String>();
+		try {
+			while (true) {
+				synchronized (this) {
+					while (answers.length() == 0 && updates.isEmpty()
+							&& !closed) {
+						wait();
+					}
+					if (answers.length() == 0 && updates.isEmpty()) {
+						return;
+					}
+					batch.append(answers);
+					answers.setLength(0);
+					lines.addAll(updates.values());
+					updates.clear();
+					notifyAll();
+				}
+				writer.append(batch);
+				for (String line : lines) {
+					writer.write(line);
+				}
+				writer.flush();
+				batch.setLength(0);
+				lines.clear();
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				failure = e;
+				notifyAll();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @throws IOException
+	 *             When the stream failed or the writer is closed.
+	 */
+	private void checkOpen() throws IOException {
+		if (failure != null) {
+			throw failure;
+		}
+		if (closed) {
+			throw new IOException("Session writer closed");
+		}
+	}
+}
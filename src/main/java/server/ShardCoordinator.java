@@ -0,0 +1,396 @@
+package main.java.server;
+
+import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import main.java.bo.FixedPoint;
+import main.java.model.IndexPartials;
+
+/**
+ * Coordinator of a cluster of engine nodes, each started with
+ * <code>--gateway &lt;port&gt; --shard &lt;index&gt;/&lt;count&gt;</code> and
+ * owning the Stocks the {@link ShardRing} places on it. Trades and Stock
+ * queries are routed to the gateway of the owner; the All Share Index is
+ * merged from the {@link IndexPartials} of every node, so no Trade leaves
+ * its node.
+ * <p>
+ * Usage: ShardCoordinator &lt;port&gt;[,&lt;port&gt;...], the gateway ports
+ * of the nodes on the loopback address in shard order. The coordinator then
+ * reads the RECORD, PRICE, YIELD, PE, INDEX and QUIT commands of the
+ * {@link CommandProcessor} line protocol from the standard input and
+ * answers them the same way, with the Stock prices as decimal pennies.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class ShardCoordinator {
+	private final ShardRing		ring;
+	private final NodeClient[]	nodes;
+
+	/**
+	 * Connects to every node.
+	 *
+	 * @param addresses
+	 *            List<InetSocketAddress> The gateway addresses of the nodes
+	 *            in shard order.
+	 * @throws IOException
+	 *             When a node can not be reached.
+	 */
+	public ShardCoordinator(final List<InetSocketAddress> addresses)
+			throws IOException {
+		this.ring = new ShardRing(addresses.size());
+		this.nodes = new NodeClient[addresses.size()];
+		try {
+			for (int i = 0; i < nodes.length; i++) {
+				nodes[i] = new NodeClient(addresses.get(i));
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			System.out.println("Usage: ShardCoordinator <port>[,<port>...]");
+			return;
+		}
+		List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+		for (String port : args[0].split(",")) {
+			addresses.add(new InetSocketAddress(InetAddress
+					.getLoopbackAddress(), Integer.parseInt(port.trim())));
+		}
+		ShardCoordinator coordinator = new ShardCoordinator(addresses);
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(
+					System.in, StandardCharsets.US_ASCII));
+			PrintWriter writer = new PrintWriter(System.out);
+			String line;
+			while ((line = reader.readLine()) != null) {
+				String trimmed = line.trim();
+				if (trimmed.isEmpty() || trimmed.charAt(0) == '#') {
+					continue;
+				}
+				if ("QUIT".equalsIgnoreCase(trimmed)) {
+					break;
+				}
+				writer.println(coordinator.execute(trimmed.split("\\s+")));
+				if (!reader.ready()) {
+					writer.flush();
+				}
+			}
+			writer.flush();
+		} finally {
+			coordinator.close();
+		}
+	}
+
+	/**
+	 * Executes a command of the line protocol against the cluster.
+	 *
+	 * @param fields
+	 *            String[] The command and its arguments.
+	 * @return String The answer line.
+	 * @throws IOException
+	 *             When a node fails.
+	 */
+	public String execute(final String[] fields) throws IOException {
+		String command = fields[0];
+		try {
+			if ("RECORD".equalsIgnoreCase(command)) {
+				checkFields(fields, 5, 6);
+				boolean sell;
+				if ("S".equalsIgnoreCase(fields[4])) {
+					sell = true;
+				} else if ("B".equalsIgnoreCase(fields[4])) {
+					sell = false;
+				} else {
+					throw new IllegalArgumentException("not B or S "
+							+ fields[4]);
+				}
+				long timestamp = fields.length > 5 ? TimeUnit.MILLISECONDS
+						.toNanos(Long.parseLong(fields[5])) : 0;
+				return "OK "
+						+ recordTrade(fields[1], Integer.parseInt(fields[2]),
+								FixedPoint.parse(fields[3]), sell, timestamp);
+			} else if ("PRICE".equalsIgnoreCase(command)) {
+				checkFields(fields, 2, 3);
+				long window = fields.length > 2 ? TimeUnit.MILLISECONDS
+						.toNanos(Long.parseLong(fields[2])) : 0;
+				// Back to fixed point units, printed as a single node does.
+				long price = Math.round(query(GatewayProtocol.QUERY_PRICE,
+						fields[1], window) * FixedPoint.SCALE);
+				return "PRICE " + fields[1] + " " + FixedPoint.format(price);
+			} else if ("YIELD".equalsIgnoreCase(command)) {
+				checkFields(fields, 2, 2);
+				return "YIELD " + fields[1] + " "
+						+ query(GatewayProtocol.QUERY_YIELD, fields[1], 0);
+			} else if ("PE".equalsIgnoreCase(command)) {
+				checkFields(fields, 2, 2);
+				return "PE " + fields[1] + " "
+						+ query(GatewayProtocol.QUERY_PE, fields[1], 0);
+			} else if ("INDEX".equalsIgnoreCase(command)) {
+				checkFields(fields, 1, 1);
+				return "INDEX " + getAllShareIndex();
+			}
+			throw new IllegalArgumentException("unknown command " + command);
+		} catch (NumberFormatException e) {
+			return "ERROR not a number " + e.getMessage();
+		} catch (IllegalArgumentException e) {
+			return "ERROR " + e.getMessage();
+		}
+	}
+
+	/**
+	 * Records a Trade on the node owning its Stock.
+	 *
+	 * @param symbol
+	 *            String The Stock symbol.
+	 * @param shares
+	 *            Integer The Trade shares.
+	 * @param price
+	 *            Long The Trade price in fixed point units.
+	 * @param sell
+	 *            Boolean True for a sell Trade.
+	 * @param timestamp
+	 *            Long The Trade time in nanoseconds, 0 for the node time.
+	 * @return Integer The tradeId of the Trade on its node.
+	 * @throws IOException
+	 *             When the node fails.
+	 * @throws IllegalArgumentException
+	 *             When the symbol is too long or the node rejects the Trade.
+	 */
+	public int recordTrade(final String symbol, final int shares,
+			final long price, final boolean sell, final long timestamp)
+			throws IOException {
+		long packed = pack(symbol);
+		return (int) nodes[ring.ownerOf(packed)].trade(packed, timestamp,
+				shares, price, sell);
+	}
+
+	/**
+	 * Asks a Stock query to the node owning the Stock.
+	 *
+	 * @param query
+	 *            Byte QUERY_PRICE, QUERY_YIELD or QUERY_PE.
+	 * @param symbol
+	 *            String The Stock symbol.
+	 * @param window
+	 *            Long The Stock price window in nanoseconds, 0 for the
+	 *            default.
+	 * @return Double The answer, with Stock prices in pennies.
+	 * @throws IOException
+	 *             When the node fails.
+	 * @throws IllegalArgumentException
+	 *             When the symbol is too long or the node rejects the query.
+	 */
+	public double query(final byte query, final String symbol,
+			final long window) throws IOException {
+		long packed = pack(symbol);
+		return nodes[ring.ownerOf(packed)].query(query, packed, window);
+	}
+
+	/**
+	 * Calculate the GBCE All Share Index of every node from their totals.
+	 *
+	 * @return Double The All Share Index or NaN when there are no Trades.
+	 * @throws IOException
+	 *             When a node fails.
+	 */
+	public double getAllShareIndex() throws IOException {
+		IndexPartials partials = IndexPartials.EMPTY;
+		for (NodeClient node : nodes) {
+			partials = partials.merge(node.indexParts());
+		}
+		return partials.getValue();
+	}
+
+	/**
+	 * @param symbol
+	 *            String The Stock symbol.
+	 * @return Integer The node owning the Stock.
+	 */
+	public int ownerOf(final String symbol) {
+		return ring.ownerOf(symbol);
+	}
+
+	/**
+	 * Closes the connections to the nodes.
+	 */
+	public void close() {
+		for (NodeClient node : nodes) {
+			if (node != null) {
+				node.close();
+			}
+		}
+	}
+
+	/**
+	 * @param symbol
+	 *            String The Stock symbol.
+	 * @return Long The packed symbol.
+	 * @throws IllegalArgumentException
+	 *             When the symbol does not fit in the 8 bytes of the wire,
+	 *             where it would be truncated into another one.
+	 */
+	private static long pack(final String symbol) {
+		if (symbol.length() > GatewayProtocol.SYMBOL_SIZE) {
+			throw new IllegalArgumentException("symbol longer than "
+					+ GatewayProtocol.SYMBOL_SIZE + " characters " + symbol);
+		}
+		return GatewayProtocol.packSymbol(symbol);
+	}
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             When the number of fields is out of range.
+	 */
+	private static void checkFields(final String[] fields,
+			final int minFields, final int maxFields) {
+		if (fields.length < minFields || fields.length > maxFields) {
+			throw new IllegalArgumentException("wrong number of arguments");
+		}
+	}
+
+	/**
+	 * Blocking connection to the gateway of one node, carrying one request
+	 * at a time.
+	 */
+	private static final class NodeClient {
+		private final SocketChannel	channel;
+		private final ByteBuffer	out			= ByteBuffer
+														.allocateDirect(GatewayProtocol.TRADE_SIZE);
+		private final ByteBuffer	in			= ByteBuffer
+														.allocateDirect(GatewayProtocol.INDEX_PARTS_SIZE);
+		private int					requestId	= 0;
+
+		private NodeClient(final InetSocketAddress address)
+				throws IOException {
+			this.channel = SocketChannel.open(address);
+			channel.socket().setTcpNoDelay(true);
+		}
+
+		private synchronized long trade(final long symbol,
+				final long timestamp, final int shares, final long price,
+				final boolean sell) throws IOException {
+			out.clear();
+			byte flags = GatewayProtocol.FLAG_ACK;
+			if (sell) {
+				flags |= GatewayProtocol.FLAG_SELL;
+			}
+			GatewayProtocol.putTrade(out, ++requestId, symbol, timestamp,
+					shares, price, flags);
+			return call(symbol);
+		}
+
+		private synchronized double query(final byte query,
+				final long symbol, final long window) throws IOException {
+			out.clear();
+			GatewayProtocol.putQuery(out, ++requestId, query, symbol, window);
+			return Double.longBitsToDouble(call(symbol));
+		}
+
+		private synchronized IndexPartials indexParts() throws IOException {
+			out.clear();
+			GatewayProtocol.putQuery(out, ++requestId,
+					GatewayProtocol.QUERY_INDEX_PARTS, 0, 0);
+			send();
+			byte type = receive();
+			if (type != GatewayProtocol.INDEX_PARTS) {
+				throw new IOException("Unexpected answer type " + type);
+			}
+			return new IndexPartials(in.getDouble(), in.getLong(),
+					in.getLong());
+		}
+
+		/**
+		 * Sends the request in the output buffer and reads its RESPONSE.
+		 *
+		 * @param symbol
+		 *            Long The packed symbol of the request.
+		 * @return Long The value of the response.
+		 * @throws IllegalArgumentException
+		 *             When the node answers an error.
+		 */
+		private long call(final long symbol) throws IOException {
+			send();
+			byte type = receive();
+			long value = in.getLong();
+			if (type == GatewayProtocol.ERROR) {
+				throw new IllegalArgumentException(errorMessage(value, symbol));
+			}
+			if (type != GatewayProtocol.ACK && type != GatewayProtocol.VALUE) {
+				throw new IOException("Unexpected answer type " + type);
+			}
+			return value;
+		}
+
+		private void send() throws IOException {
+			out.flip();
+			while (out.hasRemaining()) {
+				channel.write(out);
+			}
+		}
+
+		/**
+		 * Reads the answer to the last request, left in the input buffer
+		 * after its request id.
+		 *
+		 * @return Byte The answer type.
+		 */
+		private byte receive() throws IOException {
+			in.clear().limit(1);
+			read();
+			byte type = in.get(0);
+			in.limit(type == GatewayProtocol.INDEX_PARTS ? GatewayProtocol.INDEX_PARTS_SIZE
+					: GatewayProtocol.RESPONSE_SIZE);
+			read();
+			in.flip();
+			in.get();
+			if (in.getInt() != requestId) {
+				throw new IOException("Answer out of order");
+			}
+			return type;
+		}
+
+		private void read() throws IOException {
+			while (in.hasRemaining()) {
+				if (channel.read(in) < 0) {
+					throw new EOFException("Node closed the connection");
+				}
+			}
+		}
+
+		private static String errorMessage(final long code, final long symbol) {
+			if (code == GatewayProtocol.ERROR_UNKNOWN_STOCK) {
+				return "unknown stock " + GatewayProtocol.unpackSymbol(symbol);
+			}
+			if (code == GatewayProtocol.ERROR_INVALID_TRADE) {
+				return "negative shares or price";
+			}
+			if (code == GatewayProtocol.ERROR_JOURNAL) {
+				return "recorded but not journaled";
+			}
+			return "unknown query";
+		}
+
+		private void close() {
+			try {
+				channel.close();
+			} catch (IOException e) {
+				// Nothing left to do with the connection.
+			}
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package main.java.server;
+
+import java.util.Arrays;
+
+/**
+ * Consistent hash ring placing the Stock symbols on a set of engine nodes.
+ * Every node takes a number of points on the ring and a symbol belongs to
+ * the node of the first point at or after its own hash, so adding a node
+ * only moves the symbols landing on its new points.
+ * <p>
+ * The hashes depend only on the packed symbol and the node numbers, so every
+ * process of a cluster built with the same node count places every symbol
+ * on the same node.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public final class ShardRing {
+	public static final int		DEFAULT_VIRTUAL_NODES	= 64;
+
+	private static final long	NODE_MASK				= 0xFFFFL;
+
+	private final int			nodeCount;
+	private final long[]		points;
+	private final int[]			owners;
+
+	/**
+	 * @param nodeCount
+	 *            Integer The number of nodes.
+	 */
+	public ShardRing(final int nodeCount) {
+		this(nodeCount, DEFAULT_VIRTUAL_NODES);
+	}
+
+	/**
+	 * @param nodeCount
+	 *            Integer The number of nodes.
+	 * @param virtualNodes
+	 *            Integer The number of points of every node on the ring.
+	 */
+	public ShardRing(final int nodeCount, final int virtualNodes) {
+		if (nodeCount < 1 || nodeCount > NODE_MASK || virtualNodes < 1) {
+			throw new IllegalArgumentException("Shard ring needs nodes");
+		}
+		this.nodeCount = nodeCount;
+		int size = nodeCount * virtualNodes;
+		long[] keys = new long[size];
+		for (int node = 0; node < nodeCount; node++) {
+			for (int point = 0; point < virtualNodes; point++) {
+				// The low bits carry the node through the sort.
+				keys[node * virtualNodes + point] = (mix(((long) node << 32)
+						| point) & ~NODE_MASK)
+						| node;
+			}
+		}
+		Arrays.sort(keys);
+		this.points = keys;
+		this.owners = new int[size];
+		for (int i = 0; i < size; i++) {
+			owners[i] = (int) (keys[i] & NODE_MASK);
+		}
+	}
+
+	/**
+	 * @param symbol
+	 *            String The Stock symbol.
+	 * @return Integer The node owning the symbol.
+	 */
+	public int ownerOf(final String symbol) {
+		return ownerOf(GatewayProtocol.packSymbol(symbol));
+	}
+
+	/**
+	 * @param symbol
+	 *            Long The Stock symbol packed by
+	 *            {@link GatewayProtocol#packSymbol(String)}.
+	 * @return Integer The node owning the symbol.
+	 */
+	public int ownerOf(final long symbol) {
+		int position = Arrays.binarySearch(points, mix(symbol));
+		if (position < 0) {
+			position = -position - 1;
+		}
+		return owners[position == points.length ? 0 : position];
+	}
+
+	/**
+	 * @return Integer The number of nodes.
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * Spreads the bits of a key over the whole long (the MurmurHash3
+	 * finalizer).
+	 */
+	private static long mix(final long key) {
+		long hash = key;
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
@@ -0,0 +1,481 @@
+package main.java.server;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import main.java.bo.FixedPoint;
+import main.java.bo.impl.AbstractStock;
+import main.java.model.AllShareIndex;
+import main.java.model.IndexPartials;
+import main.java.model.StockRegistry;
+import main.java.model.TradeJournal;
+
+/**
+ * Non blocking TCP gateway for Trade ingestion and queries, speaking the
+ * binary {@link GatewayProtocol}. Accepted connections are spread over a
+ * fixed set of I/O threads, each with its own selector; a thread decodes the
+ * requests of its connections straight from their direct buffers and
+ * records the Trades into the Stocks, answering into direct buffers that are
+ * written back when the socket takes them.
+ * <p>
+ * A connection whose answers can not be written stops being read until they
+ * are, so a slow client holds back only itself. Trades recorded through the
+ * gateway reach the Trade listener of their Stock as any other Trade. With a
+ * {@link #setJournal(TradeJournal) journal} set, an I/O thread waits once
+ * before writing the answers of the Trades it recorded since its last
+ * write, so every ACK sent is for a durable Trade and one fsync covers all
+ * the Trades read in one pass.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class TradeGateway {
+	private static final int		BUFFER_SIZE		= 64 * 1024;
+
+	private final StockRegistry		registry;
+	private final AllShareIndex		allShareIndex;
+	private final long				tickerTime;
+	private final IoLoop[]			loops;
+	private ServerSocketChannel		serverChannel;
+	private Thread					acceptor;
+	private volatile boolean		running			= false;
+	private volatile TradeJournal	journal			= null;
+
+	/**
+	 * @param registry
+	 *            StockRegistry The Stocks receiving the Trades.
+	 * @param allShareIndex
+	 *            AllShareIndex The index answering the index queries.
+	 * @param tickerTime
+	 *            Long The default Stock price window in nanoseconds.
+	 * @param ioThreads
+	 *            Integer The number of I/O threads.
+	 */
+	public TradeGateway(final StockRegistry registry,
+			final AllShareIndex allShareIndex, final long tickerTime,
+			final int ioThreads) {
+		this.registry = registry;
+		this.allShareIndex = allShareIndex;
+		this.tickerTime = tickerTime;
+		this.loops = new IoLoop[Math.max(1, ioThreads)];
+	}
+
+	/**
+	 * @param journal
+	 *            TradeJournal The journal the Trades must be durable in
+	 *            before they are acknowledged, or null for none.
+	 */
+	public void setJournal(final TradeJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Binds the gateway and starts its threads.
+	 *
+	 * @param address
+	 *            InetSocketAddress The address to listen on.
+	 * @throws IOException
+	 *             When the address can not be bound.
+	 */
+	public void start(final InetSocketAddress address) throws IOException {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(address);
+		running = true;
+		for (int i = 0; i < loops.length; i++) {
+			loops[i] = new IoLoop(Selector.open());
+			Thread thread = new Thread(loops[i], "trade-gateway-io-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		acceptor = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				acceptLoop();
+			}
+		}, "trade-gateway-acceptor");
+		acceptor.setDaemon(true);
+		acceptor.start();
+	}
+
+	/**
+	 * @return Integer The port the gateway listens on.
+	 */
+	public int getPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * Stops accepting and closes every connection.
+	 *
+	 * @throws IOException
+	 *             When the listening socket can not be closed.
+	 */
+	public void close() throws IOException {
+		running = false;
+		serverChannel.close();
+		for (IoLoop loop : loops) {
+			if (loop != null) {
+				loop.selector.wakeup();
+			}
+		}
+	}
+
+	/**
+	 * Body of the acceptor thread: hands every accepted connection to the
+	 * I/O threads in turn.
+	 */
+	private void acceptLoop() {
+		int next = 0;
+		while (running) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				IoLoop loop = loops[next];
+				next = (next + 1) % loops.length;
+				loop.accepted.add(channel);
+				loop.selector.wakeup();
+			} catch (IOException e) {
+				// Closed by close(), or a connection that failed to set up.
+			}
+		}
+	}
+
+	/**
+	 * Selector loop of one I/O thread.
+	 */
+	private final class IoLoop implements Runnable {
+		private final Selector				selector;
+		private final Queue<SocketChannel>	accepted	= new ConcurrentLinkedQueue<SocketChannel>();
+		private final SymbolCache			symbols		= new SymbolCache();
+		private boolean						unsynced	= false;
+
+		private IoLoop(final Selector selector) {
+			this.selector = selector;
+		}
+
+		@Override
+		public void run() {
+			try {
+				while (running) {
+					selector.select();
+					registerAccepted();
+					Iterator<SelectionKey> keys = selector.selectedKeys()
+							.iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						Connection connection = (Connection) key.attachment();
+						try {
+							if (key.isValid() && key.isWritable()) {
+								onWritable(key, connection);
+							}
+							if (key.isValid() && key.isReadable()) {
+								onReadable(key, connection);
+							}
+						} catch (IOException e) {
+							closeConnection(key);
+						}
+					}
+				}
+			} catch (IOException e) {
+				// The selector failed; the connections are closed below.
+			} finally {
+				for (SelectionKey key : selector.keys()) {
+					closeConnection(key);
+				}
+				try {
+					selector.close();
+				} catch (IOException e) {
+					// Nothing left to release.
+				}
+			}
+		}
+
+		/**
+		 * Registers the connections handed over by the acceptor.
+		 */
+		private void registerAccepted() throws ClosedChannelException {
+			SocketChannel channel;
+			while ((channel = accepted.poll()) != null) {
+				channel.register(selector, SelectionKey.OP_READ,
+						new Connection(channel));
+			}
+		}
+
+		/**
+		 * Reads what the socket has and processes the complete requests.
+		 */
+		private void onReadable(final SelectionKey key,
+				final Connection connection) throws IOException {
+			if (connection.channel.read(connection.in) < 0) {
+				closeConnection(key);
+				return;
+			}
+			process(key, connection);
+		}
+
+		/**
+		 * Writes the pending answers and, once they are all written, goes
+		 * back to the requests left unprocessed.
+		 */
+		private void onWritable(final SelectionKey key,
+				final Connection connection) throws IOException {
+			if (flush(key, connection)) {
+				process(key, connection);
+			}
+		}
+
+		/**
+		 * Executes the complete requests of the input buffer while there is
+		 * room for their answers, then writes the answers.
+		 */
+		private void process(final SelectionKey key,
+				final Connection connection) throws IOException {
+			ByteBuffer in = connection.in;
+			ByteBuffer out = connection.out;
+			in.flip();
+			try {
+				while (in.hasRemaining()) {
+					int size = GatewayProtocol
+							.requestSize(in.get(in.position()));
+					if (size == 0) {
+						closeConnection(key);
+						return;
+					}
+					if (in.remaining() < size) {
+						break;
+					}
+					if (out.remaining() < GatewayProtocol.INDEX_PARTS_SIZE
+							&& !flush(key, connection)) {
+						break;
+					}
+					if (in.get() == GatewayProtocol.TRADE) {
+						trade(in, out);
+					} else {
+						query(in, out);
+					}
+				}
+			} finally {
+				in.compact();
+			}
+			flush(key, connection);
+		}
+
+		/**
+		 * Decodes a TRADE request and records it.
+		 */
+		private void trade(final ByteBuffer in, final ByteBuffer out) {
+			int requestId = in.getInt();
+			long symbol = in.getLong();
+			long timestamp = in.getLong();
+			int shares = in.getInt();
+			long price = in.getLong();
+			byte flags = in.get();
+			AbstractStock stock = symbols.lookup(symbol);
+			if (stock == null) {
+				GatewayProtocol.putResponse(out, GatewayProtocol.ERROR,
+						requestId, GatewayProtocol.ERROR_UNKNOWN_STOCK);
+				return;
+			}
+			if (shares < 0 || price < 0) {
+				GatewayProtocol.putResponse(out, GatewayProtocol.ERROR,
+						requestId, GatewayProtocol.ERROR_INVALID_TRADE);
+				return;
+			}
+			boolean sell = (flags & GatewayProtocol.FLAG_SELL) != 0;
+			int tradeId;
+			try {
+				tradeId = timestamp == 0 ? stock.recordTrade(shares, price,
+						sell) : stock.recordTrade(shares, price, sell,
+						timestamp);
+			} catch (IllegalStateException e) {
+				// Recorded but not journaled: it would not survive a restart.
+				GatewayProtocol.putResponse(out, GatewayProtocol.ERROR,
+						requestId, GatewayProtocol.ERROR_JOURNAL);
+				return;
+			}
+			unsynced = true;
+			if ((flags & GatewayProtocol.FLAG_ACK) != 0) {
+				GatewayProtocol.putResponse(out, GatewayProtocol.ACK,
+						requestId, tradeId);
+			}
+		}
+
+		/**
+		 * Decodes a QUERY request and answers it.
+		 */
+		private void query(final ByteBuffer in, final ByteBuffer out) {
+			int requestId = in.getInt();
+			byte query = in.get();
+			long symbol = in.getLong();
+			long window = in.getLong();
+			double value;
+			if (query == GatewayProtocol.QUERY_INDEX_PARTS) {
+				IndexPartials partials = allShareIndex.getPartials(registry);
+				GatewayProtocol.putIndexParts(out, requestId,
+						partials.getLogPriceSum(), partials.getTradeCount(),
+						partials.getZeroPriceTrades());
+				return;
+			} else if (query == GatewayProtocol.QUERY_INDEX) {
+				value = allShareIndex.getValue(registry);
+			} else {
+				AbstractStock stock = symbols.lookup(symbol);
+				if (stock == null) {
+					GatewayProtocol.putResponse(out, GatewayProtocol.ERROR,
+							requestId, GatewayProtocol.ERROR_UNKNOWN_STOCK);
+					return;
+				}
+				if (query == GatewayProtocol.QUERY_PRICE) {
+					value = FixedPoint.toDouble(stock
+							.getStockPrice(window == 0 ? tickerTime : window));
+				} else if (query == GatewayProtocol.QUERY_YIELD) {
+					value = stock.getDividendYield();
+				} else if (query == GatewayProtocol.QUERY_PE) {
+					value = stock.getPERatio();
+				} else {
+					GatewayProtocol.putResponse(out, GatewayProtocol.ERROR,
+							requestId, GatewayProtocol.ERROR_UNKNOWN_QUERY);
+					return;
+				}
+			}
+			GatewayProtocol.putResponse(out, GatewayProtocol.VALUE,
+					requestId, Double.doubleToLongBits(value));
+		}
+
+		/**
+		 * Writes the pending answers, reading from the connection only while
+		 * none are left. The Trades recorded since the last write are made
+		 * durable first; when the journal fails the connection is closed
+		 * rather than acknowledging them.
+		 *
+		 * @return Boolean True if every answer was written.
+		 */
+		private boolean flush(final SelectionKey key,
+				final Connection connection) throws IOException {
+			TradeJournal tradeJournal = journal;
+			if (unsynced && tradeJournal != null) {
+				try {
+					tradeJournal.awaitDurable();
+				} catch (IllegalStateException e) {
+					throw new IOException("Trades not journaled", e);
+				}
+			}
+			unsynced = false;
+			ByteBuffer out = connection.out;
+			out.flip();
+			try {
+				connection.channel.write(out);
+			} finally {
+				out.compact();
+			}
+			boolean flushed = out.position() == 0;
+			if (key.isValid()) {
+				key.interestOps(flushed ? SelectionKey.OP_READ
+						: SelectionKey.OP_WRITE);
+			}
+			return flushed;
+		}
+
+		/**
+		 * Closes a connection quietly.
+		 */
+		private void closeConnection(final SelectionKey key) {
+			key.cancel();
+			try {
+				key.channel().close();
+			} catch (IOException e) {
+				// Already closed.
+			}
+		}
+	}
+
+	/**
+	 * Buffers of a connection, both kept in write mode between events.
+	 */
+	private static final class Connection {
+		private final SocketChannel	channel;
+		private final ByteBuffer	in		= ByteBuffer.allocateDirect(BUFFER_SIZE);
+		private final ByteBuffer	out		= ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		private Connection(final SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+	/**
+	 * Open addressing table from packed symbols to their registry ID, owned
+	 * by one I/O thread so symbols are looked up without building Strings.
+	 * Only registered symbols are cached; their IDs never change, while the
+	 * Stock listed under an ID is always taken from the registry.
+	 */
+	private final class SymbolCache {
+		private long[]	keys	= new long[64];
+		private int[]	ids		= new int[64];
+		private int		size	= 0;
+
+		/**
+		 * @param symbol
+		 *            Long A packed symbol.
+		 * @return AbstractStock The Stock listed under the symbol, or null.
+		 */
+		private AbstractStock lookup(final long symbol) {
+			if (symbol == 0) {
+				return null;
+			}
+			int mask = keys.length - 1;
+			int slot = hash(symbol) & mask;
+			while (keys[slot] != 0) {
+				if (keys[slot] == symbol) {
+					return registry.get(ids[slot]);
+				}
+				slot = (slot + 1) & mask;
+			}
+			int id = registry.getId(GatewayProtocol.unpackSymbol(symbol));
+			if (id < 0) {
+				return null;
+			}
+			keys[slot] = symbol;
+			ids[slot] = id;
+			if (++size * 2 > keys.length) {
+				grow();
+			}
+			return registry.get(id);
+		}
+
+		/**
+		 * Doubles the capacity of the table.
+		 */
+		private void grow() {
+			long[] oldKeys = keys;
+			int[] oldIds = ids;
+			keys = new long[oldKeys.length * 2];
+			ids = new int[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] != 0) {
+					int slot = hash(oldKeys[i]) & mask;
+					while (keys[slot] != 0) {
+						slot = (slot + 1) & mask;
+					}
+					keys[slot] = oldKeys[i];
+					ids[slot] = oldIds[i];
+				}
+			}
+		}
+
+		private int hash(final long symbol) {
+			long mixed = symbol * 0x9E3779B97F4A7C15L;
+			return (int) (mixed >>> 32);
+		}
+	}
+}
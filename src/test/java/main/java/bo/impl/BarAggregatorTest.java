@@ -0,0 +1,91 @@
+package main.java.bo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import main.java.bo.Bar;
+import main.java.bo.BarInterval;
+import main.java.bo.CommonStock;
+import main.java.bo.FixedPoint;
+import main.java.clock.SimulatedClock;
+
+import org.junit.Test;
+
+/**
+ * Checks the OHLCV bars of a Stock and the current bar against its clock.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class BarAggregatorTest {
+	private static final long		MINUTE	= TimeUnit.MINUTES.toNanos(1);
+
+	private final SimulatedClock	clock	= new SimulatedClock(
+												TimeUnit.DAYS.toNanos(1));
+
+	@Test
+	public void aggregatesTheTradesOfAnInterval() {
+		CommonStock stock = stock();
+		record(stock, 10, 120);
+		clock.advance(TimeUnit.SECONDS.toNanos(10));
+		record(stock, 20, 150);
+		record(stock, 30, 90);
+		Bar bar = stock.getBar(BarInterval.MINUTE);
+		assertEquals(TimeUnit.DAYS.toNanos(1), bar.getStartTime());
+		assertEquals(FixedPoint.fromPennies(120), bar.getOpen());
+		assertEquals(FixedPoint.fromPennies(150), bar.getHigh());
+		assertEquals(FixedPoint.fromPennies(90), bar.getLow());
+		assertEquals(FixedPoint.fromPennies(90), bar.getClose());
+		assertEquals(60, bar.getVolume());
+		assertEquals(3, bar.getTradeCount());
+	}
+
+	@Test
+	public void rollsTheCurrentBarForwardWithTheClock() {
+		CommonStock stock = stock();
+		assertNull(stock.getBar(BarInterval.MINUTE));
+		record(stock, 10, 120);
+		clock.advance(3 * MINUTE + 5);
+		Bar bar = stock.getBar(BarInterval.MINUTE);
+		assertEquals(TimeUnit.DAYS.toNanos(1) + 3 * MINUTE, bar.getStartTime());
+		assertEquals(FixedPoint.fromPennies(120), bar.getOpen());
+		assertEquals(FixedPoint.fromPennies(120), bar.getClose());
+		assertEquals(0, bar.getVolume());
+		assertEquals(0, bar.getTradeCount());
+		assertEquals(1, stock.getBars(BarInterval.MINUTE, 10).size());
+		assertEquals(TimeUnit.DAYS.toNanos(1), stock.getBar(BarInterval.HOUR)
+				.getStartTime());
+	}
+
+	@Test
+	public void keepsTheLatestBarsUpToTheCapacity() {
+		CommonStock stock = stock();
+		int capacity = BarInterval.SECOND.getCapacity();
+		for (int i = 0; i < capacity + 100; i++) {
+			record(stock, 1, 100 + i % 10);
+			clock.advance(TimeUnit.SECONDS.toNanos(1));
+		}
+		List<Bar> bars = stock.getBars(BarInterval.SECOND, capacity + 100);
+		assertEquals(capacity, bars.size());
+		for (int i = 1; i < bars.size(); i++) {
+			assertEquals(bars.get(i - 1).getStartTime()
+					+ TimeUnit.SECONDS.toNanos(1), bars.get(i).getStartTime());
+		}
+		assertEquals(clock.now() - TimeUnit.SECONDS.toNanos(1),
+				bars.get(bars.size() - 1).getStartTime());
+	}
+
+	private CommonStock stock() {
+		CommonStock stock = new CommonStock("TEA", 0, 100);
+		stock.setClock(clock);
+		return stock;
+	}
+
+	private static void record(final CommonStock stock, final int shares,
+			final int pennies) {
+		stock.recordTrade(shares, FixedPoint.fromPennies(pennies), false);
+	}
+}
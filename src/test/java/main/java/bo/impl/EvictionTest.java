@@ -0,0 +1,117 @@
+package main.java.bo.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import main.java.bo.CommonStock;
+import main.java.bo.FixedPoint;
+import main.java.bo.RetentionPolicy;
+import main.java.bo.TradeTotals;
+
+import org.junit.Test;
+
+/**
+ * Checks that evicting the raw Trades of a Stock keeps its totals, its
+ * tradeIds and the ticker price its metrics are read from.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class EvictionTest {
+	private static final long	NOW		= 1000000000L;
+	private static final long	MAX_AGE	= 1000;
+
+	@Test
+	public void ageEvictionKeepsTheChunkOfTheLastTrade() {
+		CommonStock stock = record(TradeStore.CHUNK_SIZE);
+		assertEquals(0, stock.evictTrades(new RetentionPolicy(MAX_AGE, 0, 0),
+				NOW));
+		assertEquals(TradeStore.CHUNK_SIZE, stock.getTrades().size());
+		checkMetrics(stock, TradeStore.CHUNK_SIZE);
+	}
+
+	@Test
+	public void ageEvictionOfEveryTradeLeavesTheLastChunk() {
+		CommonStock stock = record(2 * TradeStore.CHUNK_SIZE);
+		assertEquals(TradeStore.CHUNK_SIZE, stock.evictTrades(
+				new RetentionPolicy(MAX_AGE, 0, 0), NOW));
+		assertEquals(TradeStore.CHUNK_SIZE, stock.getTrades().size());
+		checkMetrics(stock, 2 * TradeStore.CHUNK_SIZE);
+		assertEquals(0, stock.evictTrades(new RetentionPolicy(MAX_AGE, 0, 0),
+				NOW));
+	}
+
+	@Test
+	public void evictionKeepsTheTotalsAndTradeIds() {
+		int trades = 3 * TradeStore.CHUNK_SIZE + 10;
+		CommonStock stock = record(trades);
+		double geometricMean = stock.getGeometricMean();
+		TradeTotals totals = stock.getTradeTotals();
+		assertEquals(2 * TradeStore.CHUNK_SIZE, stock.evictTrades(
+				new RetentionPolicy(0, 100, 0), NOW));
+		assertEquals(trades, stock.getTradeCount());
+		assertEquals(geometricMean, stock.getGeometricMean(), 1e-9);
+		assertEquals(trades, stock.getTradeTotals().getTradeCount());
+		assertEquals(totals.getTradedValue(), stock.getTradeTotals()
+				.getTradedValue());
+		assertEquals(totals.getLogPriceSum(), stock.getTradeTotals()
+				.getLogPriceSum(), 1e-9);
+		assertEquals(2 * TradeStore.CHUNK_SIZE + 1, stock.getTrades().get(0)
+				.getTradeId());
+		assertEquals(trades + 1, stock.recordTrade(1, price(0), false, NOW));
+	}
+
+	@Test
+	public void visitsFromTheFirstHeldTradeAfterEviction() {
+		int trades = 3 * TradeStore.CHUNK_SIZE;
+		CommonStock stock = record(trades);
+		stock.evictTrades(new RetentionPolicy(0, 100, 0), NOW);
+		final int[] visited = new int[2];
+		TradeTotals base = stock.visitTradesSince(0, new TradeListener() {
+			@Override
+			public void onTrade(final AbstractStock stock, final int tradeId,
+					final long timestamp, final int shares, final long price,
+					final boolean sell) {
+				if (visited[0]++ == 0) {
+					visited[1] = tradeId;
+				}
+			}
+		});
+		assertEquals(2 * TradeStore.CHUNK_SIZE, base.getTradeCount());
+		assertEquals(base.getTradeCount() + 1, visited[1]);
+		assertEquals(TradeStore.CHUNK_SIZE, visited[0]);
+	}
+
+	@Test
+	public void byteBudgetKeepsAtLeastOneChunk() {
+		CommonStock stock = record(4 * TradeStore.CHUNK_SIZE);
+		stock.evictTrades(new RetentionPolicy(0, 0, 1), NOW);
+		assertEquals(TradeStore.CHUNK_BYTES, stock.getHeldTradeBytes());
+		checkMetrics(stock, 4 * TradeStore.CHUNK_SIZE);
+	}
+
+	/**
+	 * Records Trades all older than the age limit, the last one at the
+	 * highest price.
+	 */
+	private static CommonStock record(final int count) {
+		CommonStock stock = new CommonStock("TEA", 8, 100);
+		for (int i = 0; i < count; i++) {
+			stock.recordTrade(10, price(i), i % 2 == 0, i);
+		}
+		return stock;
+	}
+
+	private static long price(final int index) {
+		return FixedPoint.fromPennies(100 + index);
+	}
+
+	private static void checkMetrics(final CommonStock stock,
+			final int count) {
+		long lastPrice = price(count - 1);
+		assertEquals(lastPrice, stock.getMetrics().getTickerPrice());
+		assertEquals((double) FixedPoint.fromPennies(8) / lastPrice,
+				stock.getDividendYield(), 1e-12);
+		assertEquals((double) lastPrice / FixedPoint.fromPennies(8),
+				stock.getPERatio(), 1e-9);
+	}
+}
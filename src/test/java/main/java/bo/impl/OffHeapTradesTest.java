@@ -0,0 +1,104 @@
+package main.java.bo.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import main.java.bo.CommonStock;
+import main.java.bo.FixedPoint;
+import main.java.bo.RetentionPolicy;
+import main.java.bo.Trade;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that evicting off heap Trades gives their buffers back to the pool
+ * as soon as no store holds their chunk, and that the direct memory is
+ * counted until freed.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class OffHeapTradesTest {
+	private static final int	BUFFER_SIZE	= TradeStore.DirectChunk
+													.BUFFER_SIZE;
+
+	@Before
+	public void enable() {
+		OffHeapTrades.reset();
+		OffHeapTrades.setEnabled(true);
+	}
+
+	@After
+	public void disable() {
+		OffHeapTrades.setEnabled(false);
+		OffHeapTrades.reset();
+	}
+
+	@Test
+	public void evictionReleasesTheDroppedChunks() {
+		CommonStock stock = record("GIN", 3 * TradeStore.CHUNK_SIZE, 100);
+		assertEquals(3L * BUFFER_SIZE, OffHeapTrades.getAllocatedBytes());
+		assertEquals(2 * TradeStore.CHUNK_SIZE, stock.evictTrades(
+				new RetentionPolicy(0, 10, 0), 0));
+		assertEquals(2, OffHeapTrades.getPooled());
+
+		record("ALE", 2 * TradeStore.CHUNK_SIZE, 200);
+		assertEquals(0, OffHeapTrades.getPooled());
+		assertEquals(3L * BUFFER_SIZE, OffHeapTrades.getAllocatedBytes());
+	}
+
+	@Test
+	public void chunksKeptByAnEvictionStayHeld() {
+		int trades = 3 * TradeStore.CHUNK_SIZE;
+		CommonStock stock = record("TEA", trades, 100);
+		RetentionPolicy policy = new RetentionPolicy(0,
+				2 * TradeStore.CHUNK_SIZE, 0);
+		assertEquals(TradeStore.CHUNK_SIZE, stock.evictTrades(policy, 0));
+		assertEquals(1, OffHeapTrades.getPooled());
+		record("POP", 2 * TradeStore.CHUNK_SIZE, 300);
+		assertEquals(0, stock.evictTrades(policy, 0));
+		assertEquals(0, OffHeapTrades.getPooled());
+
+		for (int i = 0; i < 2 * TradeStore.CHUNK_SIZE; i++) {
+			Trade trade = stock.getTrades().get(i);
+			int index = TradeStore.CHUNK_SIZE + i;
+			assertEquals(index + 1, trade.getTradeId());
+			assertEquals(price(100, index), trade.getPrice());
+			assertEquals(index, trade.getShares());
+		}
+	}
+
+	@Test
+	public void buffersBeyondThePoolAreFreed() {
+		int chunks = OffHeapTrades.MAX_POOLED + 20;
+		CommonStock stock = record("JOE", chunks * TradeStore.CHUNK_SIZE, 100);
+		assertEquals((long) chunks * BUFFER_SIZE,
+				OffHeapTrades.getAllocatedBytes());
+		stock.evictTrades(new RetentionPolicy(0, 1, 0), 0);
+		assertEquals(OffHeapTrades.MAX_POOLED, OffHeapTrades.getPooled());
+		assertEquals((OffHeapTrades.MAX_POOLED + 1L) * BUFFER_SIZE,
+				OffHeapTrades.getAllocatedBytes());
+	}
+
+	@Test
+	public void replacingTheTradesReleasesEveryChunk() {
+		CommonStock stock = record("BEER", 2 * TradeStore.CHUNK_SIZE, 100);
+		stock.restoreTrades(0, 0, 0, 0, 0, new long[0], new int[0],
+				new long[0], new boolean[0], 0);
+		assertEquals(2, OffHeapTrades.getPooled());
+	}
+
+	private static CommonStock record(final String symbol, final int trades,
+			final int basePennies) {
+		CommonStock stock = new CommonStock(symbol, 8, 100);
+		for (int i = 0; i < trades; i++) {
+			stock.recordTrade(i, price(basePennies, i), i % 2 == 0, i);
+		}
+		return stock;
+	}
+
+	private static long price(final int basePennies, final int index) {
+		return FixedPoint.fromPennies(basePennies + index % 50);
+	}
+}
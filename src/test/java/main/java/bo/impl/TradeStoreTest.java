@@ -0,0 +1,192 @@
+package main.java.bo.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+import java.util.Random;
+
+import main.java.bo.FixedPoint;
+import main.java.bo.Trade;
+
+import org.junit.Test;
+
+/**
+ * Checks the columns, prefixes and summaries of the {@link TradeStore}
+ * against a plain scan of the Trades appended.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class TradeStoreTest {
+	private static final int	TRADES	= 3 * TradeStore.CHUNK_SIZE + 100;
+
+	private final Random		random	= new Random(11);
+	private final long[]		times	= new long[TRADES];
+	private final int[]			shares	= new int[TRADES];
+	private final long[]		prices	= new long[TRADES];
+	private final boolean[]		sells	= new boolean[TRADES];
+
+	public TradeStoreTest() {
+		long time = 1000;
+		for (int i = 0; i < TRADES; i++) {
+			time += random.nextInt(3);
+			times[i] = time;
+			shares[i] = 1 + random.nextInt(500);
+			prices[i] = i % 97 == 0 ? 0 : 1 + random.nextInt(10000000);
+			sells[i] = random.nextBoolean();
+		}
+	}
+
+	@Test
+	public void readsBackTheColumns() {
+		TradeStore store = fill(new TradeStore(), 0);
+		assertEquals(TRADES, store.size());
+		for (int i = 0; i < TRADES; i++) {
+			assertEquals(times[i], store.getTimestamp(i));
+			assertEquals(shares[i], store.getShares(i));
+			assertEquals(prices[i], store.getPrice(i));
+			assertEquals(sells[i], store.isSell(i));
+		}
+	}
+
+	@Test
+	public void keepsTheTimestampsInArrivalOrder() {
+		TradeStore store = new TradeStore();
+		store.append(2000, 1, 1, false);
+		store.append(1000, 1, 1, false);
+		assertEquals(2000, store.getTimestamp(1));
+	}
+
+	@Test
+	public void prefixesMatchAScan() {
+		checkPrefixes(fill(new TradeStore(), 0), 0, 0, 0, 0, 0);
+	}
+
+	@Test
+	public void restoredStoreGoesOnFromItsBase() {
+		int first = 100;
+		long value = 123456789L;
+		TradeStore store = fill(new TradeStore(first, value, 4321, 12.5, 2),
+				first);
+		assertEquals(first, store.getFirstIndex());
+		assertEquals(TRADES, store.size());
+		assertEquals(TRADES - first, store.asList().size());
+		assertEquals(first + 1, store.asList().get(0).getTradeId());
+		checkPrefixes(store, first, value, 4321, 12.5, 2);
+	}
+
+	@Test
+	public void highAndLowMatchAScan() {
+		TradeStore store = fill(new TradeStore(), 0);
+		for (int query = 0; query < 2000; query++) {
+			int from = random.nextInt(TRADES);
+			int to = from
+					+ random.nextInt(query % 2 == 0 ? 200 : TRADES - from + 1);
+			to = Math.min(to, TRADES);
+			long high = Long.MIN_VALUE;
+			long low = Long.MAX_VALUE;
+			for (int i = from; i < to; i++) {
+				high = Math.max(high, prices[i]);
+				low = Math.min(low, prices[i]);
+			}
+			assertEquals(high, store.getHigh(from, to));
+			assertEquals(low, store.getLow(from, to));
+		}
+	}
+
+	@Test
+	public void findsTheFirstTradeAtOrAfterATime() {
+		TradeStore store = fill(new TradeStore(), 0);
+		for (int query = 0; query < 1000; query++) {
+			long time = times[0]
+					+ random.nextInt((int) (times[TRADES - 1] - times[0]) + 2);
+			int expected = 0;
+			while (expected < TRADES && times[expected] < time) {
+				expected++;
+			}
+			assertEquals(expected, store.firstIndexAtOrAfter(time, 0, TRADES));
+		}
+	}
+
+	@Test
+	public void evictsWholeChunksAndKeepsTheTotals() {
+		TradeStore store = fill(new TradeStore(), 0);
+		assertSame(store, store.evictBefore(TradeStore.CHUNK_SIZE - 1));
+		TradeStore evicted = store.evictBefore(TradeStore.CHUNK_SIZE + 10);
+		assertEquals(TradeStore.CHUNK_SIZE, evicted.getFirstIndex());
+		assertEquals(store.size(), evicted.size());
+		assertEquals(store.getCumulativeValue(TRADES),
+				evicted.getCumulativeValue(TRADES));
+		assertEquals(store.getCumulativeSells(TRADES),
+				evicted.getCumulativeSells(TRADES));
+		assertTrue(evicted.getHeldBytes() < store.getHeldBytes());
+		int index = evicted.append(times[TRADES - 1], 7, 500, true);
+		assertEquals(TRADES, index);
+		assertEquals(TRADES, store.size());
+		assertEquals(store.getCumulativeShares(TRADES) + 7,
+				evicted.getCumulativeShares(TRADES + 1));
+	}
+
+	@Test
+	public void listViewMaterializesTheTrades() {
+		TradeStore store = fill(new TradeStore(), 0);
+		List<Trade> trades = store.asList();
+		Trade trade = trades.get(5);
+		assertEquals(6, trade.getTradeId());
+		assertEquals(prices[5], trade.getPrice());
+		assertEquals(times[5], trade.getTimestamp());
+	}
+
+	@Test
+	public void takesFewBytesPerTrade() {
+		assertTrue(TradeStore.CHUNK_BYTES / TradeStore.CHUNK_SIZE <= 22);
+		assertEquals(0, new TradeStore().getHeldBytes());
+	}
+
+	private TradeStore fill(final TradeStore store, final int first) {
+		for (int i = first; i < TRADES; i++) {
+			assertEquals(i, store.append(times[i], shares[i], prices[i],
+					sells[i]));
+		}
+		return store;
+	}
+
+	private void checkPrefixes(final TradeStore store, final int first,
+			final long baseValue, final long baseShares,
+			final double baseLogPrice, final int baseZeroPrices) {
+		long value = baseValue;
+		long tradedShares = baseShares;
+		double logPrice = baseLogPrice;
+		int zeroPrices = baseZeroPrices;
+		long sellValue = 0;
+		long sellShares = 0;
+		int sellCount = 0;
+		for (int count = first; count <= TRADES; count++) {
+			assertEquals(value, store.getCumulativeValue(count));
+			assertEquals(tradedShares, store.getCumulativeShares(count));
+			assertEquals(logPrice, store.getCumulativeLogPrice(count),
+					1e-6 * Math.max(1, Math.abs(logPrice)));
+			assertEquals(zeroPrices, store.getCumulativeZeroPrices(count));
+			assertEquals(sellValue, store.getCumulativeSellValue(count));
+			assertEquals(sellShares, store.getCumulativeSellShares(count));
+			assertEquals(sellCount, store.getCumulativeSells(count));
+			if (count == TRADES) {
+				break;
+			}
+			value += prices[count] * shares[count];
+			tradedShares += shares[count];
+			if (prices[count] > 0) {
+				logPrice += Math.log(prices[count]) - FixedPoint.LOG_SCALE;
+			} else {
+				zeroPrices++;
+			}
+			if (sells[count]) {
+				sellValue += prices[count] * shares[count];
+				sellShares += shares[count];
+				sellCount++;
+			}
+		}
+	}
+}
@@ -0,0 +1,115 @@
+package main.java.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import main.java.bo.CommonStock;
+import main.java.bo.FixedPoint;
+import main.java.bo.impl.AbstractStock;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Checks the fork-join index against the incremental All Share Index.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class IndexEngineTest {
+	private final ForkJoinPool	pool	= new ForkJoinPool(4);
+
+	@After
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	@Test
+	public void matchesTheAllShareIndex() {
+		StockRegistry registry = registry(1000);
+		IndexResult result = new IndexEngine(pool, 16).calculate(registry);
+		assertEquals(new AllShareIndex().getValue(registry),
+				result.getValue(), 1e-9);
+		long trades = 0;
+		for (AbstractStock stock : registry) {
+			trades += stock.getTradeCount();
+		}
+		assertEquals(trades, result.getTradeCount());
+		assertEquals(registry.size(), result.getStockCount());
+		for (int i = 0; i < result.getStockCount(); i++) {
+			AbstractStock stock = registry.get(result.getSymbol(i));
+			assertEquals(stock.getGeometricMean(), result.getGeometricMean(i),
+					1e-9);
+		}
+	}
+
+	@Test
+	public void givesTheSameIndexForTheSameTrades() {
+		StockRegistry registry = registry(700);
+		IndexEngine engine = new IndexEngine(pool, 8);
+		double value = engine.calculate(registry).getValue();
+		for (int i = 0; i < 10; i++) {
+			assertEquals(value, engine.calculate(registry).getValue(), 0);
+		}
+	}
+
+	@Test
+	public void skipsDelistedStocks() {
+		StockRegistry registry = registry(50);
+		for (int i = 0; i < 50; i += 5) {
+			registry.delist(symbol(i));
+		}
+		registry.register(new CommonStock("NEW", 0, 100));
+		IndexResult result = new IndexEngine(pool, 4).calculate(registry);
+		assertEquals(41, result.getStockCount());
+		assertEquals(new AllShareIndex().getValue(registry),
+				result.getValue(), 1e-9);
+		assertEquals("NEW", result.getSymbol(result.getStockCount() - 1));
+		assertTrue(Double.isNaN(result.getGeometricMean(result
+				.getStockCount() - 1)));
+	}
+
+	@Test
+	public void zeroPriceTradesZeroTheIndex() {
+		StockRegistry registry = registry(20);
+		registry.get(symbol(3)).recordTrade(10, 0, false, 1);
+		IndexResult result = new IndexEngine(pool, 4).calculate(registry);
+		assertEquals(0, result.getValue(), 0);
+		for (int i = 0; i < result.getStockCount(); i++) {
+			assertEquals(symbol(i), result.getSymbol(i));
+			assertEquals(i == 3, result.getGeometricMean(i) == 0);
+		}
+	}
+
+	@Test
+	public void hasNoIndexWithoutTrades() {
+		StockRegistry registry = new StockRegistry();
+		registry.register(new CommonStock("TEA", 0, 100));
+		IndexResult result = new IndexEngine(pool, 4).calculate(registry);
+		assertTrue(Double.isNaN(result.getValue()));
+		assertEquals(0, result.getTradeCount());
+	}
+
+	private static StockRegistry registry(final int stocks) {
+		Random random = new Random(stocks);
+		StockRegistry registry = new StockRegistry();
+		for (int i = 0; i < stocks; i++) {
+			AbstractStock stock = new CommonStock(symbol(i), 8, 100);
+			int trades = 1 + random.nextInt(40);
+			for (int trade = 0; trade < trades; trade++) {
+				stock.recordTrade(1 + random.nextInt(100),
+						FixedPoint.fromPennies(1 + random.nextInt(500)),
+						random.nextBoolean(), trade);
+			}
+			registry.register(stock);
+		}
+		return registry;
+	}
+
+	private static String symbol(final int index) {
+		return String.format("S%04d", index);
+	}
+}
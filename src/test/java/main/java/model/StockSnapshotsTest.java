@@ -0,0 +1,113 @@
+package main.java.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.TimeUnit;
+
+import main.java.bo.CommonStock;
+import main.java.bo.FixedPoint;
+import main.java.bo.PreferredStock;
+import main.java.bo.impl.AbstractStock;
+import main.java.clock.SimulatedClock;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that a Stock restored from a snapshot goes on where it was taken.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class StockSnapshotsTest {
+	private static final long	WINDOW	= TimeUnit.MINUTES.toNanos(15);
+
+	@Rule
+	public TemporaryFolder		folder	= new TemporaryFolder();
+
+	private final SimulatedClock	clock	= new SimulatedClock(
+													TimeUnit.DAYS.toNanos(1));
+
+	@Test
+	public void restoresTheTotalsAndTheWindow() throws IOException {
+		StockRegistry registry = registry();
+		AbstractStock stock = registry.get("POP");
+		for (int i = 0; i < 1000; i++) {
+			stock.recordTrade(10 + i, FixedPoint.fromPennies(100 + i % 7),
+					i % 3 == 0);
+			clock.advance(TimeUnit.SECONDS.toNanos(2));
+		}
+		snapshots(registry).snapshot();
+
+		StockRegistry restored = registry();
+		assertEquals(0, snapshots(restored).restore());
+		AbstractStock copy = restored.get("POP");
+		assertEquals(stock.getTradeCount(), copy.getTradeCount());
+		assertEquals(stock.getGeometricMean(), copy.getGeometricMean(), 1e-9);
+		assertEquals(stock.getStockPrice(WINDOW), copy.getStockPrice(WINDOW));
+		assertEquals(stock.getReferenceData(), copy.getReferenceData());
+		assertTrue(copy.getTrades().size() < stock.getTrades().size());
+		assertEquals(stock.getTradeCount() + 1, copy.recordTrade(1,
+				FixedPoint.fromPennies(100), false));
+	}
+
+	@Test
+	public void keepsTheLastTradeOutsideTheWindow() throws IOException {
+		StockRegistry registry = registry();
+		AbstractStock stock = registry.get("GIN");
+		stock.recordTrade(10, FixedPoint.fromPennies(120), false);
+		clock.advance(2 * WINDOW);
+		snapshots(registry).snapshot();
+
+		StockRegistry restored = registry();
+		snapshots(restored).restore();
+		AbstractStock copy = restored.get("GIN");
+		assertEquals(1, copy.getTrades().size());
+		assertEquals(stock.getMetrics().getTickerPrice(), copy.getMetrics()
+				.getTickerPrice());
+		assertEquals(stock.getDividendYield(), copy.getDividendYield(), 0);
+		assertEquals(stock.getPERatio(), copy.getPERatio(), 0);
+		assertEquals(0, copy.getStockPrice(WINDOW));
+	}
+
+	@Test
+	public void rejectsACorruptSnapshot() throws IOException {
+		StockRegistry registry = registry();
+		registry.get("TEA").recordTrade(10, FixedPoint.fromPennies(100),
+				false);
+		snapshots(registry).snapshot();
+		RandomAccessFile file = new RandomAccessFile(new File(
+				folder.getRoot(), "stocks.snapshot"), "rw");
+		try {
+			file.seek(40);
+			file.write(file.read() ^ 1);
+		} finally {
+			file.close();
+		}
+		try {
+			snapshots(registry()).restore();
+			fail("Corrupt snapshot restored");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	private StockRegistry registry() {
+		StockRegistry registry = new StockRegistry();
+		registry.setClock(clock);
+		registry.register(new CommonStock("TEA", 0, 100));
+		registry.register(new CommonStock("POP", 8, 100));
+		registry.register(new PreferredStock("GIN", 8, 2, 100));
+		return registry;
+	}
+
+	private StockSnapshots snapshots(final StockRegistry registry) {
+		return new StockSnapshots(folder.getRoot(), registry, WINDOW);
+	}
+}
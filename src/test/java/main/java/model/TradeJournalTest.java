@@ -0,0 +1,171 @@
+package main.java.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import main.java.bo.CommonStock;
+import main.java.bo.FixedPoint;
+import main.java.bo.Trade;
+import main.java.bo.impl.AbstractStock;
+import main.java.clock.SimulatedClock;
+import main.java.model.TradeJournal.FsyncPolicy;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Checks that the Trades of a journal come back as they were recorded.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class TradeJournalTest {
+	@Rule
+	public TemporaryFolder			folder	= new TemporaryFolder();
+
+	private final SimulatedClock	clock	= new SimulatedClock(
+													TimeUnit.DAYS.toNanos(1));
+
+	@Test
+	public void groupCommitTradesAreDurableAfterOneWait() throws IOException {
+		StockRegistry registry = registry();
+		TradeJournal journal = open(registry);
+		try {
+			for (int i = 0; i < 500; i++) {
+				registry.get(i % 2 == 0 ? "TEA" : "POP").recordTrade(10 + i,
+						FixedPoint.fromPennies(100 + i % 9), i % 3 == 0);
+				clock.advance(TimeUnit.MILLISECONDS.toNanos(5));
+			}
+			journal.awaitDurable();
+
+			StockRegistry replayed = registry();
+			assertEquals(500, new TradeJournal(folder.getRoot(),
+					FsyncPolicy.GROUP_COMMIT).replay(replayed));
+			assertSameTrades(registry.get("TEA"), replayed.get("TEA"));
+			assertSameTrades(registry.get("POP"), replayed.get("POP"));
+		} finally {
+			journal.close();
+		}
+	}
+
+	@Test
+	public void replaysInTradeIdOrder() throws IOException {
+		StockRegistry registry = registry();
+		TradeJournal journal = open(registry);
+		AbstractStock stock = registry.get("TEA");
+		long time = clock.now();
+		journal.onTrade(stock, 2, time + 1, 20, FixedPoint.fromPennies(102),
+				true);
+		journal.onTrade(stock, 1, time, 10, FixedPoint.fromPennies(101),
+				false);
+		journal.onTrade(stock, 3, time + 2, 30, FixedPoint.fromPennies(103),
+				false);
+		journal.close();
+
+		StockRegistry replayed = registry();
+		assertEquals(3, journal.replay(replayed));
+		List<Trade> trades = replayed.get("TEA").getTrades();
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i + 1, trades.get(i).getTradeId());
+			assertEquals(10 * (i + 1), trades.get(i).getShares());
+			assertEquals(FixedPoint.fromPennies(101 + i), trades.get(i)
+					.getPrice());
+		}
+	}
+
+	@Test
+	public void truncatesATornTail() throws IOException {
+		StockRegistry registry = registry();
+		TradeJournal journal = open(registry);
+		for (int i = 0; i < 3; i++) {
+			registry.get("POP").recordTrade(10, FixedPoint.fromPennies(100),
+					false);
+		}
+		journal.close();
+		File segment = new File(folder.getRoot(), "trades-000001.journal");
+		RandomAccessFile file = new RandomAccessFile(segment, "rw");
+		try {
+			file.seek(file.length());
+			file.write(new byte[TradeJournal.RECORD_SIZE - 4]);
+		} finally {
+			file.close();
+		}
+
+		assertEquals(3, journal.replay(registry()));
+		assertEquals(3L * TradeJournal.RECORD_SIZE, segment.length());
+	}
+
+	@Test
+	public void skipsTheTradesAlreadyHeld() throws IOException {
+		StockRegistry registry = registry();
+		TradeJournal journal = open(registry);
+		for (int i = 0; i < 5; i++) {
+			registry.get("POP").recordTrade(10, FixedPoint.fromPennies(100 + i),
+					false);
+		}
+		journal.close();
+
+		StockRegistry replayed = registry();
+		AbstractStock stock = replayed.get("POP");
+		stock.recordTrade(10, FixedPoint.fromPennies(100), false);
+		stock.recordTrade(10, FixedPoint.fromPennies(101), false);
+		assertEquals(3, journal.replay(replayed));
+		assertSameTrades(registry.get("POP"), stock);
+	}
+
+	@Test
+	public void rejectsASymbolTooLong() throws IOException {
+		StockRegistry registry = registry();
+		registry.register(new CommonStock("LONGSYMBOL", 0, 100));
+		TradeJournal journal = new TradeJournal(folder.getRoot(),
+				FsyncPolicy.PER_TRADE);
+		try {
+			journal.attach(registry);
+			fail("Symbol longer than a record attached");
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+		assertNull(registry.get("TEA").getTradeListener());
+	}
+
+	private static void assertSameTrades(final AbstractStock expected,
+			final AbstractStock actual) {
+		List<Trade> expectedTrades = expected.getTrades();
+		List<Trade> actualTrades = actual.getTrades();
+		assertEquals(expectedTrades.size(), actualTrades.size());
+		for (int i = 0; i < expectedTrades.size(); i++) {
+			Trade trade = expectedTrades.get(i);
+			Trade copy = actualTrades.get(i);
+			assertEquals(trade.getTradeId(), copy.getTradeId());
+			assertEquals(trade.getTimestamp(), copy.getTimestamp());
+			assertEquals(trade.getShares(), copy.getShares());
+			assertEquals(trade.getPrice(), copy.getPrice());
+			assertEquals(trade.isSell(), copy.isSell());
+		}
+	}
+
+	private TradeJournal open(final StockRegistry registry)
+			throws IOException {
+		TradeJournal journal = new TradeJournal(folder.getRoot(),
+				FsyncPolicy.GROUP_COMMIT);
+		journal.open();
+		journal.attach(registry);
+		return journal;
+	}
+
+	private StockRegistry registry() {
+		StockRegistry registry = new StockRegistry();
+		registry.setClock(clock);
+		registry.register(new CommonStock("TEA", 0, 100));
+		registry.register(new CommonStock("POP", 8, 100));
+		return registry;
+	}
+}
@@ -0,0 +1,68 @@
+package main.java.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Checks the message sizes and the symbol packing of the gateway protocol.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class GatewayProtocolTest {
+	@Test
+	public void messagesTakeTheirDeclaredSize() {
+		ByteBuffer buffer = ByteBuffer.allocate(64);
+		GatewayProtocol.putTrade(buffer, 1, GatewayProtocol.packSymbol("TEA"),
+				0, 10, 100, GatewayProtocol.FLAG_ACK);
+		assertEquals(GatewayProtocol.TRADE_SIZE, buffer.position());
+		assertEquals(GatewayProtocol.TRADE_SIZE,
+				GatewayProtocol.requestSize(buffer.get(0)));
+
+		buffer.clear();
+		GatewayProtocol.putQuery(buffer, 2, GatewayProtocol.QUERY_PRICE,
+				GatewayProtocol.packSymbol("TEA"), 0);
+		assertEquals(GatewayProtocol.QUERY_SIZE, buffer.position());
+		assertEquals(GatewayProtocol.QUERY_SIZE,
+				GatewayProtocol.requestSize(buffer.get(0)));
+
+		buffer.clear();
+		GatewayProtocol.putResponse(buffer, GatewayProtocol.ACK, 3, 4);
+		assertEquals(GatewayProtocol.RESPONSE_SIZE, buffer.position());
+		assertEquals(0, GatewayProtocol.requestSize(buffer.get(0)));
+
+		buffer.clear();
+		GatewayProtocol.putIndexParts(buffer, 4, 1.5, 2, 3);
+		assertEquals(GatewayProtocol.INDEX_PARTS_SIZE, buffer.position());
+	}
+
+	@Test
+	public void tradeFieldsKeepTheirOrder() {
+		ByteBuffer buffer = ByteBuffer.allocate(GatewayProtocol.TRADE_SIZE);
+		long symbol = GatewayProtocol.packSymbol("POP");
+		GatewayProtocol.putTrade(buffer, 7, symbol, 11, 12, 13,
+				GatewayProtocol.FLAG_SELL);
+		buffer.flip();
+		assertEquals(GatewayProtocol.TRADE, buffer.get());
+		assertEquals(7, buffer.getInt());
+		assertEquals(symbol, buffer.getLong());
+		assertEquals(11, buffer.getLong());
+		assertEquals(12, buffer.getInt());
+		assertEquals(13, buffer.getLong());
+		assertEquals(GatewayProtocol.FLAG_SELL, buffer.get());
+	}
+
+	@Test
+	public void symbolsPackIntoOneLong() {
+		for (String symbol : new String[] { "T", "TEA", "GIN", "ABCDEFGH" }) {
+			assertEquals(symbol, GatewayProtocol
+					.unpackSymbol(GatewayProtocol.packSymbol(symbol)));
+		}
+		assertEquals(GatewayProtocol.packSymbol("TEA"), ByteBuffer.wrap(
+				"TEA     ".getBytes(StandardCharsets.US_ASCII)).getLong());
+	}
+}
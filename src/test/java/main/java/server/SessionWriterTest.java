@@ -0,0 +1,109 @@
+package main.java.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Checks that a stalled client never holds the threads handing updates to
+ * its session, and that the answers still come out whole and in order.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class SessionWriterTest {
+	@Test
+	public void updatesDoNotWaitForAStalledClient() throws Exception {
+		StalledWriter stalled = new StalledWriter();
+		SessionWriter output = new SessionWriter(stalled, "stalled-writer");
+		output.answer("OK 1\n");
+		assertTrue(stalled.writing.await(5, TimeUnit.SECONDS));
+
+		Object subscription = new Object();
+		long start = System.nanoTime();
+		for (int i = 0; i < 100000; i++) {
+			output.update(subscription, "UPDATE INDEX " + i + "\n");
+		}
+		output.update(new Object(), "UPDATE PE TEA 1.0\n");
+		assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+
+		stalled.release.countDown();
+		output.close();
+		assertEquals("OK 1\nUPDATE INDEX 99999\nUPDATE PE TEA 1.0\n",
+				stalled.written.toString());
+	}
+
+	@Test
+	public void answersAreWrittenInOrder() throws IOException {
+		StringWriter written = new StringWriter();
+		SessionWriter output = new SessionWriter(written, "ordered-writer");
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 10000; i++) {
+			String batch = "OK " + i + "\n";
+			output.answer(batch);
+			expected.append(batch);
+		}
+		output.close();
+		assertEquals(expected.toString(), written.toString());
+	}
+
+	@Test(expected = IOException.class)
+	public void aFailedStreamFailsTheSession() throws Exception {
+		SessionWriter output = new SessionWriter(new Writer() {
+			@Override
+			public void write(char[] buffer, int offset, int length)
+					throws IOException {
+				throw new IOException("Client gone");
+			}
+
+			@Override
+			public void flush() {
+			}
+
+			@Override
+			public void close() {
+			}
+		}, "failing-writer");
+		output.answer("OK 1\n");
+		for (int i = 0; i < 100; i++) {
+			Thread.sleep(10);
+			output.answer("OK 2\n");
+		}
+	}
+
+	/**
+	 * Writer blocking on its first write until released.
+	 */
+	private static final class StalledWriter extends Writer {
+		private final CountDownLatch	writing	= new CountDownLatch(1);
+		private final CountDownLatch	release	= new CountDownLatch(1);
+		private final StringWriter		written	= new StringWriter();
+
+		@Override
+		public void write(char[] buffer, int offset, int length)
+				throws IOException {
+			writing.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			written.write(buffer, offset, length);
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package main.java.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import main.java.bo.CommonStock;
+import main.java.clock.SimulatedClock;
+import main.java.model.AllShareIndex;
+import main.java.model.StockRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the line commands of the coordinator against a single node.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class ShardCoordinatorTest {
+	private final SimulatedClock	clock		= new SimulatedClock(
+														TimeUnit.DAYS.toNanos(1));
+	private final StockRegistry		registry	= new StockRegistry();
+	private TradeGateway			gateway;
+	private ShardCoordinator		coordinator;
+
+	@Before
+	public void start() throws IOException {
+		registry.setClock(clock);
+		registry.register(new CommonStock("TEA", 0, 100));
+		gateway = new TradeGateway(registry, new AllShareIndex(),
+				TimeUnit.MINUTES.toNanos(15), 1);
+		gateway.start(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+				0));
+		coordinator = new ShardCoordinator(Collections
+				.singletonList(new InetSocketAddress(InetAddress
+						.getLoopbackAddress(), gateway.getPort())));
+	}
+
+	@After
+	public void stop() throws IOException {
+		coordinator.close();
+		gateway.close();
+	}
+
+	@Test
+	public void printsPricesAsASingleNode() throws IOException {
+		assertEquals("OK 1", execute("RECORD TEA 10 120 B"));
+		assertEquals("OK 2", execute("RECORD TEA 10 120.5 S"));
+		assertEquals("PRICE TEA 120.25", execute("PRICE TEA"));
+	}
+
+	@Test
+	public void rejectsSymbolsLongerThanTheWire() throws IOException {
+		assertTrue(execute("RECORD TEATEATEA 10 120 B").startsWith("ERROR "));
+		assertTrue(execute("PRICE TEATEATEA").startsWith("ERROR "));
+		assertEquals(0, registry.get("TEA").getTradeCount());
+	}
+
+	private String execute(final String line) throws IOException {
+		return coordinator.execute(line.split(" "));
+	}
+}
@@ -0,0 +1,93 @@
+package main.java.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import main.java.bo.CommonStock;
+import main.java.bo.FixedPoint;
+import main.java.model.AllShareIndex;
+import main.java.model.IndexPartials;
+import main.java.model.StockRegistry;
+
+import org.junit.Test;
+
+/**
+ * Checks the placement of the {@link ShardRing} and that the index totals
+ * of the shards merge into the index of all the Stocks.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class ShardRingTest {
+	private static final int	SYMBOLS	= 2000;
+
+	@Test
+	public void placesEverySymbolOnANode() {
+		ShardRing ring = new ShardRing(4);
+		int[] owned = new int[4];
+		for (int i = 0; i < SYMBOLS; i++) {
+			String symbol = symbol(i);
+			int owner = ring.ownerOf(symbol);
+			assertEquals(owner, new ShardRing(4).ownerOf(symbol));
+			assertEquals(owner, ring.ownerOf(GatewayProtocol
+					.packSymbol(symbol)));
+			owned[owner]++;
+		}
+		for (int count : owned) {
+			assertTrue(count > SYMBOLS / 8);
+		}
+	}
+
+	@Test
+	public void addingANodeOnlyMovesSymbolsToIt() {
+		ShardRing three = new ShardRing(3);
+		ShardRing four = new ShardRing(4);
+		int moved = 0;
+		for (int i = 0; i < SYMBOLS; i++) {
+			int before = three.ownerOf(symbol(i));
+			int after = four.ownerOf(symbol(i));
+			if (before != after) {
+				assertEquals(3, after);
+				moved++;
+			}
+		}
+		assertTrue(moved > 0 && moved < SYMBOLS / 2);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsAnEmptyRing() {
+		new ShardRing(0);
+	}
+
+	@Test
+	public void shardPartialsMergeIntoTheWholeIndex() {
+		ShardRing ring = new ShardRing(3);
+		StockRegistry whole = new StockRegistry();
+		StockRegistry[] shards = new StockRegistry[3];
+		for (int node = 0; node < shards.length; node++) {
+			shards[node] = new StockRegistry();
+		}
+		for (int i = 0; i < 50; i++) {
+			String symbol = symbol(i);
+			CommonStock stock = new CommonStock(symbol, 8, 100);
+			CommonStock copy = new CommonStock(symbol, 8, 100);
+			for (int trade = 0; trade <= i; trade++) {
+				long price = FixedPoint.fromPennies(50 + (i * 7 + trade) % 90);
+				stock.recordTrade(10, price, false, trade);
+				copy.recordTrade(10, price, false, trade);
+			}
+			whole.register(stock);
+			shards[ring.ownerOf(symbol)].register(copy);
+		}
+		IndexPartials merged = IndexPartials.EMPTY;
+		for (StockRegistry shard : shards) {
+			merged = merged.merge(new AllShareIndex().getPartials(shard));
+		}
+		assertEquals(new AllShareIndex().getValue(whole), merged.getValue(),
+				1e-9);
+	}
+
+	private static String symbol(final int index) {
+		return String.format("S%04d", index);
+	}
+}
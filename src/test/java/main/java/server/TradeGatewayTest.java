@@ -0,0 +1,165 @@
+package main.java.server;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import main.java.bo.CommonStock;
+import main.java.bo.FixedPoint;
+import main.java.bo.impl.AbstractStock;
+import main.java.bo.impl.TradeListener;
+import main.java.clock.SimulatedClock;
+import main.java.model.AllShareIndex;
+import main.java.model.StockRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks the Trades and queries of the gateway over a real connection.
+ *
+ * @author Samuel Maya Miles
+ * @version 1.0
+ */
+public class TradeGatewayTest {
+	private static final long		WINDOW		= TimeUnit.MINUTES.toNanos(15);
+
+	private final SimulatedClock	clock		= new SimulatedClock(
+														TimeUnit.DAYS.toNanos(1));
+	private final StockRegistry		registry	= new StockRegistry();
+	private TradeGateway			gateway;
+	private SocketChannel			channel;
+
+	@Before
+	public void start() throws IOException {
+		registry.setClock(clock);
+		registry.register(new CommonStock("TEA", 0, 100));
+		registry.register(new CommonStock("POP", 8, 100));
+		gateway = new TradeGateway(registry, new AllShareIndex(), WINDOW, 2);
+		gateway.start(new InetSocketAddress(InetAddress.getLoopbackAddress(),
+				0));
+		channel = SocketChannel.open(new InetSocketAddress(
+				InetAddress.getLoopbackAddress(), gateway.getPort()));
+	}
+
+	@After
+	public void stop() throws IOException {
+		channel.close();
+		gateway.close();
+	}
+
+	@Test
+	public void acknowledgesPipelinedTrades() throws IOException {
+		int trades = 5000;
+		ByteBuffer out = ByteBuffer.allocate(trades
+				* GatewayProtocol.TRADE_SIZE);
+		long symbol = GatewayProtocol.packSymbol("TEA");
+		for (int i = 1; i <= trades; i++) {
+			GatewayProtocol.putTrade(out, i, symbol, 0, 10,
+					FixedPoint.fromPennies(100 + i % 5),
+					GatewayProtocol.FLAG_ACK);
+		}
+		send(out);
+		ByteBuffer in = receive(trades * GatewayProtocol.RESPONSE_SIZE);
+		for (int i = 1; i <= trades; i++) {
+			assertEquals(GatewayProtocol.ACK, in.get());
+			assertEquals(i, in.getInt());
+			assertEquals(i, in.getLong());
+		}
+		assertEquals(trades, registry.get("TEA").getTradeCount());
+	}
+
+	@Test
+	public void answersQueriesAfterTheTrades() throws IOException {
+		ByteBuffer out = ByteBuffer.allocate(256);
+		long symbol = GatewayProtocol.packSymbol("POP");
+		GatewayProtocol.putTrade(out, 1, symbol, 0, 10,
+				FixedPoint.fromPennies(100), (byte) 0);
+		GatewayProtocol.putTrade(out, 2, symbol, 0, 30,
+				FixedPoint.fromPennies(200), GatewayProtocol.FLAG_SELL);
+		GatewayProtocol.putQuery(out, 3, GatewayProtocol.QUERY_PRICE, symbol,
+				0);
+		GatewayProtocol.putQuery(out, 4, GatewayProtocol.QUERY_YIELD, symbol,
+				0);
+		send(out);
+		ByteBuffer in = receive(2 * GatewayProtocol.RESPONSE_SIZE);
+		assertEquals(GatewayProtocol.VALUE, in.get());
+		assertEquals(3, in.getInt());
+		assertEquals(175.0, Double.longBitsToDouble(in.getLong()), 1e-9);
+		assertEquals(GatewayProtocol.VALUE, in.get());
+		assertEquals(4, in.getInt());
+		assertEquals(registry.get("POP").getDividendYield(),
+				Double.longBitsToDouble(in.getLong()), 0);
+	}
+
+	@Test
+	public void rejectsUnknownStocksAndInvalidTrades() throws IOException {
+		ByteBuffer out = ByteBuffer.allocate(256);
+		GatewayProtocol.putTrade(out, 1, GatewayProtocol.packSymbol("XXX"),
+				0, 10, FixedPoint.fromPennies(100), (byte) 0);
+		GatewayProtocol.putTrade(out, 2, GatewayProtocol.packSymbol("TEA"),
+				0, -10, FixedPoint.fromPennies(100), (byte) 0);
+		GatewayProtocol.putQuery(out, 3, (byte) 99,
+				GatewayProtocol.packSymbol("TEA"), 0);
+		send(out);
+		ByteBuffer in = receive(3 * GatewayProtocol.RESPONSE_SIZE);
+		long[] errors = { GatewayProtocol.ERROR_UNKNOWN_STOCK,
+				GatewayProtocol.ERROR_INVALID_TRADE,
+				GatewayProtocol.ERROR_UNKNOWN_QUERY };
+		for (int i = 0; i < errors.length; i++) {
+			assertEquals(GatewayProtocol.ERROR, in.get());
+			assertEquals(i + 1, in.getInt());
+			assertEquals(errors[i], in.getLong());
+		}
+		assertEquals(0, registry.get("TEA").getTradeCount());
+	}
+
+	@Test
+	public void answersAJournalFailureAndKeepsServing() throws IOException {
+		registry.get("TEA").setTradeListener(new TradeListener() {
+			@Override
+			public void onTrade(final AbstractStock stock, final int tradeId,
+					final long timestamp, final int shares, final long price,
+					final boolean sell) {
+				throw new IllegalStateException("Disk full");
+			}
+		});
+		ByteBuffer out = ByteBuffer.allocate(256);
+		GatewayProtocol.putTrade(out, 1, GatewayProtocol.packSymbol("TEA"),
+				0, 10, FixedPoint.fromPennies(100), GatewayProtocol.FLAG_ACK);
+		GatewayProtocol.putTrade(out, 2, GatewayProtocol.packSymbol("POP"),
+				0, 10, FixedPoint.fromPennies(100), GatewayProtocol.FLAG_ACK);
+		send(out);
+		ByteBuffer in = receive(2 * GatewayProtocol.RESPONSE_SIZE);
+		assertEquals(GatewayProtocol.ERROR, in.get());
+		assertEquals(1, in.getInt());
+		assertEquals(GatewayProtocol.ERROR_JOURNAL, in.getLong());
+		assertEquals(GatewayProtocol.ACK, in.get());
+		assertEquals(2, in.getInt());
+		assertEquals(1, in.getLong());
+	}
+
+	private void send(final ByteBuffer out) throws IOException {
+		out.flip();
+		while (out.hasRemaining()) {
+			channel.write(out);
+		}
+	}
+
+	private ByteBuffer receive(final int size) throws IOException {
+		ByteBuffer in = ByteBuffer.allocate(size);
+		while (in.hasRemaining()) {
+			if (channel.read(in) < 0) {
+				throw new IOException("Gateway closed the connection");
+			}
+		}
+		in.flip();
+		return in;
+	}
+}